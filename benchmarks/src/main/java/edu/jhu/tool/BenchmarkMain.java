@@ -0,0 +1,29 @@
+package edu.jhu.tool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the JMH benchmarks, writing the results as JSON to <code>jmh-result.json</code>
+ * unless a result format or file is given. All arguments are passed on to JMH.
+ */
+public class BenchmarkMain {
+
+    private static final String RESULT_FILE = "jmh-result.json";
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-rf")) {
+            options.add("-rf");
+            options.add("json");
+        }
+        if (!options.contains("-rff")) {
+            options.add("-rff");
+            options.add(RESULT_FILE);
+        }
+
+        org.openjdk.jmh.Main.main(options.toArray(new String[options.size()]));
+    }
+
+}
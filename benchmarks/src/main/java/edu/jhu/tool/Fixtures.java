@@ -0,0 +1,137 @@
+package edu.jhu.tool;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.name.Names;
+import edu.jhu.tool.config.AppConfig;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Synthetic inputs for the benchmarks: configuration, metadata spreadsheets and spreads.
+ * Everything is generated from a fixed seed so runs are comparable. Guice 3 needs
+ * <code>--add-opens java.base/java.lang=ALL-UNNAMED</code> on current JVMs, which every
+ * benchmark passes to its fork.
+ */
+class Fixtures {
+
+    /** Page labels in the proportions of a real shelfmark, covers and fly leaves included. */
+    static final String[] PAGE_NAMES = {
+            "1r", "1v", "fol. 12r", "fol. 12v", "123r", "123v", "front outside cover",
+            "inside front cover", "front endleaf 1r", "front endleaf 1v", "back endleaf 2r",
+            "back inside cover", "back outside cover", "spine", "fore-edge", "head", "tail",
+            "45r (blank)", "45v", "fol. 250r"
+    };
+
+    /** HSSF limit on the number of rows in one sheet. */
+    static final int XLS_MAX_ROWS = 65536;
+
+    private Fixtures() {}
+
+    /**
+     * @param overrides property values replacing those in app.properties
+     * @return configuration as the tool would inject it
+     */
+    static AppConfig config(Map<String, String> overrides) throws IOException {
+        Properties props = new Properties();
+        try (InputStream in = Fixtures.class.getClassLoader().getResourceAsStream("app.properties")) {
+            props.load(in);
+        }
+        props.putAll(overrides);
+
+        return Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                Names.bindProperties(binder(), props);
+            }
+        }).getInstance(AppConfig.class);
+    }
+
+    /**
+     * Write a metadata spreadsheet laid out like the real one: a header row, then one image
+     * per row with name, call number, title, date, page numbers and sort order.
+     *
+     * @param path output file, .xls or .xlsx
+     * @param rows number of image rows
+     */
+    static void spreadsheet(Path path, int rows) throws IOException {
+        boolean xlsx = path.getFileName().toString().endsWith(".xlsx");
+        if (!xlsx && rows >= XLS_MAX_ROWS) {
+            throw new IllegalArgumentException("An .xls sheet holds at most " + (XLS_MAX_ROWS - 1) + " rows.");
+        }
+
+        Random random = new Random(rows);
+        // Streaming workbook keeps only a window of rows in memory while writing .xlsx
+        Workbook workbook = xlsx ? new SXSSFWorkbook(100) : new HSSFWorkbook();
+        try (OutputStream out = Files.newOutputStream(path)) {
+            Sheet sheet = workbook.createSheet("files");
+            cells(sheet.createRow(0), "File name", "Call number", "Title", "Date", "Page numbers", "Sort order");
+
+            for (int i = 1; i <= rows; i++) {
+                String pages = PAGE_NAMES[random.nextInt(PAGE_NAMES.length)]
+                        + " || " + PAGE_NAMES[random.nextInt(PAGE_NAMES.length)];
+                cells(sheet.createRow(i), String.format("Ha2_%06d", i), "Ha2",
+                        "Roman de la rose, copy " + (i % 40), "13" + (i % 100), pages, Integer.toString(i));
+            }
+            workbook.write(out);
+        } finally {
+            if (workbook instanceof SXSSFWorkbook) {
+                ((SXSSFWorkbook) workbook).dispose();
+            }
+        }
+    }
+
+    /**
+     * Write an uncompressed RGB TIFF of the given size, as the scanners deliver them.
+     */
+    static void spread(Path path, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Random random = new Random(width * 31L + height);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                // Parchment tone with noise, so the image is not trivially compressible
+                row[x] = 0xe0c8a0 ^ (random.nextInt() & 0x0f0f0f);
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+
+        if (!ImageIO.write(image, "tiff", path.toFile())) {
+            throw new IOException("No TIFF writer available.");
+        }
+    }
+
+    static void delete(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static void cells(Row row, String... values) {
+        for (int i = 0; i < values.length; i++) {
+            row.createCell(i).setCellValue(values[i]);
+        }
+    }
+
+}
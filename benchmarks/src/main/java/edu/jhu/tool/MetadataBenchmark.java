@@ -0,0 +1,79 @@
+package edu.jhu.tool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the metadata spreadsheet into records and converting it to CSV. The default
+ * format is .xlsx since an .xls sheet cannot hold 100k rows; run with
+ * <code>-p format=xls -p rows=1000,10000</code> for the legacy format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "--add-opens=java.base/java.lang=ALL-UNNAMED"})
+public class MetadataBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int rows;
+
+    @Param({"xlsx"})
+    private String format;
+
+    private Path dir;
+    private Path sheet;
+    private Path csv;
+    private App app;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("metadata-bench");
+        sheet = dir.resolve("files list." + format);
+        csv = dir.resolve("files list.csv");
+        Fixtures.spreadsheet(sheet, rows);
+
+        app = new App(Fixtures.config(Collections.<String, String>emptyMap()));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Fixtures.delete(dir);
+    }
+
+    @Benchmark
+    public List<DropboxImageFile> processExcel() {
+        List<DropboxImageFile> images = app.processExcel(sheet);
+        if (images.size() != rows) {
+            throw new IllegalStateException("Read " + images.size() + " of " + rows + " rows.");
+        }
+        return images;
+    }
+
+    @Benchmark
+    public long XLStoCSV() throws IOException {
+        // The conversion is skipped when the CSV already exists
+        Files.deleteIfExists(csv);
+        app.XLStoCSV(sheet);
+        return Files.size(csv);
+    }
+
+}
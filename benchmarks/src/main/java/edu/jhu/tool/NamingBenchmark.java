@@ -0,0 +1,47 @@
+package edu.jhu.tool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Output file naming, run once for every page written.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.lang=ALL-UNNAMED")
+public class NamingBenchmark {
+
+    private App app;
+
+    @Setup
+    public void setup() throws IOException {
+        app = new App(Fixtures.config(Collections.<String, String>emptyMap()));
+    }
+
+    /**
+     * One call per label of {@link Fixtures#PAGE_NAMES}.
+     */
+    @Benchmark
+    public void processName(Blackhole bh) {
+        for (String name : Fixtures.PAGE_NAMES) {
+            bh.consume(app.processName(name));
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+package edu.jhu.tool;
+
+import edu.jhu.tool.config.AppConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recto/verso split of one spread with each engine: two external <code>convert</code>
+ * crops, the in-process ImageIO split, and the memory-mapped strip copy. Sizes are those of
+ * a small scan and of a full resolution 600 dpi folio scan. The imagemagick engine fails in
+ * setup when <code>convert</code> is not on the PATH.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "--add-opens=java.base/java.lang=ALL-UNNAMED"})
+public class SplitBenchmark {
+
+    @Param({"imagemagick", "java", "mapped"})
+    private String engine;
+
+    @Param({"3000x2000", "7200x5400"})
+    private String size;
+
+    private Path dir;
+    private Path spread;
+    private Path recto;
+    private Path verso;
+    private App app;
+    private ImageHandler handler;
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        if ("imagemagick".equals(engine)) {
+            checkConvert();
+        }
+
+        String[] dimensions = size.split("x");
+        dir = Files.createTempDirectory("split-bench");
+        spread = dir.resolve("spread.tif");
+        recto = dir.resolve("recto.tif");
+        verso = dir.resolve("verso.tif");
+        Fixtures.spread(spread, Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]));
+
+        AppConfig config = Fixtures.config(Collections.singletonMap("split.engine", engine));
+        app = new App(config);
+        handler = new ImageHandler(config);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Fixtures.delete(dir);
+    }
+
+    @Benchmark
+    public long split() throws IOException {
+        Files.deleteIfExists(recto);
+        Files.deleteIfExists(verso);
+
+        if ("imagemagick".equals(engine)) {
+            app.splitWithImageMagick(spread, recto, verso);
+        } else {
+            handler.split(spread, recto, verso);
+        }
+
+        if (!Files.exists(recto) || !Files.exists(verso)) {
+            throw new IllegalStateException("Split with the " + engine + " engine wrote no output.");
+        }
+        return Files.size(recto) + Files.size(verso);
+    }
+
+    private static void checkConvert() throws InterruptedException {
+        try {
+            Process p = new ProcessBuilder("convert", "-version").redirectErrorStream(true).start();
+            p.getInputStream().readAllBytes();
+            if (p.waitFor() == 0) {
+                return;
+            }
+        } catch (IOException e) {
+            // Reported below
+        }
+        throw new IllegalStateException("ImageMagick convert is not on the PATH.");
+    }
+
+}
@@ -2,154 +2,450 @@ package edu.jhu.tool;
 
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import edu.jhu.tool.build.BuildState;
+import edu.jhu.tool.build.Plan;
 import edu.jhu.tool.config.AppConfig;
 import edu.jhu.tool.config.AppModule;
-import org.apache.commons.io.FileUtils;
+import edu.jhu.tool.download.AsyncDownloader;
+import edu.jhu.tool.download.BandwidthLimiter;
+import edu.jhu.tool.download.ConcurrencyLimiter;
+import edu.jhu.tool.download.ContentRange;
+import edu.jhu.tool.download.DownloadManifest;
+import edu.jhu.tool.download.HttpStatusException;
+import edu.jhu.tool.html.ChainSelector;
+import edu.jhu.tool.html.LinkScanner;
+import edu.jhu.tool.metadata.RowHandler;
+import edu.jhu.tool.metadata.SpreadsheetReader;
+import edu.jhu.tool.metrics.Histogram;
+import edu.jhu.tool.metrics.Metrics;
+import edu.jhu.tool.metrics.MetricsReporter;
+import edu.jhu.tool.naming.NamingRules;
+import edu.jhu.tool.pipeline.FairPool;
+import edu.jhu.tool.pipeline.MemoryBudget;
+import edu.jhu.tool.pipeline.Stage;
+import edu.jhu.tool.split.Cut;
+import edu.jhu.tool.split.GutterFinder;
+import edu.jhu.tool.split.ImageMagickBackend;
+import edu.jhu.tool.split.Spread;
+import edu.jhu.tool.store.ContentStore;
+import edu.jhu.tool.tiles.Tiler;
+import edu.jhu.tool.tiff.MappedTiff;
+import edu.jhu.tool.tiff.TiffDirectory;
+import edu.jhu.tool.tiff.TiffScanner;
+import edu.jhu.tool.tiff.TiffValidator;
+import edu.jhu.tool.watch.DirectoryWatcher;
+import edu.jhu.tool.watch.StatusServer;
+import edu.jhu.tool.watch.WatchStatus;
 import org.apache.commons.io.IOUtils;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  *
  */
 public class App  {
-    private static final String GRAVITY_VERSO = "east";
-    private static final String GRAVITY_RECTO = "west";
+    /** Suffix of files that are still being downloaded. */
+    private static final String PART_SUFFIX = ".part";
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
 
-    private class DropboxFile {
-        String name;
-        String url;
+    /** Upper bound for the delay between download retries. */
+    private static final long MAX_BACKOFF = 60000;
 
-        boolean isImage() {
-            return name.endsWith(".tif");
-        }
-        boolean isXLS() {
-            return name.endsWith(".xls");
-        }
+    private static final String DRY_RUN = "--dry-run";
 
-        @Override
-        public String toString() {
-            return "DropboxFile{" +
-                    "name='" + name + '\'' +
-                    ", url='" + url + '\'' +
-                    '}';
-        }
-    }
+    /** Report of the verify command, in the download directory unless verify.report is set. */
+    private static final String VERIFY_REPORT = "verify-report.json";
 
-    private class DropboxImageFile extends DropboxFile {
-        String callNumber;
-        String title;
-        String publicationDate;
-        String[] pageNumbers;
-        int sortOrder;
+    /** How long the watch command may take to finish its current pass once asked to stop. */
+    private static final long WATCH_SHUTDOWN_GRACE = 60000;
 
-        @Override
-        public String toString() {
-            return "DropboxImageFile{" +
-                    "name='" + name + '\'' +
-                    ", url='" + url + '\'' +
-                    ", callNumber='" + callNumber + '\'' +
-                    ", title='" + title + '\'' +
-                    ", publicationDate='" + publicationDate + '\'' +
-                    ", pageNumbers=" + Arrays.toString(pageNumbers) +
-                    ", sortOrder=" + sortOrder +
-                    '}';
-        }
-    }
+    /**
+     * ImageMagick (Q16) holds every pixel as four 16 bit channels, and each crop makes a
+     * second copy of 55% of them.
+     */
+    private static final long CONVERT_BYTES_PER_PIXEL = 8;
+    private static final double CONVERT_OVERHEAD = 1.55;
+    /** The tiler draws each page into an 8 bit RGB raster, counted as an int per pixel. */
+    private static final long TILER_BYTES_PER_PIXEL = 4;
 
     private class DownloadRunnable implements Runnable {
 
         private DropboxFile file;
         private String outputFile;
+        /** SHA-256 of the file, computed as it was downloaded. */
+        private volatile String hash;
 
         DownloadRunnable(DropboxFile file, String outputFile) {
             this.file = file;
             this.outputFile = outputFile;
         }
 
+        /**
+         * @return SHA-256 of the downloaded file, null if it was not downloaded by this
+         *         runnable
+         */
+        String getHash() {
+            return hash;
+        }
+
         @Override
         public void run() {
-            download(file.name, file.url);
+            try {
+                downloadWithRetry();
+            } catch (IOException e) {
+                System.err.println("Error: Failed to download file. [" + file.name + "] " + e.getMessage());
+            }
+        }
+
+        /**
+         * Download the file, retrying failed attempts with exponential backoff. Each retry
+         * resumes from the partial file left by the previous attempt.
+         *
+         * @throws IOException failure of the last attempt
+         */
+        void downloadWithRetry() throws IOException {
+            long backoff = config.getDOWNLOAD_BACKOFF();
+            long start = System.nanoTime();
+            for (int attempt = 1; ; attempt++) {
+                IOException e;
+                downloadLimiter.acquire();
+                try {
+                    long bytes = download(file.name, file.url);
+                    if (hash != null && downloadStore != null) {
+                        store(downloadStore, Paths.get(outputFile), hash, "download");
+                    }
+                    if (bytes > 0) {
+                        downloadLimiter.success(bytes);
+                        metrics.counter("download_bytes_total").add(bytes);
+                        metrics.counter("downloads_total").increment();
+                        metrics.histogram("download_seconds").record(System.nanoTime() - start);
+                    }
+                    return;
+                } catch (IOException failure) {
+                    downloadLimiter.failed(failure);
+                    metrics.counter("download_failures_total", "cause", HttpStatusException.cause(failure)).increment();
+                    e = failure;
+                } finally {
+                    downloadLimiter.release();
+                }
+
+                boolean retryable = !(e instanceof HttpStatusException)
+                        || ((HttpStatusException) e).isRetryable();
+                if (!retryable || attempt > config.getDOWNLOAD_RETRIES()) {
+                    throw e;
+                }
+
+                System.err.println("Download attempt " + attempt + " of [" + file.name + "] failed, retrying in "
+                        + backoff + " ms. " + e.getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting to retry [" + file.name + "]");
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF);
+            }
         }
 
-        private void download(String filename, String url) {
-            // Don't download anything if the file already exists!
+        /**
+         * @return number of bytes transferred
+         */
+        private long download(String filename, String url) throws IOException {
+            // Don't download anything if the file already exists! Partial transfers are
+            // kept under a separate name, so anything at the final path is complete.
             Path outPath = Paths.get(outputFile);
             if (Files.exists(outPath)) {
                 System.out.println("File [" + filename + "] already exists.");
-                return;
+                return 0;
+            }
+
+            Path partPath = Paths.get(outputFile + PART_SUFFIX);
+            long existing = Files.exists(partPath) ? Files.size(partPath) : 0;
+
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(config.getMAX_TIMEOUT());
+            connection.setReadTimeout(config.getMAX_TIMEOUT());
+            if (existing > 0) {
+                connection.setRequestProperty("Range", "bytes=" + existing + "-");
+            }
+
+            int status = connection.getResponseCode();
+            boolean append;
+            if (status == HttpURLConnection.HTTP_PARTIAL) {
+                long start = ContentRange.start(connection.getHeaderField("Content-Range"));
+                if (start != existing) {
+                    // Appending would splice the wrong bytes into the file
+                    connection.disconnect();
+                    if (existing == 0) {
+                        throw new IOException("Server sent a partial response starting at byte " + start
+                                + " without being asked for a range.");
+                    }
+                    System.out.println("Server resumed [" + filename + "] at byte " + start + " instead of "
+                            + existing + ", starting over.");
+                    Files.deleteIfExists(partPath);
+                    return download(filename, url);
+                }
+                append = true;
+                System.out.println("Resuming [" + filename + "] at byte " + existing + " from [" + url
+                        + "] to path [" + outputFile + "]");
+            } else if (status == HttpURLConnection.HTTP_OK) {
+                // Server ignored the range, start over
+                append = false;
+                System.out.println("Downloading [" + filename + "] from [" + url
+                        + "] to path [" + outputFile + "]");
+            } else if (status == HTTP_RANGE_NOT_SATISFIABLE && existing > 0
+                    && ("bytes */" + existing).equals(connection.getHeaderField("Content-Range"))) {
+                // Previous run finished the transfer but did not get to rename it
+                connection.disconnect();
+                complete(partPath, outPath);
+                return 0;
+            } else {
+                connection.disconnect();
+                if (status == HTTP_RANGE_NOT_SATISFIABLE) {
+                    Files.deleteIfExists(partPath);
+                }
+                throw new HttpStatusException(status);
+            }
+
+            long length = connection.getContentLengthLong();
+            long expected = length < 0 ? -1 : (append ? existing + length : length);
+
+            // Hash while downloading, so the file need not be read again
+            MessageDigest digest = sha256();
+            if (append) {
+                try (InputStream in = Files.newInputStream(partPath)) {
+                    byte[] buffer = new byte[64 * 1024];
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        digest.update(buffer, 0, n);
+                    }
+                }
+            }
+
+            try (InputStream in = connection.getInputStream();
+                 OutputStream out = Files.newOutputStream(partPath, StandardOpenOption.CREATE,
+                         StandardOpenOption.WRITE, append ? StandardOpenOption.APPEND
+                                 : StandardOpenOption.TRUNCATE_EXISTING)) {
+                byte[] buffer = new byte[64 * 1024];
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    bandwidth.acquire(n);
+                    out.write(buffer, 0, n);
+                    digest.update(buffer, 0, n);
+                }
+            }
+
+            long size = Files.size(partPath);
+            if (expected >= 0 && size != expected) {
+                throw new IOException("Transfer ended at byte " + size + " of " + expected + ".");
             }
 
-            System.out.println("Downloading [" + filename + "] from [" + url
-                    + "] to path [" + outputFile + "]");
+            complete(partPath, outPath);
+            hash = DownloadManifest.toHex(digest.digest());
+            return append ? size - existing : size;
+        }
 
-            int timeouts = 30000;
+        /**
+         * Move a finished transfer to its final name, atomically where the file system allows.
+         */
+        private void complete(Path partPath, Path outPath) throws IOException {
             try {
-                FileUtils.copyURLToFile(new URL(url), outPath.toFile(), timeouts, timeouts);
-            } catch (Exception e) {
-                e.printStackTrace();
+                Files.move(partPath, outPath, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(partPath, outPath, StandardCopyOption.REPLACE_EXISTING);
             }
+            System.out.println("Finished downloading [" + outPath.getFileName() + "]");
         }
     }
 
-    private class ImageSplitterRunnable implements Runnable {
+    /**
+     * Splits a two page spread with the in-process {@link ImageHandler}, decoding the
+     * source once. Falls back to ImageMagick if the image cannot be handled.
+     */
+    private class SpreadSplitterRunnable implements Runnable {
 
         private Path original;
-        private Path output;
-        private String gravity;
+        private String hash;
+        private Path recto;
+        private Path verso;
 
-        ImageSplitterRunnable(String gravity, Path original, Path output) {
+        SpreadSplitterRunnable(Path original, String hash, Path recto, Path verso) {
             this.original = original;
-            this.output = output;
-            this.gravity = gravity;
+            this.hash = hash;
+            this.recto = recto;
+            this.verso = verso;
         }
 
         @Override
         public void run() {
-            String command = "convert -crop 55%x100% -gravity " + gravity
-                    + " " + original.toString() + " +repage " + output.toString();
-
-            boolean result = false;
-            System.out.println(command);
+            System.out.println("Splitting [" + original.toString() + "] -> ["
+                    + recto.toString() + "], [" + verso.toString() + "]");
+            long start = System.nanoTime();
+            Cut cut = cut(original, hash);
+            List<ImageHandler.Crop> crops;
             try {
-                Process p = Runtime.getRuntime().exec(command);
-                result = p.waitFor(30, TimeUnit.SECONDS);
-            } catch (IOException | InterruptedException e) {
-                System.err.println("Command failed.\n  " + command);
+                crops = imageHandler.crop(original, cut, recto, verso);
+                for (ImageHandler.Crop crop : crops) {
+                    imageHandler.write(crop);
+                }
+                recordPages(config.getSPLIT_ENGINE(), 2, start);
+            } catch (IOException | RuntimeException e) {
+                metrics.counter("split_failures_total", "method", config.getSPLIT_ENGINE()).increment();
+                System.err.println("In-process split failed, falling back to ImageMagick. ["
+                        + original.toString() + "] " + e.getMessage());
+                splitWithImageMagick(Collections.singletonList(new Spread(original, recto, verso, cut)));
+                return;
             }
 
-            if (!result) {
-                System.err.println("Command timed out!\n  " + command);
+            if (crops.isEmpty()) {
+                pageWritten(recto, null);
+                pageWritten(verso, null);
+            }
+            for (ImageHandler.Crop crop : crops) {
+                pageWritten(crop.getOutput(), crop.getImage());
             }
         }
     }
 
     private AppConfig config;
+    private ImageHandler imageHandler;
+    private NamingRules naming;
+    private Tiler tiler;
+    private volatile boolean linkFailureReported;
+
+    /** Shared by every download in this run. */
+    private BandwidthLimiter bandwidth;
+    private ConcurrencyLimiter downloadLimiter;
+
+    private Metrics metrics;
+
+    /** Pipeline workers shared with other books in a batch, by stage name. */
+    private Map<String, FairPool> pools;
+    /** Memory that splits may use at once, shared with other books in a batch. */
+    private MemoryBudget memory;
+    /** Spreads of the process command waiting to fill an ImageMagick batch. */
+    private final List<Spread> imageMagickQueue = new ArrayList<>();
+
+    /** Content-addressed stores of the download and split directories, null if disabled. */
+    private ContentStore downloadStore;
+    private ContentStore splitStore;
+    /** Store key of each output being made, added to the split store once written. */
+    private final Map<Path, String> storeKeys = new ConcurrentHashMap<>();
 
     public App(AppConfig config) {
+        this(config, new Metrics(), new BandwidthLimiter(config.getDOWNLOAD_BANDWIDTH()), null,
+                Collections.<String, FairPool>emptyMap(), null);
+    }
+
+    /**
+     * @param config settings of one book
+     * @param metrics metrics of the run
+     * @param bandwidth rate cap shared with other books, if any
+     * @param downloadLimiter concurrency limit shared with other books, null for a new one
+     * @param pools workers shared with other books by stage name, empty to create them
+     * @param memory split memory shared with other books, null for a new one
+     */
+    App(AppConfig config, Metrics metrics, BandwidthLimiter bandwidth, ConcurrencyLimiter downloadLimiter,
+        Map<String, FairPool> pools, MemoryBudget memory) {
         this.config = config;
+        this.imageHandler = new ImageHandler(config);
+        this.naming = new NamingRules(config.getBOOK_ID(), config.getNAMING_LABELS(),
+                config.getNAMING_WORDS(), config.getNAMING_SKIP(), config.getNAMING_SKIP_EXACT());
+        this.tiler = new Tiler(config.getTILES_FORMAT(), tilesPath(), config.getTILES_SIZE(),
+                config.getTILES_THREADS());
+        this.bandwidth = bandwidth;
+        this.downloadLimiter = downloadLimiter != null ? downloadLimiter : newConcurrencyLimiter(config.getMAX_THREADS());
+        this.metrics = metrics;
+        this.pools = pools;
+        this.memory = memory != null ? memory : newMemoryBudget(config);
+        this.gutters = GutterFinder.load(null, config.getSPLIT_GUTTER_MARGIN());
+        if (config.getSTORE_ENABLED()) {
+            this.downloadStore = new ContentStore(Paths.get(config.getDOWNLOAD_DIRECTORY()));
+            this.splitStore = new ContentStore(Paths.get(config.getSPLIT_DIRECTORY()));
+        }
+    }
+
+    /**
+     * @return budget of split.memory MB, or if 0 a share of the heap for in-process engines
+     *         and of physical memory for ImageMagick, which runs outside of the JVM. Where
+     *         physical memory is not known, ImageMagick gets the heap share too.
+     */
+    static MemoryBudget newMemoryBudget(AppConfig config) {
+        long limit = config.getSPLIT_MEMORY() * 1024 * 1024;
+        if (limit <= 0) {
+            long physical = "imagemagick".equalsIgnoreCase(config.getSPLIT_ENGINE()) ? physicalMemory() : -1;
+            limit = physical > 0 ? physical / 2 : Runtime.getRuntime().maxMemory() / 4 * 3;
+        }
+        return new MemoryBudget(limit);
+    }
+
+    /**
+     * Read from /proc/meminfo, since the management bean for it is deprecated from Java 14
+     * and its replacement does not exist in 11.
+     *
+     * @return total physical memory in bytes, or -1 if the system does not say
+     */
+    private static long physicalMemory() {
+        try (BufferedReader in = Files.newBufferedReader(Paths.get("/proc/meminfo"), StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                // MemTotal:       16314060 kB
+                if (line.startsWith("MemTotal:")) {
+                    String[] fields = line.substring("MemTotal:".length()).trim().split("\\s+");
+                    return Long.parseLong(fields[0]) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Not Linux
+        }
+        return -1;
     }
 
     public static void main( String[] args ) throws Exception {
@@ -162,424 +458,1889 @@ public class App  {
 
     // ----------------------------------------------------------------------------------
 
-    private Document dropboxPage;
+    private List<DropboxFile> filesList;
+
+    /** Outputs made by earlier runs, loaded by the commands that split. */
+    private BuildState buildState = BuildState.untracked();
+    /** Gutters found by earlier runs, loaded with the build state. */
+    private GutterFinder gutters;
+    /** Plan the work of the command without doing it. */
+    private boolean dryRun;
 
     public void run(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        dryRun = arguments.remove(DRY_RUN);
+        args = arguments.toArray(new String[arguments.size()]);
+
         if (args.length == 0) {
-            System.err.println("Issue a command. (download|check-downloaded-files|convert-metadata|split-images)");
+            System.err.println("Issue a command. (download|check-downloaded-files|convert-metadata|split-images|process"
+                    + "|verify|watch|batch <books file>) Add " + DRY_RUN + " to split-images or process to only print the plan.");
         } else {
             String cmd = args[0];
 
-            if (cmd.equals(config.getCMD_DOWNLOAD())) {
-                downloadFiles();
-            } else if (cmd.equals(config.getCMD_CONVERT_XLS())) {
-                DropboxFile xls = new DropboxFile();
-                xls.name = "Ha2 files list.xls";
+            MetricsReporter reporter = startMetrics();
+            try {
+                if (cmd.equals(config.getCMD_DOWNLOAD())) {
+                    downloadFiles();
+                } else if (cmd.equals(config.getCMD_CONVERT_XLS())) {
+                    XLStoCSV(metadataPath());
+                } else if (cmd.equals(config.getCMD_CHECK_DOWNLOADS())) {
+                    checkDownload();
+                } else if (cmd.equals(config.getCMD_VERIFY())) {
+                    verify();
+                } else if (cmd.equals(config.getCMD_WATCH())) {
+                    watch();
+                } else if (cmd.equals(config.getCMD_PROCESS())) {
+                    process();
+                } else if (cmd.equals(config.getCMD_BATCH())) {
+                    if (args.length < 2) {
+                        System.err.println("Error: Give the books file. (batch <books file>)");
+                        return;
+                    }
+                    new Batch(config, metrics, bandwidth, downloadLimiter, memory).run(Paths.get(args[1]));
+                } else if (cmd.equals(config.getCMD_SPLIT_IMAGES())) {
+                    List<DropboxImageFile> images = loadMetadata();
+                    imageMagick(images, images);
+                }
+            } finally {
+                close();
+                if (reporter != null) {
+                    reporter.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Start writing metrics to metrics.directory, if set.
+     *
+     * @return the reporter, null if metrics are not written
+     */
+    private MetricsReporter startMetrics() {
+        if (isBlank(config.getMETRICS_DIRECTORY())) {
+            return null;
+        }
 
-                XLStoCSV(xls);
-            } else if (cmd.equals(config.getCMD_CHECK_DOWNLOADS())) {
-                checkDownload();
-            } else if (cmd.equals(config.getCMD_SPLIT_IMAGES())) {
-                DropboxFile xls = new DropboxFile();
-                xls.name = "Ha2 files list.xls";
+        metrics.gauge("download_concurrency_limit", downloadLimiter::getLimit);
+        metrics.gauge("download_in_flight", downloadLimiter::getInFlight);
+        metrics.gauge("split_memory_limit_bytes", memory::getLimit);
+        metrics.gauge("split_memory_used_bytes", memory::getUsed);
+        metrics.gauge("split_memory_waiting", memory::getWaiting);
+        return new MetricsReporter(metrics, Paths.get(config.getMETRICS_DIRECTORY()), config.getMETRICS_INTERVAL());
+    }
 
-                List<DropboxImageFile> images = processExcel(xls);
-                imageMagick(images);
-            }
+    /**
+     * Record pages written and the time each took.
+     *
+     * @param method how the pages were made: the split engine, "convert" or "copy"
+     * @param pages number of pages
+     * @param start System.nanoTime() when work on the pages started
+     */
+    private void recordPages(String method, int pages, long start) {
+        long perPage = (System.nanoTime() - start) / pages;
+        metrics.counter("pages_total", "method", method).add(pages);
+        Histogram latency = metrics.histogram("page_seconds", "method", method);
+        for (int i = 0; i < pages; i++) {
+            latency.record(perPage);
         }
     }
 
     /**
      * Split images using ImageMagick and rename each image, loosely following our
-     * archive naming convention.
+     * archive naming convention. Images whose outputs were made from the same source,
+     * page numbers, engine and naming rules by an earlier run are skipped. Sources that are
+     * new or changed since the manifest last saw them are hashed by the workers, just
+     * before they are split.
      *
-     * @param images list of DropboxImageFiles
+     * @param metadata every image in the metadata, which decides the outputs that are stale
+     * @param images images to bring up to date, all of them or those whose sources changed
+     * @return number of pages written
      * @throws IOException
      * @throws InterruptedException
      */
-    private void imageMagick(List<DropboxImageFile> images) throws IOException, InterruptedException {
+    int imageMagick(List<DropboxImageFile> metadata, List<DropboxImageFile> images)
+            throws IOException, InterruptedException {
+        if (!checkOutputNames(metadata)) {
+            return 0;
+        }
+
         Path inPath = Paths.get(config.getDOWNLOAD_DIRECTORY());
         Path splitPath = Paths.get(config.getSPLIT_DIRECTORY());
 
+        String engine = config.getSPLIT_ENGINE();
+        boolean inProcess = "mapped".equalsIgnoreCase(engine)
+                || ("java".equalsIgnoreCase(engine) && imageHandler.canSplit());
+        String method = inProcess ? engine : "imagemagick";
+
+        DownloadManifest manifest = DownloadManifest.load(inPath);
+        buildState = BuildState.load(splitPath);
+        gutters = GutterFinder.load(splitPath, config.getSPLIT_GUTTER_MARGIN());
+
+        List<DropboxImageFile> work = new ArrayList<>();
+        List<String> stale = staleOutputs(metadata);
+        Plan plan = plan(images, stale, inPath, splitPath, manifest, method, null, work);
+        if (dryRun) {
+            plan.print(System.out);
+            return 0;
+        }
+        removeStale(stale, splitPath);
+
         if (!Files.exists(splitPath)) {
             System.out.println("Creating new directory. [" + splitPath.toString() + "]");
-            Runtime.getRuntime().exec("mkdir " + splitPath.toString());
+            Files.createDirectories(splitPath);
+        }
+        System.out.println("Splitting images using " + method + " engine, "
+                + plan.count(Plan.Action.UP_TO_DATE) + " up to date.");
+
+        AtomicInteger pages = new AtomicInteger();
+        long start = System.nanoTime();
+
+        // One worker per core, fewer at a time when the images are too large to fit in memory together
+        int threads = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executorService = (ThreadPoolExecutor) Executors.newFixedThreadPool(threads);
+
+        // ImageMagick batches are no larger than needed to keep every worker busy
+        int toSplit = plan.count(Plan.Action.SPLIT);
+        int batchSize = Math.max(1, Math.min(imageHandler.getBackend().getBatchSize(), (toSplit + threads - 1) / threads));
+        List<Spread> batch = new ArrayList<>();
+        List<Supplier<DownloadManifest.Entry>> sources = new ArrayList<>();
+        metrics.gauge("executor_queue_depth", () -> executorService.getQueue().size(), "pool", "split");
+        for (DropboxImageFile image : work) {
+            Path imagePath = inPath.resolve(sourceName(image, null));
+            List<Path> outputs = outputPaths(image, splitPath);
+            Supplier<DownloadManifest.Entry> source = () -> prepare(image, imagePath, outputs,
+                    outputs.size() == 2 ? method : "copy", manifest, pages);
+
+            if (outputs.size() == 1) {
+                executorService.execute(() -> {
+                    if (source.get() != null) {
+                        copyOriginal(imagePath, outputs.get(0));
+                    }
+                });
+            } else if (inProcess) {
+                execute(executorService, workingSet(imagePath, method), () -> {
+                    DownloadManifest.Entry entry = source.get();
+                    if (entry != null) {
+                        new SpreadSplitterRunnable(imagePath, entry.getHash(), outputs.get(0), outputs.get(1)).run();
+                    }
+                });
+            } else {
+                batch.add(new Spread(imagePath, outputs.get(0), outputs.get(1)));
+                sources.add(source);
+                if (batch.size() == batchSize) {
+                    executeImageMagick(executorService, batch, sources);
+                    batch = new ArrayList<>();
+                    sources = new ArrayList<>();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            executeImageMagick(executorService, batch, sources);
         }
 
-        ExecutorService executorService = Executors.newFixedThreadPool(8);
-        for (DropboxImageFile image : images) {
-            String name = image.name.endsWith(".tif") ? image.name : image.name + ".tif";
-            Path imagePath = inPath.resolve(name);
+        executorService.shutdown();
+        executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        saveState(manifest);
 
-            List<String> pageNumbers = Arrays.asList(image.pageNumbers);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("Wrote %d pages in %.1f s (%.2f pages/sec).",
+                pages.get(), seconds, seconds > 0 ? pages.get() / seconds : 0.0));
+        return pages.get();
+    }
 
-            if (!Files.isRegularFile(imagePath) || pageNumbers.isEmpty()) {
-                continue;
-            }
+    /**
+     * Get the source of an image ready on a worker: hash it if it is new or changed, then
+     * start the build records of its outputs unless they turn out to be up to date or can
+     * be taken from the split store.
+     *
+     * @param method split engine in use, or "copy" for a single page
+     * @param pages receives the number of pages to be written
+     * @return manifest entry of the source, null if there is nothing left to write
+     */
+    private DownloadManifest.Entry prepare(DropboxImageFile image, Path imagePath, List<Path> outputs,
+                                           String method, DownloadManifest manifest, AtomicInteger pages) {
+        DownloadManifest.Entry source;
+        try {
+            source = manifest.refresh(imagePath);
+        } catch (IOException e) {
+            System.err.println("Error: Cannot read image. [" + imagePath.toString() + "] " + e.getMessage());
+            return null;
+        }
 
-            if (pageNumbers.contains("none") || pageNumbers.size() != 2) {
+        String recipe = recipe(image, source, method);
+        if (isUpToDate(outputs, recipe)) {
+            return null;
+        }
+        for (Path output : outputs) {
+            buildState.start(output, recipe);
+        }
+        pages.addAndGet(outputs.size());
+        return fromStore(outputs, source.getHash(), method) ? null : source;
+    }
 
-                String filename = "";
-                for (String str : pageNumbers) {
-                    if (!str.equalsIgnoreCase("none")) {
-                        filename = str;
-                        break;
-                    }
-                }
-                Path destination = splitPath.resolve(processName(filename));
-                String command = "cp " + imagePath + " " + destination;
+    /**
+     * Run a task once its working set fits in the memory budget, and give the memory back
+     * when it is done.
+     *
+     * @param bytes estimated working set of the task
+     */
+    private void execute(ExecutorService executor, long bytes, Runnable task) throws InterruptedException {
+        long reserved = memory.acquire(bytes);
+        executor.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                memory.release(reserved);
+            }
+        });
+    }
 
-                executorService.execute(() -> {
-                    System.out.println("Copying and renaming original file. ["
-                            + imagePath.toString() + "] -> [" + destination.toString() + "]");
+    /**
+     * Split a batch of spreads with ImageMagick on a worker. Sources are hashed and gutters
+     * found there as well, so reading the spreads does not hold up the thread filling the
+     * batches.
+     *
+     * @param spreads spreads to split, without cuts
+     * @param sources prepare the source of each spread, giving null if it needs no split
+     */
+    private void executeImageMagick(ExecutorService executor, List<Spread> spreads,
+                                    List<Supplier<DownloadManifest.Entry>> sources) throws InterruptedException {
+        execute(executor, workingSet(spreads), () -> {
+            List<Spread> cut = new ArrayList<>(spreads.size());
+            for (int i = 0; i < spreads.size(); i++) {
+                Spread spread = spreads.get(i);
+                DownloadManifest.Entry source = sources.get(i).get();
+                if (source != null) {
+                    cut.add(new Spread(spread.getOriginal(), spread.getRecto(), spread.getVerso(),
+                            cut(spread.getOriginal(), source.getHash())));
+                }
+            }
+            if (!cut.isEmpty()) {
+                splitWithImageMagick(cut);
+            }
+        });
+    }
 
-                    try {
-                        Runtime.getRuntime().exec(command);
-                    } catch (IOException e) {
-                        System.err.println("Failed to copy file. [" + imagePath.toString() + "] to [" + destination.toString() + "]");
-                    }
-                });
+    /**
+     * Work out what a run would do for each image. An image is up to date when all of its
+     * outputs were recorded with the same recipe. A source the manifest has not hashed in
+     * its current state is planned to be split or copied; it may still turn out up to date
+     * once hashed. Recorded outputs that no image makes any more are listed as stale.
+     *
+     * @param images images in the metadata
+     * @param stale stale outputs, from {@link #staleOutputs(List)}
+     * @param manifest manifest of the download directory
+     * @param method split engine in use
+     * @param available files in the shared folder by base name, null to plan only with
+     *                  what has been downloaded
+     * @param work if not null, receives each image to split or copy
+     * @return the plan
+     */
+    private Plan plan(List<DropboxImageFile> images, List<String> stale, Path inPath, Path splitPath, DownloadManifest manifest,
+                      String method, Map<String, DropboxFile> available, List<DropboxImageFile> work) {
+        Plan plan = new Plan();
+        long typical = typicalSize(manifest);
 
+        for (DropboxImageFile image : images) {
+            if (image.pageNumbers.length == 0) {
                 continue;
             }
 
-            Path rectoPath  = splitPath.resolve(processName(pageNumbers.get(0)));
-            ImageSplitterRunnable splitterRecto = new ImageSplitterRunnable(GRAVITY_RECTO, imagePath, rectoPath);
-            executorService.execute(splitterRecto);
+            String name = sourceName(image, available);
+            List<String> outputs = outputNames(image);
+            boolean spread = outputs.size() == 2;
+            Plan.Action action = spread ? Plan.Action.SPLIT : Plan.Action.COPY;
 
-            if (pageNumbers.size() != 2) {
+            Path imagePath = inPath.resolve(name);
+            boolean downloaded = Files.isRegularFile(imagePath);
+            DownloadManifest.Entry source = downloaded ? manifest.getIfCurrent(imagePath) : null;
+            if (source == null) {
+                if (downloaded) {
+                    plan.add(action, name, outputs, estimateWrites(spread, size(imagePath)));
+                    if (work != null) {
+                        work.add(image);
+                    }
+                } else if (available != null && available.containsKey(image.name)) {
+                    plan.add(Plan.Action.DOWNLOAD, name, Collections.<String>emptyList(), typical);
+                    plan.add(action, name, outputs, estimateWrites(spread, typical));
+                } else {
+                    plan.add(Plan.Action.MISSING, name, Collections.<String>emptyList(), -1);
+                }
                 continue;
             }
 
-            Path versoPath = splitPath.resolve(processName(pageNumbers.get(1)));
+            String recipe = recipe(image, source, spread ? method : "copy");
+            if (isUpToDate(outputPaths(image, splitPath), recipe)) {
+                plan.add(Plan.Action.UP_TO_DATE, name, outputs, 0);
+                continue;
+            }
 
-            ImageSplitterRunnable splitterVerso = new ImageSplitterRunnable(GRAVITY_VERSO, imagePath, versoPath);
-            executorService.execute(splitterVerso);
+            plan.add(action, name, outputs, estimateWrites(spread, source.getSize()));
+            if (work != null) {
+                work.add(image);
+            }
         }
 
-        executorService.shutdown();
+        for (String name : stale) {
+            plan.add(Plan.Action.STALE, name, Collections.<String>emptyList(), 0);
+        }
+        return plan;
     }
 
-    public String processName(String name) {
-
-        if (name.equals("front outside cover")) {
-            name = "binding frontcover";
-        } else if (name.equals("back outside cover")) {
-            name = "binding backcover";
-        } else if (name.equals("back inside cover")) {
-            name = "endmatter pastedown";
-        } else if (name.equals("inside front cover")) {
-            name = "frontmatter pastedown";
-        } else if (name.equals("spine")) {
-            name = "binding spine";
-        } else if (name.equals("head") || name.equals("fore-edge") || name.equals("tail")) {
-            name = "misc " + name.replace("-", "");
-        }
-
-        String[] parts = name.split("\\s+");
-
-        StringBuilder sb = new StringBuilder(config.getBOOK_ID());
-        for (String part : parts) {
-            if (part.equalsIgnoreCase("fol.")) {
-                continue;
-            } else if (part.equals("(blank)")) {
-                continue;
+    /**
+     * @param images every image in the metadata, not only those being brought up to date
+     * @return outputs of this book recorded by an earlier run that no image makes any more,
+     *         such as pages whose labels were renamed
+     */
+    private List<String> staleOutputs(List<DropboxImageFile> images) {
+        Set<String> expected = new HashSet<>();
+        for (DropboxImageFile image : images) {
+            if (image.pageNumbers.length > 0) {
+                expected.addAll(outputNames(image));
             }
+        }
 
-            if (part.matches("\\d+(r|v)")) {
-                int n = Integer.parseInt(part.substring(0, part.length() - 1));
-                part = String.format("%03d", n) + part.substring(part.length() - 1);
-            } else if (part.equals("back")) {
-                part = "endmatter";
-            } else if (part.equals("front")) {
-                part = "frontmatter";
-            } else if (part.equals("endleaf")) {
-                part = "flyleaf";
+        // Other books may share the split directory and its build state
+        String prefix = config.getBOOK_ID() + ".";
+        List<String> stale = new ArrayList<>();
+        for (String name : buildState.getOutputs()) {
+            if (name.startsWith(prefix) && name.endsWith(".tif") && !expected.contains(name)) {
+                stale.add(name);
             }
-
-            sb.append('.');
-            sb.append(part);
-
         }
-
-        sb.append(".tif");
-        return sb.toString();
+        return stale;
     }
 
-    private boolean existsInPath(DropboxFile file, Path path) throws IOException {
-        try (DirectoryStream<Path> ds = Files.newDirectoryStream(path)) {
-            for (Path p : ds) {
-                String filename = p.getFileName().toString().split("\\.")[0];
-                if (file.name.equals(filename)) {
-                    return true;
+    /**
+     * Drop the records of stale outputs and delete the files that are still as this tool
+     * wrote them. A file changed since is left in place.
+     *
+     * @param stale names of the stale outputs
+     * @param splitPath split directory
+     */
+    private void removeStale(List<String> stale, Path splitPath) {
+        for (String name : stale) {
+            Path output = splitPath.resolve(name);
+            try {
+                if (buildState.isUnchanged(output)) {
+                    Files.deleteIfExists(output);
+                    System.out.println("Removed stale output. [" + output + "]");
+                } else if (Files.exists(output)) {
+                    System.out.println("Keeping stale output changed since it was written. [" + output + "]");
                 }
+                buildState.forget(output);
+            } catch (IOException e) {
+                System.err.println("Error: Cannot remove stale output. [" + output + "] " + e.getMessage());
             }
         }
-        return false;
     }
 
     /**
-     * Checks files in file system against the XLS metadata. If a file specified in the metadata
-     * does not exist on the file system, an attempt will be made to download it.
-     *
-     * @throws IOException
+     * @return digest of everything the outputs of an image are made from. The source is
+     *         identified by its content; size and modification time only decide whether
+     *         the manifest hashes it again.
      */
-    private void checkDownload() throws IOException {
-        System.out.println("Checking downloaded files.");
-
-        DropboxFile xls = new DropboxFile();
-        xls.name = "Ha2 files list.xls";
-
-        List<DropboxImageFile> images = processExcel(xls);
-        List<String> errors = new ArrayList<>();
+    private String recipe(DropboxImageFile image, DownloadManifest.Entry source, String method) {
+        return BuildState.recipe(source.getName(), source.getHash(),
+                String.join("\n", image.pageNumbers), method, ImageHandler.CROP_FRACTION,
+                config.getSPLIT_GUTTER(), config.getSPLIT_GUTTER_MARGIN(),
+                config.getBOOK_ID(), config.getNAMING_LABELS(), config.getNAMING_WORDS(), config.getNAMING_SKIP(),
+                config.getNAMING_SKIP_EXACT(),
+                config.getTILES_FORMAT(), config.getTILES_SIZE());
+    }
 
-        Path downloadPath = Paths.get(config.getDOWNLOAD_DIRECTORY());
-        for (DropboxImageFile image : images) {
-            if (!existsInPath(image, downloadPath)) {
-                try {
-                    System.out.println("Trying to re-download file. [" + image.name + "]");
-                    downloadFile(image.name);
-                } catch (Exception e) {
-                    errors.add("Image specified in XML file [" + image.name + "] does not exist in the path ["
-                            + downloadPath.toString() + "].");
-                }
+    private boolean isUpToDate(List<Path> outputs, String recipe) {
+        for (Path output : outputs) {
+            if (!buildState.isUpToDate(output, recipe)) {
+                return false;
             }
         }
+        return true;
+    }
 
-        if (errors.size() > 0) {
-            for (String err : errors) {
-                System.out.println("Error: " + err);
-            }
+    /**
+     * @param available files in the shared folder by base name, may be null
+     * @return file name of the source image in the download directory
+     */
+    private String sourceName(DropboxImageFile image, Map<String, DropboxFile> available) {
+        DropboxFile file = available != null ? available.get(image.name) : null;
+        if (file != null) {
+            return file.name;
         }
+        return image.name.endsWith(".tif") ? image.name : image.name + ".tif";
     }
 
-    private void downloadFile(String filename) throws IOException {
-        List<DropboxFile> files = getFilesList();
+    private List<Path> outputPaths(DropboxImageFile image, Path splitPath) {
+        List<Path> paths = new ArrayList<>(2);
+        for (String name : outputNames(image)) {
+            paths.add(splitPath.resolve(name));
+        }
+        return paths;
+    }
 
-        System.out.println();
-        ExecutorService service = Executors.newFixedThreadPool(1);
-        for (DropboxFile file : files) {
-            String dropboxFileName = file.name.split("\\.")[0];
+    /**
+     * @return estimated bytes written for the outputs of a source of the given size, -1 if
+     *         the size is unknown
+     */
+    private long estimateWrites(boolean spread, long sourceSize) {
+        if (sourceSize < 0) {
+            return -1;
+        }
+        if (spread) {
+            return Math.round(2 * ImageHandler.CROP_FRACTION * sourceSize);
+        }
+        return "link".equalsIgnoreCase(config.getSPLIT_COPY()) ? 0 : sourceSize;
+    }
 
-            if (filename.equals(dropboxFileName)) {
-                String outputFilePath = config.getDOWNLOAD_DIRECTORY() + file.name;
+    /**
+     * @return size of a file, -1 if it cannot be read
+     */
+    private static long size(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
 
-                DownloadRunnable download = new DownloadRunnable(file, outputFilePath);
-                service.execute(download);
+    /**
+     * @return mean size of the images downloaded so far, -1 if there are none
+     */
+    private long typicalSize(DownloadManifest manifest) {
+        long total = 0;
+        int count = 0;
+        for (DownloadManifest.Entry entry : manifest.getEntries()) {
+            if (entry.getName().endsWith(".tif")) {
+                total += entry.getSize();
+                count++;
             }
         }
-
-        service.shutdown();
+        return count > 0 ? total / count : -1;
     }
 
-    private Document getDropboxPageFromWeb() throws IOException {
-        if (dropboxPage != null) {
-            return dropboxPage;
+    private void saveState(DownloadManifest manifest) {
+        try {
+            manifest.save();
+            buildState.save();
+            gutters.save();
+        } catch (IOException e) {
+            System.err.println("Error: Cannot save build state. " + e.getMessage());
         }
-
-        String baseUrl = config.getBASE_URL();
-
-        System.out.println("Connecting to the Dropbox page. Please wait a few moments.");
-        System.out.println("  [" + baseUrl + "]");
-        dropboxPage = Jsoup.connect(baseUrl).timeout(config.getMAX_TIMEOUT()).get(); // 30s timeout
-        System.out.println("Connected to Dropbox, extracting file URLs");
-
-        return dropboxPage;
     }
 
-    private List<DropboxFile> getFilesList() throws IOException {
-        Document dbPage = getDropboxPageFromWeb();
-
-        // Look in the file list view
-        Elements listEls = dbPage.select(config.getSELECTOR());
-
-        if (listEls == null || listEls.size() == 0) {
-            System.err.println("Could not find file download links.");
-            System.exit(1);
+    /**
+     * @param imagePath source spread
+     * @param sourceHash SHA-256 of the source, null if not known
+     * @return where to cut the spread, null to cut it the fixed way
+     */
+    private Cut cut(Path imagePath, String sourceHash) {
+        if (!"detect".equalsIgnoreCase(config.getSPLIT_GUTTER()) || sourceHash == null) {
+            return null;
         }
 
-        List<DropboxFile> dbFiles = new ArrayList<>();
-        for (Element el : listEls) {
-            String url = el.attr("href");
-            if (isNotBlank(url)) {
-                // Make sure the URL is for direct download
-                if (url.endsWith("dl=0")) {
-                    url = url.substring(0, url.length() - 1) + "1";
-                }
-
-                // Extract file name from URL
-                String[] parts = url.split("/");
-                String filename = parts[parts.length - 1];
+        long start = System.nanoTime();
+        try {
+            Cut cut = gutters.find(imagePath, sourceHash);
+            metrics.histogram("gutter_seconds").record(System.nanoTime() - start);
+            System.out.println("Cutting [" + imagePath.getFileName() + "] "
+                    + (cut != null ? "at " + cut : "the fixed way, no clear gutter") + ".");
+            return cut;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error: Cannot find the gutter, cutting the fixed way. [" + imagePath.toString() + "] "
+                    + e.getMessage());
+            return null;
+        }
+    }
 
-                if (filename.endsWith("?dl=1")) {
-                    filename = filename.substring(0, filename.length() - 5);
-                }
+    /**
+     * @param pageNumbers page numbers of an image that is not split
+     * @return the first real page number, used to name the copy
+     */
+    private String singlePageName(List<String> pageNumbers) {
+        for (String str : pageNumbers) {
+            if (!str.equalsIgnoreCase("none")) {
+                return str;
+            }
+        }
+        return "";
+    }
 
-                DropboxFile file = new DropboxFile();
-                file.name = URLDecoder.decode(filename, "UTF-8");
-                file.url = url;
+    /**
+     * Put an image that is not split into the split directory under its new name. With
+     * split.copy=link the file is hard linked rather than copied, so large cover and binding
+     * shots are not stored twice; if the two directories are on different file systems it
+     * is copied after all. Either way the destination only appears once it is complete.
+     */
+    private void copyOriginal(Path imagePath, Path destination) {
+        boolean link = "link".equalsIgnoreCase(config.getSPLIT_COPY());
+        System.out.println((link ? "Linking" : "Copying") + " and renaming original file. ["
+                + imagePath.toString() + "] -> [" + destination.toString() + "]");
+
+        Path tmpPath = Paths.get(destination.toString() + PART_SUFFIX);
+        long start = System.nanoTime();
+        try {
+            Files.deleteIfExists(tmpPath);
+            boolean linked = link && link(imagePath, tmpPath);
+            if (!linked) {
+                copy(imagePath, tmpPath);
+            }
 
-                dbFiles.add(file);
+            try {
+                Files.move(tmpPath, destination, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpPath, destination, StandardCopyOption.REPLACE_EXISTING);
             }
+            recordPages(linked ? "link" : "copy", 1, start);
+            pageWritten(destination, null);
+        } catch (IOException e) {
+            deleteQuietly(tmpPath);
+            metrics.counter("split_failures_total", "method", "copy").increment();
+            System.err.println("Failed to copy file. [" + imagePath.toString() + "] to [" + destination.toString() + "] "
+                    + e.getMessage());
         }
-
-        return dbFiles;
     }
 
     /**
-     *
-     * @throws Exception
+     * @return FALSE if the file system cannot link the two paths
      */
-    private void downloadFiles() throws Exception {
-        if (!Files.exists(Paths.get(config.getDOWNLOAD_DIRECTORY()))) {
-            System.out.println("Creating new directory. [" + config.getDOWNLOAD_DIRECTORY() + "]");
-            Runtime.getRuntime().exec("mkdir " + config.getDOWNLOAD_DIRECTORY());
+    private boolean link(Path source, Path target) {
+        try {
+            Files.createLink(target, source);
+            return true;
+        } catch (UnsupportedOperationException | IOException e) {
+            if (!linkFailureReported) {
+                linkFailureReported = true;
+                System.err.println("Cannot hard link into [" + target.getParent() + "], copying instead. "
+                        + e.getMessage());
+            }
+            return false;
         }
+    }
 
-        List<DropboxFile> dbFiles = getFilesList();
-
-        System.out.println();
-        // Download multiple files simultaneously
-        ExecutorService executorService = Executors.newFixedThreadPool(config.getMAX_THREADS());
-        for (DropboxFile dbFile : dbFiles) {
-            String outputFilePath = config.getDOWNLOAD_DIRECTORY() + dbFile.name;
-
-            DownloadRunnable downloader = new DownloadRunnable(dbFile, outputFilePath);
-            executorService.execute(downloader);
+    /**
+     * Copy a file in-process. The kernel moves the bytes between the two files directly
+     * where it can, without passing them through the JVM.
+     */
+    private void copy(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
         }
-
-        executorService.shutdown();
     }
 
     /**
+     * Download, verify and split every image in the metadata in one staged pipeline.
+     * Each stage has its own workers and a bounded queue, so a page is split as soon as its
+     * source TIFF has landed and been verified, while other pages are still downloading.
+     * Decoded crops are handed to a separate encode stage so CPU-bound cropping and
+     * disk-bound writing overlap as well. Images whose outputs are up to date are neither
+     * fetched nor split again.
      *
-     * @param file metadata XLS file
+     * @throws Exception
      */
-    private List<DropboxImageFile> processExcel(DropboxFile file) {
-        List<DropboxImageFile> images = new ArrayList<>();
-
-        if (!file.isXLS()) {
-            System.out.println("File [" + file.name + "] does not exist.");
-            return images;
+    void process() throws Exception {
+        Path inPath = Paths.get(config.getDOWNLOAD_DIRECTORY());
+        Path splitPath = Paths.get(config.getSPLIT_DIRECTORY());
+        if (!dryRun) {
+            Files.createDirectories(inPath);
+            Files.createDirectories(splitPath);
         }
 
-        Path inPath = Paths.get(config.getDOWNLOAD_DIRECTORY() + file.name);
-        try (InputStream in = Files.newInputStream(inPath)) {
+        List<DropboxFile> listing = getFilesList();
+        Map<String, DropboxFile> available = new HashMap<>();
+        for (DropboxFile file : listing) {
+            available.put(file.name.split("\\.")[0], file);
+        }
 
-            Workbook wb = new HSSFWorkbook(in);
-            Sheet sheet = wb.getSheetAt(0);
+        // Metadata comes first, it decides which images are fetched and how they are split
+        Path metadata = metadataPath();
+        if (dryRun && !Files.exists(metadata)) {
+            System.out.println("Plan: download the metadata [" + metadata.toString()
+                    + "], then plan the images from it.");
+            return;
+        }
+        for (DropboxFile file : listing) {
+            if (!dryRun && file.name.equals(metadata.getFileName().toString())) {
+                new DownloadRunnable(file, metadata.toString()).downloadWithRetry();
+            }
+        }
+        List<DropboxImageFile> images = loadMetadata();
+        if (!checkOutputNames(images)) {
+            return;
+        }
 
-            boolean isFirst = true;
-            for (Row row : sheet) {
-                // First row = column headers. Skip.
-                if (isFirst) {
-                    isFirst = false;
-                    continue;
+        String engine = config.getSPLIT_ENGINE();
+        boolean inProcess = "mapped".equalsIgnoreCase(engine)
+                || ("java".equalsIgnoreCase(engine) && imageHandler.canSplit());
+        String method = inProcess ? engine : "imagemagick";
+
+        DownloadManifest manifest = DownloadManifest.load(inPath);
+        buildState = BuildState.load(splitPath);
+        gutters = GutterFinder.load(splitPath, config.getSPLIT_GUTTER_MARGIN());
+        List<String> stale = staleOutputs(images);
+        if (dryRun) {
+            if (Files.isDirectory(inPath)) {
+                manifest.refresh();
+            }
+            plan(images, stale, inPath, splitPath, manifest, method, available, null).print(System.out);
+            return;
+        }
+        removeStale(stale, splitPath);
+        System.out.println("Processing " + images.size() + " images using " + method + " engine.");
+
+        int capacity = config.getPIPELINE_QUEUE_CAPACITY();
+        Stage fetch = newStage("fetch", config.getMAX_THREADS(), capacity);
+        Stage verify = newStage("verify", config.getPIPELINE_VERIFY_THREADS(), capacity);
+        Stage split = newStage("split", config.getPIPELINE_SPLIT_THREADS(), capacity);
+        Stage write = newStage("write", config.getPIPELINE_WRITE_THREADS(), capacity);
+
+        List<String> errors = new ArrayList<>();
+        AtomicInteger pages = new AtomicInteger();
+        int upToDate = 0;
+        long start = System.nanoTime();
+
+        for (DropboxImageFile image : images) {
+            if (image.pageNumbers.length == 0) {
+                continue;
+            }
+
+            DropboxFile file = available.get(image.name);
+            if (file == null) {
+                errors.add("Image specified in XLS file [" + image.name + "] is not in the shared folder.");
+                continue;
+            }
+
+            Path imagePath = inPath.resolve(file.name);
+            List<Path> outputs = outputPaths(image, splitPath);
+            String imageMethod = outputs.size() == 2 ? method : "copy";
+
+            // Checked without hashing: sources not in the manifest are hashed by the verify stage
+            DownloadManifest.Entry known = Files.isRegularFile(imagePath) ? manifest.getIfCurrent(imagePath) : null;
+            if (known != null && isUpToDate(outputs, recipe(image, known, imageMethod))) {
+                upToDate++;
+                continue;
+            }
+
+            fetch.submit(file.name, () -> {
+                DownloadRunnable download = new DownloadRunnable(file, imagePath.toString());
+                download.downloadWithRetry();
+
+                verify.submit(file.name, () -> {
+                    DownloadManifest.Entry source = manifest.refresh(imagePath, download.getHash());
+                    if (source.getStatus() != TiffValidator.Status.OK) {
+                        TiffValidator.Result result = TiffValidator.validate(imagePath);
+                        throw new IOException("Image is " + result.getStatus() + ". " + result.getMessage());
+                    }
+
+                    split.submit(file.name, () -> {
+                        String recipe = recipe(image, source, imageMethod);
+                        if (isUpToDate(outputs, recipe)) {
+                            return;
+                        }
+                        for (Path output : outputs) {
+                            buildState.start(output, recipe);
+                        }
+                        if (fromStore(outputs, source.getHash(), imageMethod)) {
+                            pages.addAndGet(outputs.size());
+                            return;
+                        }
+                        pages.addAndGet(splitImage(image, imagePath, source.getHash(), splitPath, inProcess, write));
+                    });
+                });
+            });
+        }
+
+        // Upstream stages feed downstream ones, so they must drain in order
+        for (Stage stage : Arrays.asList(fetch, verify, split, write)) {
+            stage.finish();
+            if (stage == split) {
+                flushImageMagickQueue();
+            }
+            System.out.println("Stage [" + stage.getName() + "] done, " + stage.getCompleted() + " tasks completed.");
+            errors.addAll(stage.getErrors());
+        }
+        saveState(manifest);
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("Wrote %d pages in %.1f s (%.2f pages/sec), %d images up to date.",
+                pages.get(), seconds, seconds > 0 ? pages.get() / seconds : 0.0, upToDate));
+
+        for (String err : errors) {
+            System.out.println("Error: " + err);
+        }
+    }
+
+    /**
+     * @return a stage with its own workers, or this book's lane of the shared workers in a
+     *         batch
+     */
+    private Stage newStage(String name, int threads, int capacity) {
+        FairPool pool = pools.get(name);
+        if (pool == null) {
+            return new Stage(name, threads, capacity, metrics);
+        }
+        return new Stage(pool, config.getBOOK_ID(), capacity, metrics);
+    }
+
+    /**
+     * Produce the named output pages of one downloaded image. Decoded crops are queued on
+     * the write stage rather than encoded here. A spread waits for its working set from the
+     * memory budget first, and holds it until both of its pages have been written.
+     *
+     * @param sourceHash SHA-256 of the image, under which its gutter is recorded
+     * @return number of output pages
+     * @throws InterruptedException if interrupted while waiting for memory
+     */
+    private int splitImage(DropboxImageFile image, Path imagePath, String sourceHash, Path splitPath,
+                           boolean inProcess, Stage write) throws InterruptedException {
+        List<String> pageNumbers = Arrays.asList(image.pageNumbers);
+
+        if (pageNumbers.contains("none") || pageNumbers.size() != 2) {
+            copyOriginal(imagePath, splitPath.resolve(processName(singlePageName(pageNumbers))));
+            return 1;
+        }
+
+        Path rectoPath = splitPath.resolve(processName(pageNumbers.get(0)));
+        Path versoPath = splitPath.resolve(processName(pageNumbers.get(1)));
+
+        Cut cut = cut(imagePath, sourceHash);
+        if (!inProcess) {
+            queueForImageMagick(new Spread(imagePath, rectoPath, versoPath, cut));
+            return 2;
+        }
+
+        long reserved = memory.acquire(workingSet(imagePath, config.getSPLIT_ENGINE()));
+
+        List<ImageHandler.Crop> crops;
+        long start = System.nanoTime();
+        try {
+            crops = imageHandler.crop(imagePath, cut, rectoPath, versoPath);
+            recordPages(config.getSPLIT_ENGINE(), 2, start);
+        } catch (IOException | RuntimeException e) {
+            metrics.counter("split_failures_total", "method", config.getSPLIT_ENGINE()).increment();
+            System.err.println("In-process split failed, falling back to ImageMagick. ["
+                    + imagePath.toString() + "] " + e.getMessage());
+            try {
+                splitWithImageMagick(Collections.singletonList(new Spread(imagePath, rectoPath, versoPath, cut)));
+            } finally {
+                memory.release(reserved);
+            }
+            return 2;
+        }
+
+        if (crops.isEmpty()) {
+            // Written directly by the mapped engine
+            memory.release(reserved);
+            pageWritten(rectoPath, null);
+            pageWritten(versoPath, null);
+        }
+        AtomicInteger remaining = new AtomicInteger(crops.size());
+        for (ImageHandler.Crop crop : crops) {
+            write.submit(crop.getOutput().getFileName().toString(), () -> {
+                try {
+                    imageHandler.write(crop);
+                    pageWritten(crop.getOutput(), crop.getImage());
+                } finally {
+                    if (remaining.decrementAndGet() == 0) {
+                        memory.release(reserved);
+                    }
                 }
+            });
+        }
+        return 2;
+    }
 
-                if (row.getPhysicalNumberOfCells() != 6) {
-                    continue;
+    /**
+     * Estimate the memory needed to split a spread from its TIFF header, without decoding
+     * it. ImageMagick holds the whole image at 16 bits per channel in each convert process;
+     * the java engine holds the decoded raster, which both crops share; the mapped engine
+     * copies strips and holds next to nothing. Pages read back or kept for tiling add an 8
+     * bit raster of their own.
+     *
+     * @param imagePath source TIFF
+     * @param engine split engine that will handle it
+     * @return working set in bytes
+     */
+    private long workingSet(Path imagePath, String engine) {
+        long pixels;
+        long decoded;
+        boolean copiesStrips;
+        try (MappedTiff tiff = MappedTiff.open(imagePath)) {
+            TiffDirectory directory = tiff.getDirectory();
+            pixels = (long) directory.getWidth() * directory.getHeight();
+            decoded = (pixels * directory.getBitsPerPixel() + 7) / 8;
+            copiesStrips = tiff.isCroppable();
+        } catch (IOException | RuntimeException e) {
+            // Not a TIFF we can read, guess from the size as if it were uncompressed RGB
+            try {
+                pixels = Files.size(imagePath) / 3;
+            } catch (IOException ignored) {
+                return 0;
+            }
+            decoded = pixels * 3;
+            copiesStrips = false;
+        }
+
+        if (ImageMagickBackend.NAME.equalsIgnoreCase(engine)) {
+            return (long) (pixels * CONVERT_BYTES_PER_PIXEL * CONVERT_OVERHEAD);
+        }
+
+        long tiles = tiler.isEnabled() ? pixels * TILER_BYTES_PER_PIXEL : 0;
+        if ("mapped".equalsIgnoreCase(engine) && copiesStrips) {
+            return tiles > 0 ? decoded + tiles : 0;
+        }
+        return decoded + tiles;
+    }
+
+    /**
+     * Make the outputs of an image from the split store if it has every one of them, made
+     * from the same source bytes in the same way. Otherwise remember their keys, so they are
+     * stored once written, and remove older outputs, which may be links into the store and
+     * must not be written over in place.
+     *
+     * @param outputs output pages of the image
+     * @param sourceHash SHA-256 of the source image
+     * @param method split engine, or "copy" for an image that is not split
+     * @return TRUE if the outputs were linked from the store and need not be made
+     */
+    private boolean fromStore(List<Path> outputs, String sourceHash, String method) {
+        if (splitStore == null) {
+            return false;
+        }
+
+        List<String> keys = new ArrayList<>(outputs.size());
+        if (outputs.size() == 1) {
+            keys.add(BuildState.recipe(sourceHash, "copy"));
+        } else {
+            keys.add(BuildState.recipe(sourceHash, method, ImageHandler.CROP_FRACTION, config.getSPLIT_GUTTER(),
+                    config.getSPLIT_GUTTER_MARGIN(), "recto"));
+            keys.add(BuildState.recipe(sourceHash, method, ImageHandler.CROP_FRACTION, config.getSPLIT_GUTTER(),
+                    config.getSPLIT_GUTTER_MARGIN(), "verso"));
+        }
+
+        boolean stored = true;
+        for (String key : keys) {
+            stored &= splitStore.contains(key);
+        }
+
+        try {
+            if (stored) {
+                long saved = 0;
+                for (int i = 0; i < outputs.size(); i++) {
+                    splitStore.get(keys.get(i), outputs.get(i));
+                    saved += Files.size(outputs.get(i));
+                }
+                metrics.counter("store_hits_total", "store", "split").add(outputs.size());
+                metrics.counter("store_bytes_saved_total", "store", "split").add(saved);
+                System.out.println("Linked " + outputs + " from the split store.");
+                for (Path output : outputs) {
+                    pageWritten(output, null);
                 }
+                return true;
+            }
+
+            for (int i = 0; i < outputs.size(); i++) {
+                Files.deleteIfExists(outputs.get(i));
+                storeKeys.put(outputs.get(i), keys.get(i));
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("Error: Cannot use the split store for " + outputs + ". " + e.getMessage());
+        }
+        return false;
+    }
 
-                DropboxImageFile image = new DropboxImageFile();
+    /**
+     * Add a finished file to a content-addressed store, linking it to the stored copy if
+     * there is one already.
+     *
+     * @param kind "download" or "split", for messages and metrics
+     */
+    private void store(ContentStore store, Path file, String key, String kind) {
+        try {
+            long saved = store.put(file, key);
+            if (saved > 0) {
+                metrics.counter("store_hits_total", "store", kind).increment();
+                metrics.counter("store_bytes_saved_total", "store", kind).add(saved);
+                System.out.println("[" + file.toString() + "] is already in the " + kind + " store, linked to it.");
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("Error: Cannot add to the " + kind + " store. [" + file.toString() + "] "
+                    + e.getMessage());
+        }
+    }
 
-                image.name = row.getCell(0).getStringCellValue();
-                image.callNumber = row.getCell(1).getStringCellValue();
-                image.title = row.getCell(2).getStringCellValue();
-                image.publicationDate = row.getCell(3).getStringCellValue();
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
-                String pn = row.getCell(4).getStringCellValue();
-                image.pageNumbers = pn.split(config.getPAGE_NUMBER_DELIMITER());
+    /**
+     * Called once an output page is complete: add it to the split store and make its tiles,
+     * if enabled, and record it as up to date. A page whose tiles fail is not recorded, so it is made again next time.
+     *
+     * @param output finished page
+     * @param image decoded page, null to read it back from disk
+     */
+    private void pageWritten(Path output, BufferedImage image) {
+        String key = storeKeys.remove(output);
+        if (key != null) {
+            store(splitStore, output, key, "split");
+        }
 
-                String so = row.getCell(5).getStringCellValue();
-                try {
-                    image.sortOrder = Integer.parseInt(so);
-                } catch (NumberFormatException e) {
-                    image.sortOrder = Integer.MAX_VALUE;
+        if (tiler.isEnabled()) {
+            long start = System.nanoTime();
+            try {
+                if (image != null) {
+                    tiler.write(image, output);
+                } else {
+                    tiler.write(output);
                 }
+                metrics.histogram("tile_seconds").record(System.nanoTime() - start);
+            } catch (IOException | RuntimeException e) {
+                metrics.counter("tile_failures_total").increment();
+                System.err.println("Error: Cannot write tiles. [" + output.toString() + "] " + e.getMessage());
+                return;
+            }
+        }
+        buildState.done(output);
+    }
+
+    /**
+     * Split a spread with the ImageMagick backend on the calling thread.
+     *
+     * @param original source TIFF
+     * @param recto output path for the west crop
+     * @param verso output path for the east crop
+     */
+    void splitWithImageMagick(Path original, Path recto, Path verso) {
+        splitWithImageMagick(Collections.singletonList(new Spread(original, recto, verso)));
+    }
+
+    /**
+     * Split spreads with the ImageMagick backend on the calling thread, as few processes as
+     * the batch size allows, and record the pages written.
+     */
+    private void splitWithImageMagick(List<Spread> spreads) {
+        long start = System.nanoTime();
+        List<Spread> failed = imageHandler.getBackend().split(spreads);
 
-                images.add(image);
+        int done = spreads.size() - failed.size();
+        if (done > 0) {
+            recordPages("convert", 2 * done, start);
+        }
+        if (!failed.isEmpty()) {
+            metrics.counter("split_failures_total", "method", "convert").add(failed.size());
+        }
+        for (Spread spread : spreads) {
+            if (!failed.contains(spread)) {
+                pageWritten(spread.getRecto(), null);
+                pageWritten(spread.getVerso(), null);
             }
-        } catch (IOException e) {
-            System.err.println("Error: Cannot read file: [" + inPath.toString() + "]");
         }
+    }
 
-        return images;
+    /**
+     * Add a spread to the next ImageMagick batch of the process command. The worker that
+     * fills the batch splits it, once the memory for its largest spread is free.
+     */
+    private void queueForImageMagick(Spread spread) throws InterruptedException {
+        List<Spread> batch;
+        synchronized (imageMagickQueue) {
+            imageMagickQueue.add(spread);
+            if (imageMagickQueue.size() < imageHandler.getBackend().getBatchSize()) {
+                return;
+            }
+            batch = new ArrayList<>(imageMagickQueue);
+            imageMagickQueue.clear();
+        }
+        splitImageMagickBatch(batch);
     }
 
     /**
-     * Convert a Microsoft Office Excel spreadsheet to a .csv file. This file will have the
-     * same name as the original file and will be created in the same directory.
+     * Split what is left in the ImageMagick batch of the process command.
+     */
+    private void flushImageMagickQueue() throws InterruptedException {
+        List<Spread> batch;
+        synchronized (imageMagickQueue) {
+            batch = new ArrayList<>(imageMagickQueue);
+            imageMagickQueue.clear();
+        }
+        if (!batch.isEmpty()) {
+            splitImageMagickBatch(batch);
+        }
+    }
+
+    private void splitImageMagickBatch(List<Spread> batch) throws InterruptedException {
+        long reserved = memory.acquire(workingSet(batch));
+        try {
+            splitWithImageMagick(batch);
+        } finally {
+            memory.release(reserved);
+        }
+    }
+
+    /**
+     * @return memory needed by one ImageMagick process for the batch, which holds one spread
+     *         at a time
+     */
+    private long workingSet(List<Spread> batch) {
+        long bytes = 0;
+        for (Spread spread : batch) {
+            bytes = Math.max(bytes, workingSet(spread.getOriginal(), ImageMagickBackend.NAME));
+        }
+        return bytes;
+    }
+
+    public String processName(String name) {
+        return naming.name(name);
+    }
+
+    /**
+     * @return output file names of an image, one for a single page and two for a spread
+     */
+    private List<String> outputNames(DropboxImageFile image) {
+        List<String> pageNumbers = Arrays.asList(image.pageNumbers);
+        if (pageNumbers.contains("none") || pageNumbers.size() != 2) {
+            return Collections.singletonList(processName(singlePageName(pageNumbers)));
+        }
+        return Arrays.asList(processName(pageNumbers.get(0)), processName(pageNumbers.get(1)));
+    }
+
+    /**
+     * Make sure no two pages of the book would be written to the same file.
      *
-     * @param file metadata XLS file
+     * @param images images to be split
+     * @return TRUE if every output name is distinct, otherwise the collisions are reported
      */
-    private void XLStoCSV(DropboxFile file) {
-        if (!file.isXLS()) {
-            System.out.println("File [" + file.name + "] does not exist.");
-            return;
+    private boolean checkOutputNames(List<DropboxImageFile> images) {
+        Map<String, List<String>> names = new LinkedHashMap<>();
+        for (DropboxImageFile image : images) {
+            if (image.pageNumbers.length > 0) {
+                names.computeIfAbsent(image.name, k -> new ArrayList<>()).addAll(outputNames(image));
+            }
         }
 
-        String csv = null;
+        Map<String, List<String>> collisions = NamingRules.collisions(names);
+        for (Map.Entry<String, List<String>> collision : collisions.entrySet()) {
+            System.err.println("Error: Output [" + collision.getKey() + "] would be written by images "
+                    + collision.getValue() + ".");
+        }
+        if (!collisions.isEmpty()) {
+            System.err.println("Error: " + collisions.size() + " output names collide, nothing was written. "
+                    + "Correct the page numbers in the metadata or the naming rules.");
+        }
+        return collisions.isEmpty();
+    }
 
-        Path inPath = Paths.get(config.getDOWNLOAD_DIRECTORY() + file.name);
-        try (InputStream in = Files.newInputStream(inPath)) {
+    /**
+     * Checks files in file system against the XLS metadata. The download directory is
+     * summarised once in a persistent manifest, re-hashing only files whose size or
+     * modification time changed since the last check. If a file specified in the metadata
+     * does not exist, an attempt will be made to download it. Truncated files are moved back
+     * to a partial download so they resume; corrupt files are reported.
+     *
+     * @throws IOException
+     */
+    private void checkDownload() throws IOException {
+        System.out.println("Checking downloaded files.");
 
-            Workbook wb = new HSSFWorkbook(in);
-            Sheet sheet = wb.getSheetAt(0);
+        List<DropboxImageFile> images = loadMetadata();
+        List<String> errors = new ArrayList<>();
 
-            int max_cols = 0;
-            // Discover maximum number of columns
-            for (Row row : sheet) {
-                if (row.getLastCellNum() > max_cols) {
-                    max_cols = row.getLastCellNum();
+        Path downloadPath = Paths.get(config.getDOWNLOAD_DIRECTORY());
+        DownloadManifest manifest = DownloadManifest.load(downloadPath);
+        manifest.refresh();
+        manifest.save();
+        System.out.println("Manifest updated, " + manifest.getHashed() + " of "
+                + manifest.getEntries().size() + " files hashed.");
+
+        Map<String, DownloadManifest.Entry> files = manifest.byBaseName();
+        List<String> missing = new ArrayList<>();
+        for (DropboxImageFile image : images) {
+            DownloadManifest.Entry entry = files.get(image.name);
+
+            if (entry == null) {
+                missing.add(image.name);
+            } else if (entry.getStatus() == TiffValidator.Status.CORRUPT) {
+                errors.add("Image [" + entry.getName() + "] is corrupt.");
+            } else if (entry.getStatus() == TiffValidator.Status.TRUNCATED) {
+                System.out.println("Image [" + entry.getName() + "] is truncated, resuming download.");
+                Files.move(downloadPath.resolve(entry.getName()),
+                        downloadPath.resolve(entry.getName() + PART_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+                missing.add(image.name);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            errors.addAll(downloadFiles(missing));
+        }
+
+        if (errors.size() > 0) {
+            for (String err : errors) {
+                System.out.println("Error: " + err);
+            }
+        }
+    }
+
+    /**
+     * Check the structure of every TIFF in the download directory in parallel, without
+     * hashing or decoding them, and write a JSON report. Meant to catch truncated and
+     * corrupt downloads in seconds, before the split.
+     *
+     * @throws IOException if the directory cannot be listed or the report written
+     */
+    private void verify() throws IOException {
+        Path downloadPath = Paths.get(config.getDOWNLOAD_DIRECTORY());
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(downloadPath)) {
+            for (Path p : stream) {
+                String name = p.getFileName().toString().toLowerCase();
+                if (!name.startsWith(".") && (name.endsWith(".tif") || name.endsWith(".tiff"))
+                        && Files.isRegularFile(p)) {
+                    files.add(p);
                 }
             }
+        }
+        Collections.sort(files);
 
-            StringBuilder sb = new StringBuilder();
-            for (Row row : sheet) {
-                for (int i = 0; i < max_cols; i++) {
-                    String value = row.getCell(i).getStringCellValue();
-                    boolean hasComma = value.contains(",");
+        System.out.println("Verifying " + files.size() + " TIFF files in [" + downloadPath.toString() + "]");
+        TiffScanner.Report report = TiffScanner.scan(files, config.getVERIFY_THREADS());
 
-                    if (hasComma) {
-                        sb.append('"');
-                        sb.append(value);
-                        sb.append('"');
+        for (int i = 0; i < files.size(); i++) {
+            TiffValidator.Result result = report.getResult(i);
+            metrics.counter("verify_files_total", "status", result.getStatus().name().toLowerCase()).increment();
+            if (!result.isOk()) {
+                System.out.println("Error: Image [" + files.get(i).getFileName() + "] is "
+                        + result.getStatus().name().toLowerCase() + ". " + result.getMessage());
+            }
+        }
+
+        Path reportPath = isBlank(config.getVERIFY_REPORT())
+                ? downloadPath.resolve(VERIFY_REPORT) : Paths.get(config.getVERIFY_REPORT());
+        report.write(reportPath);
+
+        Map<TiffValidator.Status, Integer> counts = report.counts();
+        System.out.println(String.format("Verified %d files in %.2f s: %d ok, %d truncated, %d corrupt. Report [%s]",
+                files.size(), report.getSeconds(), counts.get(TiffValidator.Status.OK),
+                counts.get(TiffValidator.Status.TRUNCATED), counts.get(TiffValidator.Status.CORRUPT), reportPath));
+    }
+
+    /**
+     * Keep running and split images as they land in the download directory, so pages appear
+     * within seconds of a scan without starting a JVM for each batch. Every image is brought
+     * up to date once at start. After that only TIFFs that changed are checked and split; a
+     * changed metadata spreadsheet, or lost events, bring every image up to date again.
+     * Stops when the JVM is asked to shut down, after the current pass.
+     *
+     * @throws IOException if the directories cannot be watched or the status port bound
+     * @throws InterruptedException
+     */
+    private void watch() throws IOException, InterruptedException {
+        Path downloadPath = Paths.get(config.getDOWNLOAD_DIRECTORY()).toAbsolutePath().normalize();
+        Path metadata = metadataPath().toAbsolutePath().normalize();
+        Path[] directories = metadata.getParent().equals(downloadPath)
+                ? new Path[] {downloadPath} : new Path[] {downloadPath, metadata.getParent()};
+
+        Thread main = Thread.currentThread();
+        try (DirectoryWatcher watcher = new DirectoryWatcher(TimeUnit.SECONDS.toMillis(config.getWATCH_SETTLE()),
+                directories)) {
+            WatchStatus status = new WatchStatus(watcher::getPending);
+            metrics.gauge("watch_pending_files", watcher::getPending);
+            StatusServer server = config.getWATCH_PORT() > 0
+                    ? new StatusServer(config.getWATCH_PORT(), status::toJson, metrics::toPrometheus) : null;
+
+            Thread hook = new Thread(() -> {
+                status.setState(WatchStatus.STOPPING);
+                try {
+                    watcher.close();
+                    main.join(WATCH_SHUTDOWN_GRACE);
+                } catch (IOException | InterruptedException e) {
+                    // Stopping anyway
+                }
+            }, "watch-shutdown");
+            Runtime.getRuntime().addShutdownHook(hook);
+
+            try {
+                System.out.println("Watching [" + downloadPath.toString() + "] for new images."
+                        + (server != null ? " Status at [http://127.0.0.1:" + server.getPort() + "/status]" : ""));
+                List<DropboxImageFile> images = loadMetadata();
+                watchPass(images, images, status);
+
+                DirectoryWatcher.Changes changes;
+                while ((changes = watcher.take()) != null) {
+                    if (changes.isOverflow() || changes.getFiles().contains(metadata)) {
+                        System.out.println((changes.isOverflow() ? "Changes were missed" : "Metadata changed")
+                                + ", checking every image.");
+                        images = loadMetadata();
+                        watchPass(images, images, status);
                     } else {
-                        sb.append(value);
+                        watchPass(images, changedImages(images, changes.getFiles(), downloadPath, status), status);
                     }
+                }
+            } finally {
+                if (server != null) {
+                    server.close();
+                }
+                try {
+                    Runtime.getRuntime().removeShutdownHook(hook);
+                } catch (IllegalStateException e) {
+                    // Already shutting down
+                }
+            }
+        }
+        System.out.println("Stopped watching.");
+    }
 
-                    if (i != max_cols - 1) {
-                        sb.append(",");
-                    } else {
-                        sb.append("\n");
+    /**
+     * Bring images up to date, leaving the watch running if it fails.
+     *
+     * @param metadata every image in the metadata
+     * @param images images to bring up to date
+     */
+    private void watchPass(List<DropboxImageFile> metadata, List<DropboxImageFile> images, WatchStatus status)
+            throws InterruptedException {
+        if (images.isEmpty()) {
+            return;
+        }
+
+        status.setState(WatchStatus.WORKING);
+        long start = System.nanoTime();
+        try {
+            int pages = imageMagick(metadata, images);
+            status.passFinished(images.size(), pages, (System.nanoTime() - start) / 1e9);
+        } catch (IOException | RuntimeException e) {
+            metrics.counter("watch_errors_total").increment();
+            System.err.println("Error: Cannot split images. " + e.getMessage());
+            status.error(e.getMessage());
+        } finally {
+            status.setState(WatchStatus.IDLE);
+        }
+    }
+
+    /**
+     * Check changed TIFFs without decoding them and pick the images they are the source of.
+     * A file that is not whole, typically because it is still being written, is skipped; it
+     * is checked again when it next changes.
+     *
+     * @param images images in the metadata
+     * @param files changed files
+     * @return images whose source changed and is whole
+     */
+    private List<DropboxImageFile> changedImages(List<DropboxImageFile> images, Set<Path> files, Path downloadPath,
+                                                 WatchStatus status) {
+        Map<String, Path> whole = new LinkedHashMap<>();
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            String lower = name.toLowerCase();
+            if (!file.getParent().equals(downloadPath) || !(lower.endsWith(".tif") || lower.endsWith(".tiff"))) {
+                continue;
+            }
+
+            TiffValidator.Status result;
+            String message;
+            try {
+                TiffValidator.Result check = TiffValidator.validate(file);
+                result = check.getStatus();
+                message = check.getMessage();
+            } catch (IOException e) {
+                result = TiffValidator.Status.CORRUPT;
+                message = "Cannot read file. " + e.getMessage();
+            }
+            metrics.counter("watch_files_total", "status", result.name().toLowerCase()).increment();
+
+            if (result == TiffValidator.Status.OK) {
+                whole.put(name, file);
+                status.checked(name, null);
+            } else {
+                System.out.println("Skipping [" + name + "], it is " + result.name().toLowerCase() + ". " + message);
+                status.checked(name, result.name().toLowerCase() + ". " + message);
+            }
+        }
+
+        List<DropboxImageFile> changed = new ArrayList<>();
+        for (DropboxImageFile image : images) {
+            if (whole.remove(sourceName(image, null)) != null) {
+                changed.add(image);
+            }
+        }
+        for (String name : whole.keySet()) {
+            System.out.println("Image [" + name + "] is not in the metadata, not splitting it.");
+        }
+        return changed;
+    }
+
+    /**
+     * Download a set of files in one pass. The shared folder is listed once and all files
+     * are fetched together by the configured download engine, each retried with backoff.
+     * Blocks until every download has finished.
+     *
+     * @param filenames file names without extension, as in the metadata spreadsheet
+     * @return one message for each file that could not be downloaded
+     * @throws IOException if the shared folder cannot be listed
+     */
+    private List<String> downloadFiles(List<String> filenames) throws IOException {
+        Map<String, DropboxFile> available = new HashMap<>();
+        for (DropboxFile file : getFilesList()) {
+            available.put(file.name.split("\\.")[0], file);
+        }
+
+        System.out.println();
+        System.out.println("Trying to re-download " + filenames.size() + " files.");
+
+        List<String> errors = new ArrayList<>();
+        Map<String, Future<?>> downloads = new LinkedHashMap<>();
+
+        ExecutorService service = useAsyncDownloads() ? null : Executors.newFixedThreadPool(config.getMAX_THREADS());
+        AsyncDownloader downloader = useAsyncDownloads() ? newAsyncDownloader() : null;
+        int recovered = 0;
+        try {
+            for (String filename : filenames) {
+                DropboxFile file = available.get(filename);
+                if (file == null) {
+                    errors.add("Image specified in XLS file [" + filename + "] is not in the shared folder.");
+                    continue;
+                }
+
+                downloads.put(filename, submitDownload(file, service, downloader));
+            }
+
+            for (Map.Entry<String, Future<?>> download : downloads.entrySet()) {
+                try {
+                    download.getValue().get();
+                    recovered++;
+                } catch (ExecutionException e) {
+                    errors.add("Failed to download [" + download.getKey() + "]. " + e.getCause().getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for downloads.");
+                }
+            }
+        } finally {
+            if (service != null) {
+                service.shutdownNow();
+            }
+            if (downloader != null) {
+                downloader.close();
+            }
+        }
+
+        System.out.println("Recovered " + recovered + " of " + filenames.size() + " files.");
+        return errors;
+    }
+
+    /**
+     * @return files in the shared folder, listed once per run
+     * @throws IOException if the folder cannot be listed
+     */
+    private List<DropboxFile> getFilesList() throws IOException {
+        if (filesList == null) {
+            List<DropboxFile> files = new ArrayList<>();
+            listFiles(files::add);
+            filesList = files;
+        }
+        return filesList;
+    }
+
+    /**
+     * List the shared folder, handing over each file as soon as its link has been read. The
+     * page is scanned as it arrives rather than parsed into a document, so memory use does
+     * not grow with the size of the folder.
+     *
+     * The list is kept in the download directory together with the server's ETag and
+     * Last-Modified validators, and later runs revalidate it with a conditional request, so
+     * an unchanged folder costs one 304 response instead of a page download. If Dropbox
+     * cannot be reached, the cached list is used.
+     *
+     * @param consumer receives the files in page order
+     * @throws IOException if the folder cannot be listed and there is no cached list, or
+     *         the page has no download links
+     */
+    private void listFiles(Consumer<DropboxFile> consumer) throws IOException {
+        if (filesList != null) {
+            filesList.forEach(consumer);
+            return;
+        }
+
+        String baseUrl = config.getBASE_URL();
+        Path downloadPath = Paths.get(config.getDOWNLOAD_DIRECTORY());
+        ListingCache cache = ListingCache.load(downloadPath, baseUrl);
+
+        System.out.println("Connecting to the Dropbox page. Please wait a few moments.");
+        System.out.println("  [" + baseUrl + "]");
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl).openConnection();
+        connection.setConnectTimeout(config.getMAX_TIMEOUT());
+        connection.setReadTimeout(config.getMAX_TIMEOUT());
+        if (cache != null && cache.getEtag() != null) {
+            connection.setRequestProperty("If-None-Match", cache.getEtag());
+        }
+        if (cache != null && cache.getLastModified() != null) {
+            connection.setRequestProperty("If-Modified-Since", cache.getLastModified());
+        }
+
+        int status;
+        try {
+            status = connection.getResponseCode();
+        } catch (IOException e) {
+            if (cache == null) {
+                throw e;
+            }
+            System.err.println("Error: Cannot reach Dropbox, using the cached file list. " + e.getMessage());
+            cache.getFiles().forEach(consumer);
+            return;
+        }
+
+        if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cache != null) {
+            connection.disconnect();
+            System.out.println("Dropbox folder unchanged, using the cached file list.");
+            cache.getFiles().forEach(consumer);
+            return;
+        } else if (status != HttpURLConnection.HTTP_OK) {
+            connection.disconnect();
+            throw new HttpStatusException(status);
+        }
+
+        System.out.println("Connected to Dropbox, extracting file URLs");
+        Files.createDirectories(downloadPath);
+
+        int[] count = {0};
+        try (ListingCache.Output output = ListingCache.create(downloadPath, baseUrl,
+                connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"));
+             Reader reader = new InputStreamReader(connection.getInputStream(), charset(connection.getContentType()))) {
+            extractFiles(reader, baseUrl, file -> {
+                try {
+                    output.add(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                count[0]++;
+                consumer.accept(file);
+            });
+
+            if (count[0] == 0) {
+                throw new IOException("Could not find file download links.");
+            }
+            output.commit();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Find the download links of a folder page. Selectors that are a plain chain of tags,
+     * ids and classes are matched while the page streams in; anything else falls back to
+     * parsing the whole page.
+     */
+    private void extractFiles(Reader reader, String baseUrl, Consumer<DropboxFile> consumer) throws IOException {
+        Consumer<String> links = url -> {
+            DropboxFile file = toDropboxFile(url);
+            if (file != null) {
+                consumer.accept(file);
+            }
+        };
+
+        ChainSelector selector;
+        try {
+            selector = ChainSelector.parse(config.getSELECTOR());
+        } catch (IllegalArgumentException e) {
+            Document dbPage = Jsoup.parse(IOUtils.toString(reader), baseUrl);
+            for (Element el : dbPage.select(config.getSELECTOR())) {
+                links.accept(el.attr("href"));
+            }
+            return;
+        }
+
+        LinkScanner.scan(reader, selector, "href", links);
+    }
+
+    /**
+     * @param url link from the folder page
+     * @return the file it downloads, null if the link is empty
+     */
+    private DropboxFile toDropboxFile(String url) {
+        if (isBlank(url)) {
+            return null;
+        }
+
+        // Make sure the URL is for direct download
+        if (url.endsWith("dl=0")) {
+            url = url.substring(0, url.length() - 1) + "1";
+        }
+
+        // Extract file name from URL
+        String[] parts = url.split("/");
+        String filename = parts[parts.length - 1];
+
+        if (filename.endsWith("?dl=1")) {
+            filename = filename.substring(0, filename.length() - 5);
+        }
+
+        DropboxFile file = new DropboxFile();
+        file.name = URLDecoder.decode(filename, StandardCharsets.UTF_8);
+        file.url = url;
+        return file;
+    }
+
+    /**
+     * @param contentType Content-Type header, may be null
+     * @return charset named in the header, UTF-8 if there is none
+     */
+    private Charset charset(String contentType) {
+        if (contentType != null) {
+            for (String param : contentType.split(";")) {
+                param = param.trim();
+                if (param.toLowerCase().startsWith("charset=")) {
+                    try {
+                        return Charset.forName(param.substring(8).replace("\"", "").trim());
+                    } catch (IllegalArgumentException e) {
+                        break;
                     }
                 }
             }
+        }
+        return StandardCharsets.UTF_8;
+    }
 
-            csv = sb.toString();
+    /**
+     *
+     * @throws Exception
+     */
+    private void downloadFiles() throws Exception {
+        if (!Files.exists(Paths.get(config.getDOWNLOAD_DIRECTORY()))) {
+            System.out.println("Creating new directory. [" + config.getDOWNLOAD_DIRECTORY() + "]");
+            Files.createDirectories(Paths.get(config.getDOWNLOAD_DIRECTORY()));
+        }
 
+        System.out.println();
+        // Download multiple files simultaneously, starting each as soon as it is listed
+        if (useAsyncDownloads()) {
+            try (AsyncDownloader downloader = newAsyncDownloader()) {
+                List<CompletableFuture<?>> downloads = new ArrayList<>();
+
+                // Waiting for a free transfer happens off the listing thread, so a long
+                // wait does not stall the listing response
+                ExecutorService submitter = Executors.newSingleThreadExecutor();
+                try {
+                    listFiles(dbFile -> submitter.execute(() -> {
+                        Path outputFilePath = Paths.get(config.getDOWNLOAD_DIRECTORY() + dbFile.name);
+                        try {
+                            downloads.add(downloader.download(dbFile.url, outputFilePath).whenComplete((path, e) -> {
+                                if (e != null) {
+                                    System.err.println("Error: Failed to download file. [" + dbFile.name + "] "
+                                            + e.getMessage());
+                                }
+                            }));
+                        } catch (IOException e) {
+                            System.err.println("Error: Failed to download file. [" + dbFile.name + "] " + e.getMessage());
+                        }
+                    }));
+                } finally {
+                    submitter.shutdown();
+                    submitter.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                }
+
+                try {
+                    CompletableFuture.allOf(downloads.toArray(new CompletableFuture<?>[0])).get();
+                } catch (ExecutionException e) {
+                    // Reported per file
+                }
+            }
+            return;
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(config.getMAX_THREADS());
+        try {
+            listFiles(dbFile -> {
+                String outputFilePath = config.getDOWNLOAD_DIRECTORY() + dbFile.name;
+
+                DownloadRunnable downloader = new DownloadRunnable(dbFile, outputFilePath);
+                executorService.execute(downloader);
+            });
+        } finally {
+            executorService.shutdown();
+        }
+        executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return TRUE if downloads go through the shared asynchronous HTTP client rather than
+     *         one blocking connection per worker thread
+     */
+    private boolean useAsyncDownloads() {
+        return "http".equalsIgnoreCase(config.getDOWNLOAD_ENGINE());
+    }
+
+    private AsyncDownloader newAsyncDownloader() {
+        return new AsyncDownloader(config.getMAX_TIMEOUT(), config.getDOWNLOAD_HTTP2(), config.getMAX_THREADS(),
+                config.getDOWNLOAD_RETRIES(), config.getDOWNLOAD_BACKOFF(),
+                newConcurrencyLimiter(config.getDOWNLOAD_CONCURRENCY()), bandwidth, metrics);
+    }
+
+    /**
+     * @param ceiling most transfers the download engine can run at once
+     * @return limiter starting at threads.max, adaptive if download.adaptive is set
+     */
+    private ConcurrencyLimiter newConcurrencyLimiter(int ceiling) {
+        if (!config.getDOWNLOAD_ADAPTIVE()) {
+            return ConcurrencyLimiter.fixed(ceiling);
+        }
+        return new ConcurrencyLimiter(config.getDOWNLOAD_CONCURRENCY_MIN(), config.getMAX_THREADS(), ceiling);
+    }
+
+    /**
+     * Start downloading a file into the download directory with whichever engine is in use.
+     *
+     * @param file file to download
+     * @param service workers for the url engine
+     * @param downloader client for the http engine
+     * @return completes when the file is downloaded
+     * @throws IOException if interrupted while waiting to start
+     */
+    private Future<?> submitDownload(DropboxFile file, ExecutorService service, AsyncDownloader downloader)
+            throws IOException {
+        String outputFile = config.getDOWNLOAD_DIRECTORY() + file.name;
+        if (downloader != null) {
+            return downloader.download(file.url, Paths.get(outputFile));
+        }
+
+        DownloadRunnable download = new DownloadRunnable(file, outputFile);
+        return service.submit(() -> {
+            download.downloadWithRetry();
+            return null;
+        });
+    }
+
+    /**
+     * Release the worker threads owned by this book.
+     */
+    void close() {
+        tiler.close();
+    }
+
+    /**
+     * @return directory for tiles, see tiles.directory
+     */
+    private Path tilesPath() {
+        if (isBlank(config.getTILES_DIRECTORY())) {
+            return Paths.get(config.getSPLIT_DIRECTORY()).resolve("tiles");
+        }
+        return Paths.get(config.getTILES_DIRECTORY());
+    }
+
+    /**
+     * @return path of the metadata spreadsheet, see metadata.file
+     */
+    private Path metadataPath() {
+        return Paths.get(config.getDOWNLOAD_DIRECTORY()).resolve(config.getMETADATA_FILE());
+    }
+
+    /**
+     * Image records from the metadata spreadsheet. Records are read from the binary
+     * {@link MetadataIndex} when it matches the spreadsheet on disk; otherwise the
+     * spreadsheet is parsed and the index rebuilt for the next command.
+     *
+     * @return list of DropboxImageFiles
+     */
+    private List<DropboxImageFile> loadMetadata() {
+        Path inPath = metadataPath();
+        String delimiter = config.getPAGE_NUMBER_DELIMITER();
+
+        List<DropboxImageFile> images = MetadataIndex.load(inPath, delimiter);
+        if (images != null) {
+            return images;
+        }
+
+        images = processExcel(inPath);
+        if (!images.isEmpty()) {
+            try {
+                MetadataIndex.save(inPath, delimiter, images);
+            } catch (IOException e) {
+                System.err.println("Error: Cannot write metadata index. ["
+                        + MetadataIndex.indexPath(inPath).toString() + "]");
+            }
+        }
+        return images;
+    }
+
+    /**
+     *
+     * @param inPath metadata XLS file
+     */
+    List<DropboxImageFile> processExcel(Path inPath) {
+        List<DropboxImageFile> images = new ArrayList<>();
+        processExcel(inPath, images::add);
+        return images;
+    }
+
+    /**
+     * Stream the metadata spreadsheet, handing each image record to the consumer as soon as
+     * its row has been read.
+     *
+     * @param inPath metadata XLS or XLSX file
+     * @param consumer receives one record per image row
+     */
+    private void processExcel(Path inPath, Consumer<DropboxImageFile> consumer) {
+        if (!isXLS(inPath) || !Files.exists(inPath)) {
+            System.out.println("File [" + inPath.toString() + "] does not exist.");
+            return;
+        }
+
+        try {
+            SpreadsheetReader.read(inPath, new RowHandler() {
+                boolean isFirst = true;
+
+                @Override
+                public void row(int index, String[] cells) {
+                    // First row = column headers. Skip.
+                    if (isFirst) {
+                        isFirst = false;
+                        return;
+                    }
+
+                    if (physicalCells(cells) != 6) {
+                        return;
+                    }
+
+                    DropboxImageFile image = new DropboxImageFile();
+
+                    image.name = cells[0];
+                    image.callNumber = cells[1];
+                    image.title = cells[2];
+                    image.publicationDate = cells[3];
+
+                    String pn = cells[4];
+                    image.pageNumbers = pn.split(config.getPAGE_NUMBER_DELIMITER());
+
+                    String so = cells[5];
+                    try {
+                        image.sortOrder = Integer.parseInt(so);
+                    } catch (NumberFormatException e) {
+                        image.sortOrder = Integer.MAX_VALUE;
+                    }
+
+                    consumer.accept(image);
+                }
+            });
         } catch (IOException e) {
-            System.err.println("Error: Failed to read file. [" + inPath.toString() + "]");
+            System.err.println("Error: Cannot read file: [" + inPath.toString() + "]");
+        }
+    }
+
+    private int physicalCells(String[] cells) {
+        int count = 0;
+        for (String cell : cells) {
+            if (cell != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Convert a Microsoft Office Excel spreadsheet to a .csv file. This file will have the
+     * same name as the original file and will be created in the same directory. Rows are
+     * written as they are read, so the workbook is never held in memory.
+     *
+     * @param inPath metadata XLS file
+     */
+    void XLStoCSV(Path inPath) {
+        if (!isXLS(inPath) || !Files.exists(inPath)) {
+            System.out.println("File [" + inPath.toString() + "] does not exist.");
+            return;
         }
 
+        String name = inPath.getFileName().toString();
+        String outName = name.substring(0, name.lastIndexOf('.'));
 
-        String outName = file.name;
-        if (outName.endsWith(".xls")) {
-            outName = outName.substring(0, outName.length() - 4);
+        Path outPath = inPath.resolveSibling(outName + ".csv");
+        if (Files.exists(outPath)) {
+            return;
         }
 
-        Path outPath = Paths.get(config.getDOWNLOAD_DIRECTORY() + outName + ".csv");
-        if (isBlank(csv) || Files.exists(outPath)) {
+        // Written under a temporary name so a failed conversion leaves nothing behind
+        Path tmpPath = Paths.get(outPath.toString() + PART_SUFFIX);
+        long rows;
+        try (Writer out = Files.newBufferedWriter(tmpPath, StandardCharsets.UTF_8)) {
+            rows = writeCSV(inPath, out);
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error: Failed to convert file. [" + inPath.toString() + "] to ["
+                    + outPath.toString() + "]");
+            deleteQuietly(tmpPath);
             return;
         }
-        try (OutputStream out = Files.newOutputStream(outPath)) {
-            IOUtils.write(csv, out, "UTF-8");
+
+        try {
+            if (rows == 0) {
+                Files.delete(tmpPath);
+            } else {
+                Files.move(tmpPath, outPath);
+            }
         } catch (IOException e) {
             System.err.println("Error: Failed to write file. [" + outPath.toString() + "]");
         }
     }
 
+    /**
+     * @return number of rows written
+     */
+    private long writeCSV(Path inPath, Writer out) throws IOException {
+        long[] rows = {0};
+        SpreadsheetReader.read(inPath, new RowHandler() {
+            int max_cols = -1;
+
+            @Override
+            public void columns(int count) {
+                max_cols = count;
+            }
+
+            @Override
+            public void row(int index, String[] cells) {
+                int cols = Math.max(max_cols, cells.length);
+                try {
+                    for (int i = 0; i < cols; i++) {
+                        String value = i < cells.length && cells[i] != null ? cells[i] : "";
+                        boolean hasComma = value.contains(",");
+
+                        if (hasComma) {
+                            out.write('"');
+                            out.write(value);
+                            out.write('"');
+                        } else {
+                            out.write(value);
+                        }
+
+                        out.write(i != cols - 1 ? "," : "\n");
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                rows[0]++;
+            }
+        });
+        return rows[0];
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // Nothing more to do
+        }
+    }
+
+    private boolean isXLS(Path path) {
+        String name = path.getFileName().toString();
+        return name.endsWith(".xls") || name.endsWith(".xlsx");
+    }
+
     private boolean isBlank(String str) {
         return str == null || str.equals("");
     }
@@ -0,0 +1,169 @@
+package edu.jhu.tool;
+
+import com.google.inject.Guice;
+import edu.jhu.tool.config.AppConfig;
+import edu.jhu.tool.config.AppModule;
+import edu.jhu.tool.download.BandwidthLimiter;
+import edu.jhu.tool.download.ConcurrencyLimiter;
+import edu.jhu.tool.metrics.Metrics;
+import edu.jhu.tool.pipeline.FairPool;
+import edu.jhu.tool.pipeline.MemoryBudget;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the process command for a shelf of books in one JVM. The books file is a properties
+ * file naming the books and overriding settings of app.properties for each of them:
+ *
+ * <pre>
+ * books=Ha2, Ha3
+ * Ha2.baseUrl=https://www.dropbox.com/sh/...
+ * Ha2.metadata.file=Ha2 files list.xls
+ * Ha2.download.directory=/data/Ha2/raw/
+ * Ha2.split.directory=/data/Ha2/
+ * Ha3.baseUrl=...
+ * </pre>
+ *
+ * The book.id of each book is its name in the list unless overridden. All books share one
+ * download concurrency limit, rate cap and split memory budget, and each pipeline stage has one pool of workers,
+ * sized by the batch configuration, that serves the books in progress in turn.
+ */
+class Batch {
+
+    private static final String BOOKS = "books";
+    private static final String BOOK_ID = "book.id";
+
+    private final AppConfig config;
+    private final Metrics metrics;
+    private final BandwidthLimiter bandwidth;
+    private final ConcurrencyLimiter downloadLimiter;
+    private final MemoryBudget memory;
+
+    Batch(AppConfig config, Metrics metrics, BandwidthLimiter bandwidth, ConcurrencyLimiter downloadLimiter,
+          MemoryBudget memory) {
+        this.config = config;
+        this.metrics = metrics;
+        this.bandwidth = bandwidth;
+        this.downloadLimiter = downloadLimiter;
+        this.memory = memory;
+    }
+
+    /**
+     * Process every book in the books file, batch.books at a time. A failed book is
+     * reported and does not stop the others.
+     *
+     * @param booksFile books file
+     * @throws InterruptedException if interrupted while waiting for the books
+     */
+    void run(Path booksFile) throws InterruptedException {
+        Properties books = new Properties();
+        try (Reader in = Files.newBufferedReader(booksFile, StandardCharsets.UTF_8)) {
+            books.load(in);
+        } catch (IOException e) {
+            System.err.println("Error: Cannot read books file. [" + booksFile.toString() + "]");
+            return;
+        }
+
+        List<String> ids = new ArrayList<>();
+        for (String id : books.getProperty(BOOKS, "").split("[,\\s]+")) {
+            if (!id.isEmpty()) {
+                ids.add(id);
+            }
+        }
+        if (ids.isEmpty()) {
+            System.err.println("Error: No books listed in [" + booksFile.toString() + "]. Set " + BOOKS + "=id, id, ...");
+            return;
+        }
+
+        Map<String, FairPool> pools = new LinkedHashMap<>();
+        pools.put("fetch", new FairPool("fetch", config.getMAX_THREADS(), metrics));
+        pools.put("verify", new FairPool("verify", config.getPIPELINE_VERIFY_THREADS(), metrics));
+        pools.put("split", new FairPool("split", config.getPIPELINE_SPLIT_THREADS(), metrics));
+        pools.put("write", new FairPool("write", config.getPIPELINE_WRITE_THREADS(), metrics));
+
+        System.out.println("Processing " + ids.size() + " books, " + config.getBATCH_BOOKS() + " at a time.");
+        long start = System.nanoTime();
+
+        ExecutorService runner = Executors.newFixedThreadPool(Math.max(1, Math.min(config.getBATCH_BOOKS(), ids.size())));
+        Map<String, Future<?>> results = new LinkedHashMap<>();
+        for (String id : ids) {
+            Properties overrides = overrides(books, id);
+            results.put(id, runner.submit(() -> {
+                runBook(overrides, pools);
+                return null;
+            }));
+        }
+        runner.shutdown();
+
+        List<String> errors = new ArrayList<>();
+        for (Map.Entry<String, Future<?>> result : results.entrySet()) {
+            try {
+                result.getValue().get();
+            } catch (ExecutionException e) {
+                errors.add("Book [" + result.getKey() + "] failed. " + e.getCause().getMessage());
+            }
+        }
+        for (FairPool pool : pools.values()) {
+            pool.shutdown();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("Processed %d books in %.1f s, %d failed.",
+                ids.size(), seconds, errors.size()));
+        for (String err : errors) {
+            System.out.println("Error: " + err);
+        }
+    }
+
+    private void runBook(Properties overrides, Map<String, FairPool> pools) throws Exception {
+        String id = overrides.getProperty(BOOK_ID);
+        AppConfig bookConfig = Guice.createInjector(new AppModule(overrides)).getInstance(AppConfig.class);
+
+        System.out.println("Book [" + id + "] started.");
+        long start = System.nanoTime();
+        App app = new App(bookConfig, metrics, bandwidth, downloadLimiter, pools, memory);
+        try {
+            app.process();
+            metrics.counter("books_total", "result", "done").increment();
+        } catch (Exception e) {
+            metrics.counter("books_total", "result", "failed").increment();
+            throw e;
+        } finally {
+            app.close();
+            metrics.histogram("book_seconds").record(System.nanoTime() - start);
+        }
+        System.out.println(String.format("Book [%s] finished in %.1f s.", id, (System.nanoTime() - start) / 1e9));
+    }
+
+    /**
+     * @param books contents of the books file
+     * @param id book name
+     * @return settings of the book with its prefix removed
+     */
+    static Properties overrides(Properties books, String id) {
+        Properties overrides = new Properties();
+        overrides.setProperty(BOOK_ID, id);
+
+        String prefix = id + ".";
+        for (String key : books.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                overrides.setProperty(key.substring(prefix.length()), books.getProperty(key));
+            }
+        }
+        return overrides;
+    }
+
+}
@@ -0,0 +1,24 @@
+package edu.jhu.tool;
+
+/**
+ * A file in the shared Dropbox folder.
+ */
+class DropboxFile {
+    String name;
+    String url;
+
+    boolean isImage() {
+        return name.endsWith(".tif");
+    }
+    boolean isXLS() {
+        return name.endsWith(".xls") || name.endsWith(".xlsx");
+    }
+
+    @Override
+    public String toString() {
+        return "DropboxFile{" +
+                "name='" + name + '\'' +
+                ", url='" + url + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,27 @@
+package edu.jhu.tool;
+
+import java.util.Arrays;
+
+/**
+ * An image described by a row of the metadata spreadsheet.
+ */
+class DropboxImageFile extends DropboxFile {
+    String callNumber;
+    String title;
+    String publicationDate;
+    String[] pageNumbers;
+    int sortOrder;
+
+    @Override
+    public String toString() {
+        return "DropboxImageFile{" +
+                "name='" + name + '\'' +
+                ", url='" + url + '\'' +
+                ", callNumber='" + callNumber + '\'' +
+                ", title='" + title + '\'' +
+                ", publicationDate='" + publicationDate + '\'' +
+                ", pageNumbers=" + Arrays.toString(pageNumbers) +
+                ", sortOrder=" + sortOrder +
+                '}';
+    }
+}
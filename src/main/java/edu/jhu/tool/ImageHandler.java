@@ -1,20 +1,225 @@
 package edu.jhu.tool;
 
 import edu.jhu.tool.config.AppConfig;
+import edu.jhu.tool.split.Cut;
+import edu.jhu.tool.split.ImageMagickBackend;
+import edu.jhu.tool.split.SplitBackend;
+import edu.jhu.tool.tiff.MappedTiff;
+import edu.jhu.tool.tiff.TiffFormatException;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * In-process recto/verso splitter. Each source TIFF is decoded once and both halves
+ * are cropped from the same raster, equivalent to running
+ * <code>convert -crop 55%x100% -gravity (west|east)</code> twice.
+ *
+ * With the "mapped" engine, uncompressed strip TIFFs are instead cropped by copying
+ * row slices out of a memory mapping, without decoding.
  *
+ * Spreads the JVM cannot handle, and every spread with the "imagemagick" engine, go to a
+ * {@link SplitBackend}, by default ImageMagick.
  */
 public class ImageHandler {
 
+    /** Portion of the spread width kept for each side. Matches the 55%x100% ImageMagick crop. */
+    static final double CROP_FRACTION = 0.55;
+
     private AppConfig config;
+    private SplitBackend backend;
 
     public ImageHandler(AppConfig config) {
         this.config = config;
+        this.backend = new ImageMagickBackend("convert", CROP_FRACTION, config.getSPLIT_BATCH(),
+                TimeUnit.SECONDS.toMillis(config.getSPLIT_TIMEOUT()));
+    }
+
+    /**
+     * @return backend for spreads that are not split in-process
+     */
+    public SplitBackend getBackend() {
+        return backend;
+    }
+
+    public void setBackend(SplitBackend backend) {
+        this.backend = backend;
     }
 
     public void connect() {
 
     }
 
+    /**
+     * @return TRUE if the running JVM has an ImageIO reader and writer for TIFF images
+     */
+    public boolean canSplit() {
+        return ImageIO.getImageReadersByFormatName("tiff").hasNext()
+                && ImageIO.getImageWritersByFormatName("tiff").hasNext();
+    }
+
+    /**
+     * A cropped half of a spread that still has to be encoded. The image shares its raster
+     * with the decoded spread.
+     */
+    public static class Crop {
+        private final BufferedImage image;
+        private final IIOMetadata metadata;
+        private final Path output;
+
+        Crop(BufferedImage image, IIOMetadata metadata, Path output) {
+            this.image = image;
+            this.metadata = metadata;
+            this.output = output;
+        }
+
+        public BufferedImage getImage() {
+            return image;
+        }
+
+        public Path getOutput() {
+            return output;
+        }
+    }
+
+    /**
+     * Decode a spread once and write the west (recto) and east (verso) crops. The source
+     * image metadata is carried over so resolution and compression are preserved where the
+     * TIFF writer supports them.
+     *
+     * @param original source TIFF
+     * @param recto output path for the west crop
+     * @param verso output path for the east crop
+     * @throws IOException if the image cannot be decoded or either half cannot be written
+     */
+    public void split(Path original, Path recto, Path verso) throws IOException {
+        for (Crop crop : crop(original, recto, verso)) {
+            write(crop);
+        }
+    }
+
+    /**
+     * First half of {@link #split(Path, Path, Path)}: decode the spread and crop both halves
+     * without encoding them. With the mapped engine, supported files are written directly
+     * and nothing is left to encode.
+     *
+     * @param original source TIFF
+     * @param recto output path for the west crop
+     * @param verso output path for the east crop
+     * @return crops still to be passed to {@link #write(Crop)}
+     * @throws IOException if the image cannot be decoded
+     */
+    public List<Crop> crop(Path original, Path recto, Path verso) throws IOException {
+        return crop(original, null, recto, verso);
+    }
+
+    /**
+     * Like {@link #crop(Path, Path, Path)}, cutting the spread at the given columns.
+     *
+     * @param cut where to cut the spread, null for the fixed share of the width
+     */
+    public List<Crop> crop(Path original, Cut cut, Path recto, Path verso) throws IOException {
+        if ("mapped".equalsIgnoreCase(config.getSPLIT_ENGINE()) && splitMapped(original, cut, recto, verso)) {
+            return Collections.emptyList();
+        }
+
+        IIOImage image = read(original);
+        BufferedImage raster = (BufferedImage) image.getRenderedImage();
+
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        if (cut == null || cut.getWidth() != width) {
+            cut = Cut.fixed(width, height, CROP_FRACTION);
+        }
+
+        return Arrays.asList(
+                new Crop(raster.getSubimage(0, 0, cut.getRectoWidth(), height), image.getMetadata(), recto),
+                new Crop(raster.getSubimage(cut.getVersoX(), 0, cut.getVersoWidth(), height), image.getMetadata(),
+                        verso));
+    }
+
+    /**
+     * Second half of {@link #split(Path, Path, Path)}: encode one crop to its output file.
+     *
+     * @param crop cropped half
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Crop crop) throws IOException {
+        write(crop.image, crop.metadata, crop.output);
+    }
+
+    /**
+     * Losslessly crop both halves from a memory-mapped file.
+     *
+     * @return FALSE if the file layout is not supported and must be decoded instead
+     */
+    private boolean splitMapped(Path original, Cut cut, Path recto, Path verso) throws IOException {
+        try (MappedTiff tiff = MappedTiff.open(original)) {
+            if (!tiff.isCroppable()) {
+                return false;
+            }
+
+            int width = tiff.getWidth();
+            if (cut == null || cut.getWidth() != width) {
+                cut = Cut.fixed(width, tiff.getHeight(), CROP_FRACTION);
+            }
+
+            tiff.crop(0, cut.getRectoWidth(), recto);
+            tiff.crop(cut.getVersoX(), cut.getVersoWidth(), verso);
+            return true;
+        } catch (TiffFormatException e) {
+            return false;
+        }
+    }
+
+    private IIOImage read(Path path) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("tiff");
+        if (!readers.hasNext()) {
+            throw new IOException("No TIFF reader available.");
+        }
+
+        ImageReader reader = readers.next();
+        try (ImageInputStream in = ImageIO.createImageInputStream(path.toFile())) {
+            if (in == null) {
+                throw new IOException("Cannot open image. [" + path.toString() + "]");
+            }
+            reader.setInput(in, true, false);
+            return reader.readAll(0, null);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    private void write(BufferedImage image, IIOMetadata metadata, Path path) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("tiff");
+        if (!writers.hasNext()) {
+            throw new IOException("No TIFF writer available.");
+        }
+
+        // ImageOutputStream does not truncate, so never write over an older, larger file
+        Files.deleteIfExists(path);
+
+        ImageWriter writer = writers.next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(path.toFile())) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, metadata), writer.getDefaultWriteParam());
+        } finally {
+            writer.dispose();
+        }
+    }
+
 }
@@ -0,0 +1,166 @@
+package edu.jhu.tool;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The files of the shared folder as of the last listing, with the validators the server
+ * sent for it (ETag and Last-Modified), kept in the download directory. The validators make
+ * the next listing a conditional request: while the folder is unchanged the server answers
+ * 304 and the cached list is used as is.
+ */
+class ListingCache {
+
+    static final String FILE_NAME = ".listing";
+
+    private static final String URL = "# url\t";
+    private static final String ETAG = "# etag\t";
+    private static final String LAST_MODIFIED = "# last-modified\t";
+
+    private final String etag;
+    private final String lastModified;
+    private final List<DropboxFile> files;
+
+    private ListingCache(String etag, String lastModified, List<DropboxFile> files) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.files = files;
+    }
+
+    /**
+     * @param directory download directory
+     * @param url shared folder URL the listing must be for
+     * @return the cached listing, or null if there is none for this URL
+     */
+    static ListingCache load(Path directory, String url) {
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        String cachedUrl = null;
+        String etag = null;
+        String lastModified = null;
+        List<DropboxFile> files = new ArrayList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(URL)) {
+                    cachedUrl = line.substring(URL.length());
+                } else if (line.startsWith(ETAG)) {
+                    etag = line.substring(ETAG.length());
+                } else if (line.startsWith(LAST_MODIFIED)) {
+                    lastModified = line.substring(LAST_MODIFIED.length());
+                } else if (!line.isEmpty() && !line.startsWith("#")) {
+                    int tab = line.indexOf('\t');
+                    if (tab < 0) {
+                        continue;
+                    }
+
+                    DropboxFile dbFile = new DropboxFile();
+                    dbFile.name = line.substring(0, tab);
+                    dbFile.url = line.substring(tab + 1);
+                    files.add(dbFile);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error: Cannot read cached listing. [" + file.toString() + "]");
+            return null;
+        }
+
+        if (!url.equals(cachedUrl)) {
+            return null;
+        }
+        return new ListingCache(etag, lastModified, files);
+    }
+
+    /**
+     * Start writing a new listing to the download directory. Files are written as they are
+     * added, and the new listing replaces the old one atomically on {@link Output#commit()}.
+     *
+     * @param directory download directory
+     * @param url shared folder URL
+     * @param etag ETag of the listing response, may be null
+     * @param lastModified Last-Modified of the listing response, may be null
+     * @return output for the files of the listing
+     * @throws IOException if the listing cannot be written
+     */
+    static Output create(Path directory, String url, String etag, String lastModified) throws IOException {
+        Output output = new Output(directory);
+        output.line(URL + url);
+        if (etag != null) {
+            output.line(ETAG + etag);
+        }
+        if (lastModified != null) {
+            output.line(LAST_MODIFIED + lastModified);
+        }
+        return output;
+    }
+
+    /**
+     * A listing being written. Closing it without a commit discards it and keeps the old one.
+     */
+    static class Output implements Closeable {
+        private final Path file;
+        private final Path tmp;
+        private final BufferedWriter writer;
+        private boolean committed;
+
+        private Output(Path directory) throws IOException {
+            this.file = directory.resolve(FILE_NAME);
+            this.tmp = directory.resolve(FILE_NAME + ".tmp");
+            this.writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8);
+        }
+
+        void add(DropboxFile dbFile) throws IOException {
+            line(dbFile.name + '\t' + dbFile.url);
+        }
+
+        void commit() throws IOException {
+            writer.close();
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                writer.close();
+                Files.deleteIfExists(tmp);
+            }
+        }
+
+        private void line(String line) throws IOException {
+            writer.write(line);
+            writer.newLine();
+        }
+    }
+
+    String getEtag() {
+        return etag;
+    }
+
+    String getLastModified() {
+        return lastModified;
+    }
+
+    List<DropboxFile> getFiles() {
+        return Collections.unmodifiableList(files);
+    }
+
+}
@@ -0,0 +1,174 @@
+package edu.jhu.tool;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary copy of the image records parsed from a metadata spreadsheet. The index
+ * is keyed by the spreadsheet's path, size and modification time (plus the page number
+ * delimiter used to parse it), and is memory-mapped on load, so reopening an unchanged
+ * spreadsheet skips POI entirely.
+ *
+ * Layout: magic, version, source path, size, mtime and delimiter, record count, then per
+ * record name, call number, title, publication date, page number count, page numbers and
+ * sort order. Strings are a length-prefixed UTF-8 byte run, -1 for null.
+ */
+class MetadataIndex {
+
+    private static final long MAGIC = 0x4442544D45544131L; // "DBTMETA1"
+    private static final int VERSION = 1;
+
+    /** Smallest record: four null strings, an empty page number list and the sort order. */
+    private static final int MIN_RECORD_BYTES = 6 * Integer.BYTES;
+
+    private MetadataIndex() {}
+
+    /**
+     * @param spreadsheet metadata spreadsheet
+     * @return path of the index kept next to it
+     */
+    static Path indexPath(Path spreadsheet) {
+        return spreadsheet.resolveSibling("." + spreadsheet.getFileName().toString() + ".idx");
+    }
+
+    /**
+     * @param spreadsheet metadata spreadsheet
+     * @param delimiter page number delimiter the records must have been parsed with
+     * @return records from the index, or null if there is no index for the current
+     *         version of the spreadsheet or it is damaged
+     */
+    static List<DropboxImageFile> load(Path spreadsheet, String delimiter) {
+        Path index = indexPath(spreadsheet);
+        if (!Files.isRegularFile(index)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getLong() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            if (!spreadsheet.toAbsolutePath().toString().equals(readString(buffer))
+                    || buffer.getLong() != Files.size(spreadsheet)
+                    || buffer.getLong() != Files.getLastModifiedTime(spreadsheet).toMillis()
+                    || !delimiter.equals(readString(buffer))) {
+                return null;
+            }
+
+            int count = readCount(buffer, MIN_RECORD_BYTES);
+            List<DropboxImageFile> images = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                DropboxImageFile image = new DropboxImageFile();
+                image.name = readString(buffer);
+                image.callNumber = readString(buffer);
+                image.title = readString(buffer);
+                image.publicationDate = readString(buffer);
+
+                image.pageNumbers = new String[readCount(buffer, Integer.BYTES)];
+                for (int p = 0; p < image.pageNumbers.length; p++) {
+                    image.pageNumbers[p] = readString(buffer);
+                }
+
+                image.sortOrder = buffer.getInt();
+                images.add(image);
+            }
+            return images;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            System.err.println("Error: Cannot read metadata index, re-parsing spreadsheet. ["
+                    + index.toString() + "]");
+            return null;
+        }
+    }
+
+    /**
+     * Write the index for a spreadsheet, replacing any older one.
+     *
+     * @param spreadsheet metadata spreadsheet the records were parsed from
+     * @param delimiter page number delimiter the records were parsed with
+     * @param images parsed records
+     * @throws IOException if the index cannot be written
+     */
+    static void save(Path spreadsheet, String delimiter, List<DropboxImageFile> images) throws IOException {
+        Path index = indexPath(spreadsheet);
+        Path tmp = index.resolveSibling(index.getFileName().toString() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, spreadsheet.toAbsolutePath().toString());
+            out.writeLong(Files.size(spreadsheet));
+            out.writeLong(Files.getLastModifiedTime(spreadsheet).toMillis());
+            writeString(out, delimiter);
+
+            out.writeInt(images.size());
+            for (DropboxImageFile image : images) {
+                writeString(out, image.name);
+                writeString(out, image.callNumber);
+                writeString(out, image.title);
+                writeString(out, image.publicationDate);
+
+                out.writeInt(image.pageNumbers.length);
+                for (String page : image.pageNumbers) {
+                    writeString(out, page);
+                }
+
+                out.writeInt(image.sortOrder);
+            }
+        }
+
+        try {
+            Files.move(tmp, index, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, index, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @param size fewest bytes each counted item takes up
+     * @return a count that fits in the rest of the buffer
+     * @throws IllegalArgumentException if the count is negative or too large
+     */
+    private static int readCount(MappedByteBuffer buffer, int size) {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / size) {
+            throw new IllegalArgumentException("Bad count " + count + " at byte " + (buffer.position() - 4));
+        }
+        return count;
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        } else if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Bad length " + length + " at byte " + (buffer.position() - 4));
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
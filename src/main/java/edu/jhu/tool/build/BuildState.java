@@ -0,0 +1,245 @@
+package edu.jhu.tool.build;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Record of how each file in the split directory was made, so a run only redoes the pages
+ * whose inputs changed. Each output has a recipe, a digest of everything that went into it:
+ * the source size, modification time and hash, the page labels, the engine and the naming
+ * rules. An output is up to date while its recipe is unchanged and the file still has the
+ * size and modification time it was written with.
+ *
+ * <p>Before work on an output starts, {@link #start(Path, String)} drops its record; the
+ * new record is only made by {@link #done(Path)} once the file is complete. An interrupted
+ * run therefore never leaves a half-written output marked up to date.</p>
+ */
+public class BuildState {
+
+    public static final String FILE_NAME = ".build-state";
+
+    private static final String HEADER = "# output\tsize\tmtime\trecipe";
+
+    private static class Record {
+        final long size;
+        final long modified;
+        final String recipe;
+
+        Record(long size, long modified, String recipe) {
+            this.size = size;
+            this.modified = modified;
+            this.recipe = recipe;
+        }
+    }
+
+    /** Null if the state is not kept on disk. */
+    private final Path directory;
+    private final Map<String, Record> records = new ConcurrentHashMap<>();
+    private final Map<String, String> pending = new ConcurrentHashMap<>();
+
+    private BuildState(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return state that tracks outputs for this run only and is never saved
+     */
+    public static BuildState untracked() {
+        return new BuildState(null);
+    }
+
+    /**
+     * Load the state kept in a directory. A missing or unreadable file gives an empty state,
+     * so every output is made again.
+     *
+     * @param directory split directory
+     * @return the state
+     */
+    public static BuildState load(Path directory) {
+        BuildState state = new BuildState(directory);
+
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.isRegularFile(file)) {
+            return state;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] parts = line.split("\t");
+                if (parts.length != 4) {
+                    continue;
+                }
+
+                try {
+                    state.records.put(parts[0], new Record(Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3]));
+                } catch (NumberFormatException e) {
+                    // Skip damaged lines, the output will simply be made again
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error: Cannot read build state, rebuilding. [" + file.toString() + "]");
+            state.records.clear();
+        }
+
+        return state;
+    }
+
+    /**
+     * @param output output file
+     * @param recipe digest of the inputs the output would be made from
+     * @return TRUE if the output exists and was made from the same inputs
+     */
+    public boolean isUpToDate(Path output, String recipe) {
+        Record record = records.get(key(output));
+        return record != null && record.recipe.equals(recipe) && matches(output, record);
+    }
+
+    /**
+     * @param output output file
+     * @return TRUE if the output exists and still has the size and modification time it
+     *         was recorded with, whatever it was made from
+     */
+    public boolean isUnchanged(Path output) {
+        Record record = records.get(key(output));
+        return record != null && matches(output, record);
+    }
+
+    /**
+     * @return file names of every recorded output, sorted
+     */
+    public Set<String> getOutputs() {
+        return new TreeSet<>(records.keySet());
+    }
+
+    /**
+     * Drop the record of an output that is no longer made.
+     *
+     * @param output output file
+     */
+    public void forget(Path output) {
+        records.remove(key(output));
+        pending.remove(key(output));
+    }
+
+    /**
+     * Note that an output is about to be made. Its old record is dropped.
+     *
+     * @param output output file
+     * @param recipe digest of the inputs it is made from
+     */
+    public void start(Path output, String recipe) {
+        records.remove(key(output));
+        pending.put(key(output), recipe);
+    }
+
+    /**
+     * Record a finished output under the recipe given to {@link #start(Path, String)}. Does
+     * nothing for outputs that were not started.
+     *
+     * @param output output file, complete
+     */
+    public void done(Path output) {
+        String recipe = pending.remove(key(output));
+        if (recipe == null) {
+            return;
+        }
+
+        try {
+            records.put(key(output), new Record(Files.size(output),
+                    Files.getLastModifiedTime(output).toMillis(), recipe));
+        } catch (IOException e) {
+            // Not recorded, so it is made again next time
+        }
+    }
+
+    /**
+     * Write the state to its directory, replacing the file atomically. Does nothing for an
+     * untracked state.
+     *
+     * @throws IOException if the state cannot be written
+     */
+    public void save() throws IOException {
+        if (directory == null) {
+            return;
+        }
+
+        Path file = directory.resolve(FILE_NAME);
+        Path tmp = directory.resolve(FILE_NAME + ".tmp");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (Map.Entry<String, Record> entry : new TreeMap<>(records).entrySet()) {
+                Record record = entry.getValue();
+                writer.write(entry.getKey() + '\t' + record.size + '\t' + record.modified + '\t' + record.recipe);
+                writer.newLine();
+            }
+        }
+
+        try {
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @param inputs everything an output is made from
+     * @return SHA-256 over the inputs, as hex
+     */
+    public static String recipe(Object... inputs) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        for (Object input : inputs) {
+            digest.update(String.valueOf(input).getBytes(StandardCharsets.UTF_8));
+            // Separator, so ("ab", "c") and ("a", "bc") differ
+            digest.update((byte) 0);
+        }
+
+        char[] hex = "0123456789abcdef".toCharArray();
+        byte[] bytes = digest.digest();
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            out[2 * i] = hex[(bytes[i] >> 4) & 0xF];
+            out[2 * i + 1] = hex[bytes[i] & 0xF];
+        }
+        return new String(out);
+    }
+
+    private static boolean matches(Path output, Record record) {
+        try {
+            return Files.size(output) == record.size
+                    && Files.getLastModifiedTime(output).toMillis() == record.modified;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static String key(Path output) {
+        return output.getFileName().toString();
+    }
+
+}
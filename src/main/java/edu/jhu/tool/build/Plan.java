@@ -0,0 +1,135 @@
+package edu.jhu.tool.build;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The work a run would do, image by image: which sources must be downloaded, which must be
+ * split or copied and which are already up to date, and which outputs of earlier runs no
+ * image makes any more. Printed by <code>--dry-run</code>.
+ */
+public class Plan {
+
+    public enum Action {
+        /** Source is not in the download directory yet and will be fetched. */
+        DOWNLOAD,
+        /** Spread will be split into two pages. */
+        SPLIT,
+        /** Single page will be copied or linked. */
+        COPY,
+        /** All outputs are up to date. */
+        UP_TO_DATE,
+        /** Source is neither downloaded nor available for download. */
+        MISSING,
+        /**
+         * Output of an earlier run that no image makes any more, such as a page whose label
+         * was renamed. Its record is dropped, and the file too unless changed since.
+         */
+        STALE
+    }
+
+    public static class Task {
+        private final Action action;
+        private final String source;
+        private final List<String> outputs;
+        private final long bytes;
+
+        Task(Action action, String source, List<String> outputs, long bytes) {
+            this.action = action;
+            this.source = source;
+            this.outputs = outputs;
+            this.bytes = bytes;
+        }
+
+        public Action getAction() {
+            return action;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public List<String> getOutputs() {
+            return outputs;
+        }
+
+        /**
+         * @return estimated number of bytes the task writes, -1 if unknown
+         */
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    private final List<Task> tasks = new ArrayList<>();
+
+    /**
+     * @param action what is done
+     * @param source source file name, or the output name of a stale output
+     * @param outputs output file names, empty for downloads and stale outputs
+     * @param bytes estimated number of bytes written, -1 if unknown
+     */
+    public void add(Action action, String source, List<String> outputs, long bytes) {
+        tasks.add(new Task(action, source, outputs, bytes));
+    }
+
+    public List<Task> getTasks() {
+        return Collections.unmodifiableList(tasks);
+    }
+
+    public int count(Action action) {
+        int count = 0;
+        for (Task task : tasks) {
+            if (task.action == action) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Print every task that does work, then a summary with the estimated bytes written.
+     *
+     * @param out where to print
+     */
+    public void print(PrintStream out) {
+        Map<Action, Integer> counts = new EnumMap<>(Action.class);
+        long bytes = 0;
+        int unknown = 0;
+
+        for (Task task : tasks) {
+            counts.merge(task.action, 1, Integer::sum);
+            if (task.action == Action.UP_TO_DATE) {
+                continue;
+            }
+
+            StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "  %-10s %s",
+                    task.action.name().toLowerCase(Locale.ROOT).replace('_', ' '), task.source));
+            if (!task.outputs.isEmpty()) {
+                line.append(" -> ").append(String.join(", ", task.outputs));
+            }
+            out.println(line);
+
+            if (task.bytes >= 0) {
+                bytes += task.bytes;
+            } else if (task.action != Action.MISSING) {
+                unknown++;
+            }
+        }
+
+        StringBuilder summary = new StringBuilder();
+        for (Map.Entry<Action, Integer> count : counts.entrySet()) {
+            summary.append(summary.length() == 0 ? "" : ", ").append(count.getValue()).append(' ')
+                    .append(count.getKey().name().toLowerCase(Locale.ROOT).replace('_', ' '));
+        }
+        out.println("Plan: " + (summary.length() == 0 ? "nothing to do" : summary) + ".");
+        out.println(String.format(Locale.ROOT, "Estimated writes: %.1f MB%s.", bytes / 1e6,
+                unknown > 0 ? " and " + unknown + " tasks of unknown size" : ""));
+    }
+
+}
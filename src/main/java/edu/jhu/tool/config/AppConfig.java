@@ -32,6 +32,33 @@ public class AppConfig {
     @Inject @Named("command.split-images")
     private String CMD_SPLIT_IMAGES;
 
+    @Inject @Named("command.process")
+    private String CMD_PROCESS;
+
+    @Inject @Named("command.batch")
+    private String CMD_BATCH;
+
+    @Inject @Named("command.verify")
+    private String CMD_VERIFY;
+
+    @Inject @Named("verify.threads")
+    private int VERIFY_THREADS;
+
+    @Inject @Named("verify.report")
+    private String VERIFY_REPORT;
+
+    @Inject @Named("command.watch")
+    private String CMD_WATCH;
+
+    @Inject @Named("watch.settle")
+    private long WATCH_SETTLE;
+
+    @Inject @Named("watch.port")
+    private int WATCH_PORT;
+
+    @Inject @Named("batch.books")
+    private int BATCH_BOOKS;
+
     @Inject @Named("threads.max")
     private int MAX_THREADS;
 
@@ -44,6 +71,99 @@ public class AppConfig {
     @Inject @Named("metadata.pagenumber.delimiter")
     private String PAGE_NUMBER_DELIMITER;
 
+    @Inject @Named("metadata.file")
+    private String METADATA_FILE;
+
+    @Inject @Named("download.engine")
+    private String DOWNLOAD_ENGINE;
+
+    @Inject @Named("download.concurrency")
+    private int DOWNLOAD_CONCURRENCY;
+
+    @Inject @Named("download.http2")
+    private boolean DOWNLOAD_HTTP2;
+
+    @Inject @Named("download.adaptive")
+    private boolean DOWNLOAD_ADAPTIVE;
+
+    @Inject @Named("download.concurrency.min")
+    private int DOWNLOAD_CONCURRENCY_MIN;
+
+    @Inject @Named("download.bandwidth")
+    private long DOWNLOAD_BANDWIDTH;
+
+    @Inject @Named("download.retries")
+    private int DOWNLOAD_RETRIES;
+
+    @Inject @Named("download.backoff")
+    private long DOWNLOAD_BACKOFF;
+
+    @Inject @Named("pipeline.threads.verify")
+    private int PIPELINE_VERIFY_THREADS;
+
+    @Inject @Named("pipeline.threads.split")
+    private int PIPELINE_SPLIT_THREADS;
+
+    @Inject @Named("pipeline.threads.write")
+    private int PIPELINE_WRITE_THREADS;
+
+    @Inject @Named("pipeline.queue.capacity")
+    private int PIPELINE_QUEUE_CAPACITY;
+
+    @Inject @Named("split.engine")
+    private String SPLIT_ENGINE;
+
+    @Inject @Named("split.copy")
+    private String SPLIT_COPY;
+
+    @Inject @Named("split.memory")
+    private long SPLIT_MEMORY;
+
+    @Inject @Named("split.gutter")
+    private String SPLIT_GUTTER;
+
+    @Inject @Named("split.gutter.margin")
+    private double SPLIT_GUTTER_MARGIN;
+
+    @Inject @Named("split.batch")
+    private int SPLIT_BATCH;
+
+    @Inject @Named("split.timeout")
+    private long SPLIT_TIMEOUT;
+
+    @Inject @Named("store.enabled")
+    private boolean STORE_ENABLED;
+
+    @Inject @Named("tiles.format")
+    private String TILES_FORMAT;
+
+    @Inject @Named("tiles.directory")
+    private String TILES_DIRECTORY;
+
+    @Inject @Named("tiles.size")
+    private int TILES_SIZE;
+
+    @Inject @Named("tiles.threads")
+    private int TILES_THREADS;
+
+    @Inject @Named("metrics.directory")
+    private String METRICS_DIRECTORY;
+
+    @Inject @Named("metrics.interval")
+    private long METRICS_INTERVAL;
+
+    @Inject @Named("naming.labels")
+    private String NAMING_LABELS;
+
+    @Inject @Named("naming.words")
+    private String NAMING_WORDS;
+
+    @Inject @Named("naming.skip")
+    private String NAMING_SKIP;
+
+    @Inject @Named("naming.skip.exact")
+    private String NAMING_SKIP_EXACT;
+
     public String getBOOK_ID() {
         return BOOK_ID;
     }
@@ -76,6 +196,42 @@ public class AppConfig {
         return CMD_SPLIT_IMAGES;
     }
 
+    public String getCMD_PROCESS() {
+        return CMD_PROCESS;
+    }
+
+    public String getCMD_BATCH() {
+        return CMD_BATCH;
+    }
+
+    public String getCMD_VERIFY() {
+        return CMD_VERIFY;
+    }
+
+    public int getVERIFY_THREADS() {
+        return VERIFY_THREADS;
+    }
+
+    public String getVERIFY_REPORT() {
+        return VERIFY_REPORT;
+    }
+
+    public String getCMD_WATCH() {
+        return CMD_WATCH;
+    }
+
+    public long getWATCH_SETTLE() {
+        return WATCH_SETTLE;
+    }
+
+    public int getWATCH_PORT() {
+        return WATCH_PORT;
+    }
+
+    public int getBATCH_BOOKS() {
+        return BATCH_BOOKS;
+    }
+
     public int getMAX_THREADS() {
         return MAX_THREADS;
     }
@@ -91,4 +247,129 @@ public class AppConfig {
     public String getPAGE_NUMBER_DELIMITER() {
         return PAGE_NUMBER_DELIMITER;
     }
+
+    public String getMETADATA_FILE() {
+        return METADATA_FILE;
+    }
+
+    public String getSPLIT_ENGINE() {
+        return SPLIT_ENGINE;
+    }
+
+    public String getSPLIT_COPY() {
+        return SPLIT_COPY;
+    }
+
+    public long getSPLIT_MEMORY() {
+        return SPLIT_MEMORY;
+    }
+
+    public String getSPLIT_GUTTER() {
+        return SPLIT_GUTTER;
+    }
+
+    public double getSPLIT_GUTTER_MARGIN() {
+        return SPLIT_GUTTER_MARGIN;
+    }
+
+    public int getSPLIT_BATCH() {
+        return SPLIT_BATCH;
+    }
+
+    public long getSPLIT_TIMEOUT() {
+        return SPLIT_TIMEOUT;
+    }
+
+    public boolean getSTORE_ENABLED() {
+        return STORE_ENABLED;
+    }
+
+    public String getTILES_FORMAT() {
+        return TILES_FORMAT;
+    }
+
+    public String getTILES_DIRECTORY() {
+        return TILES_DIRECTORY;
+    }
+
+    public int getTILES_SIZE() {
+        return TILES_SIZE;
+    }
+
+    public int getTILES_THREADS() {
+        return TILES_THREADS;
+    }
+
+    public String getDOWNLOAD_ENGINE() {
+        return DOWNLOAD_ENGINE;
+    }
+
+    public int getDOWNLOAD_CONCURRENCY() {
+        return DOWNLOAD_CONCURRENCY;
+    }
+
+    public boolean getDOWNLOAD_HTTP2() {
+        return DOWNLOAD_HTTP2;
+    }
+
+    public boolean getDOWNLOAD_ADAPTIVE() {
+        return DOWNLOAD_ADAPTIVE;
+    }
+
+    public int getDOWNLOAD_CONCURRENCY_MIN() {
+        return DOWNLOAD_CONCURRENCY_MIN;
+    }
+
+    public long getDOWNLOAD_BANDWIDTH() {
+        return DOWNLOAD_BANDWIDTH;
+    }
+
+    public int getDOWNLOAD_RETRIES() {
+        return DOWNLOAD_RETRIES;
+    }
+
+    public long getDOWNLOAD_BACKOFF() {
+        return DOWNLOAD_BACKOFF;
+    }
+
+    public int getPIPELINE_VERIFY_THREADS() {
+        return PIPELINE_VERIFY_THREADS;
+    }
+
+    public int getPIPELINE_SPLIT_THREADS() {
+        return PIPELINE_SPLIT_THREADS;
+    }
+
+    public int getPIPELINE_WRITE_THREADS() {
+        return PIPELINE_WRITE_THREADS;
+    }
+
+    public int getPIPELINE_QUEUE_CAPACITY() {
+        return PIPELINE_QUEUE_CAPACITY;
+    }
+
+    public String getMETRICS_DIRECTORY() {
+        return METRICS_DIRECTORY;
+    }
+
+    public long getMETRICS_INTERVAL() {
+        return METRICS_INTERVAL;
+    }
+
+    public String getNAMING_LABELS() {
+        return NAMING_LABELS;
+    }
+
+    public String getNAMING_WORDS() {
+        return NAMING_WORDS;
+    }
+
+    public String getNAMING_SKIP() {
+        return NAMING_SKIP;
+    }
+
+    public String getNAMING_SKIP_EXACT() {
+        return NAMING_SKIP_EXACT;
+    }
+
 }
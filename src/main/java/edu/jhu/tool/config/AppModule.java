@@ -12,6 +12,20 @@ import java.util.Properties;
  */
 public class AppModule extends AbstractModule {
 
+    private final Properties overrides;
+
+    public AppModule() {
+        this(new Properties());
+    }
+
+    /**
+     * @param overrides values replacing those in app.properties, such as the settings of
+     *                  one book in a batch
+     */
+    public AppModule(Properties overrides) {
+        this.overrides = overrides;
+    }
+
     @Override
     protected void configure() {
 
@@ -27,6 +41,7 @@ public class AppModule extends AbstractModule {
         } catch (IOException e) {
             // TODO log
         }
+        props.putAll(overrides);
 
         return props;
     }
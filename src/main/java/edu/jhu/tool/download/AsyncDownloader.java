@@ -0,0 +1,450 @@
+package edu.jhu.tool.download;
+
+import edu.jhu.tool.metrics.Metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads files with a single shared {@link HttpClient}. Transfers are asynchronous and
+ * written straight to disk by the client, so the number of transfers in flight is bounded by
+ * a {@link ConcurrencyLimiter} rather than by threads; a small pool runs the client's
+ * callbacks. Connections are kept alive and reused between transfers, and with HTTP/2
+ * requests to the same host are multiplexed over one connection. Reads are paced by a
+ * shared {@link BandwidthLimiter} without blocking the callback threads.
+ *
+ * Transfers resume from a <code>.part</code> file and are renamed when complete, and failed
+ * attempts are retried with exponential backoff, as for the blocking downloader. A transfer
+ * that receives no data for as long as the timeout is cancelled and retried, like a read
+ * timeout of the blocking downloader.
+ */
+public class AsyncDownloader implements Closeable {
+
+    private static final String PART_SUFFIX = ".part";
+
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_PARTIAL = 206;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    /** Upper bound for the delay between retries. */
+    private static final long MAX_BACKOFF = 60000;
+
+    private final HttpClient client;
+    private final ExecutorService executor;
+    /** Paces transfers and checks them for stalls. */
+    private final ScheduledExecutorService timer;
+    private final ConcurrencyLimiter limiter;
+    private final BandwidthLimiter bandwidth;
+    private final Metrics metrics;
+    private final Duration timeout;
+    private final int retries;
+    private final long backoff;
+
+    /**
+     * @param timeout connect timeout, time allowed for the response headers, and longest
+     *                wait for more of the body, in ms
+     * @param http2 TRUE to prefer HTTP/2, falling back to HTTP/1.1 if the server does not
+     *              offer it
+     * @param threads number of threads running the client
+     * @param retries number of retries after a failed attempt
+     * @param backoff delay before the first retry in ms, doubled after each retry
+     * @param limiter bounds the number of transfers in flight
+     * @param bandwidth caps the combined transfer rate
+     * @param metrics receives transfer sizes, latencies and failures
+     */
+    public AsyncDownloader(int timeout, boolean http2, int threads, int retries, long backoff,
+                           ConcurrencyLimiter limiter, BandwidthLimiter bandwidth, Metrics metrics) {
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "download-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "download-timer");
+            t.setDaemon(true);
+            return t;
+        });
+
+        this.timeout = Duration.ofMillis(timeout);
+        this.client = HttpClient.newBuilder()
+                .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(this.timeout)
+                .executor(executor)
+                .build();
+
+        this.limiter = limiter;
+        this.bandwidth = bandwidth;
+        this.metrics = metrics;
+        this.retries = retries;
+        this.backoff = backoff;
+    }
+
+    /**
+     * Start a download. Blocks while the maximum number of transfers is in flight.
+     *
+     * @param url source URL
+     * @param outPath final path of the file. Nothing is downloaded if it already exists.
+     * @return completes with the final path, or exceptionally with the failure of the last
+     *         attempt
+     * @throws InterruptedIOException if interrupted while waiting for a free transfer
+     */
+    public CompletableFuture<Path> download(String url, Path outPath) throws InterruptedIOException {
+        if (Files.exists(outPath)) {
+            System.out.println("File [" + outPath.getFileName() + "] already exists.");
+            return CompletableFuture.completedFuture(outPath);
+        }
+        limiter.acquire();
+
+        long start = System.nanoTime();
+        CompletableFuture<Path> result = attempt(url, outPath, 1, backoff);
+        result.whenComplete((path, e) -> {
+            limiter.release();
+            if (e == null) {
+                metrics.histogram("download_seconds").record(System.nanoTime() - start);
+            }
+        });
+        return result;
+    }
+
+    private CompletableFuture<Path> attempt(String url, Path outPath, int attempt, long delay) {
+        return fetch(url, outPath).handle((path, e) -> {
+            if (e == null) {
+                return CompletableFuture.completedFuture(path);
+            }
+
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            limiter.failed(cause);
+            metrics.counter("download_failures_total", "cause", HttpStatusException.cause(cause)).increment();
+            boolean retryable = cause instanceof IOException && (!(cause instanceof HttpStatusException)
+                    || ((HttpStatusException) cause).isRetryable());
+            if (!retryable || attempt > retries) {
+                return CompletableFuture.<Path>failedFuture(cause);
+            }
+
+            System.err.println("Download attempt " + attempt + " of [" + outPath.getFileName()
+                    + "] failed, retrying in " + delay + " ms. " + cause.getMessage());
+            return CompletableFuture.runAsync(() -> {},
+                    CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, executor))
+                    .thenCompose(v -> attempt(url, outPath, attempt + 1, Math.min(delay * 2, MAX_BACKOFF)));
+        }).thenCompose(f -> f);
+    }
+
+    private CompletableFuture<Path> fetch(String url, Path outPath) {
+        // Partial transfers are kept under a separate name, so anything at the final path
+        // is complete
+        if (Files.exists(outPath)) {
+            System.out.println("File [" + outPath.getFileName() + "] already exists.");
+            return CompletableFuture.completedFuture(outPath);
+        }
+
+        Path partPath = outPath.resolveSibling(outPath.getFileName().toString() + PART_SUFFIX);
+        long existing;
+        HttpRequest.Builder request;
+        try {
+            existing = Files.exists(partPath) ? Files.size(partPath) : 0;
+            request = HttpRequest.newBuilder(URI.create(url)).timeout(timeout).GET();
+        } catch (IOException | IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (existing > 0) {
+            request.header("Range", "bytes=" + existing + "-");
+        }
+
+        return client.sendAsync(request.build(), info -> subscriber(info, url, partPath, outPath, existing))
+                .thenCompose(response -> {
+                    if (isMisplaced(response.statusCode(), response.headers(), existing)) {
+                        // The body was discarded, appending it would splice the wrong bytes
+                        // into the file
+                        if (existing == 0) {
+                            return CompletableFuture.failedFuture(new IOException(
+                                    "Server sent a partial response without being asked for a range."));
+                        }
+                        System.out.println("Server resumed [" + outPath.getFileName() + "] at byte "
+                                + ContentRange.start(response.headers().firstValue("Content-Range").orElse(null))
+                                + " instead of " + existing + ", starting over.");
+                        try {
+                            Files.deleteIfExists(partPath);
+                        } catch (IOException e) {
+                            return CompletableFuture.failedFuture(e);
+                        }
+                        return fetch(url, outPath);
+                    }
+                    try {
+                        return CompletableFuture.completedFuture(finish(response, partPath, outPath, existing));
+                    } catch (IOException e) {
+                        return CompletableFuture.failedFuture(e);
+                    }
+                });
+    }
+
+    /**
+     * Pick where the body goes once the status is known: appended to the partial file for a
+     * resumed transfer, over it when the server sends the whole file, and nowhere otherwise,
+     * including a partial body that does not start where the file ends.
+     */
+    private BodySubscriber<Path> subscriber(HttpResponse.ResponseInfo info, String url, Path partPath,
+                                            Path outPath, long existing) {
+        if (isMisplaced(info.statusCode(), info.headers(), existing)) {
+            return BodySubscribers.replacing(null);
+        }
+        switch (info.statusCode()) {
+            case HTTP_PARTIAL:
+                System.out.println("Resuming [" + outPath.getFileName() + "] at byte " + existing + " from [" + url
+                        + "] to path [" + outPath.toString() + "]");
+                return watch(throttle(BodySubscribers.ofFile(partPath, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND)));
+            case HTTP_OK:
+                // Server ignored the range, start over
+                System.out.println("Downloading [" + outPath.getFileName() + "] from [" + url
+                        + "] to path [" + outPath.toString() + "]");
+                return watch(throttle(BodySubscribers.ofFile(partPath, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)));
+            default:
+                return BodySubscribers.replacing(null);
+        }
+    }
+
+    /**
+     * @return TRUE if the response is partial but does not start at the end of the partial
+     *         file
+     */
+    private static boolean isMisplaced(int status, HttpHeaders headers, long existing) {
+        return status == HTTP_PARTIAL
+                && ContentRange.start(headers.firstValue("Content-Range").orElse(null)) != existing;
+    }
+
+    private Path finish(HttpResponse<Path> response, Path partPath, Path outPath, long existing) throws IOException {
+        int status = response.statusCode();
+        if (status == HTTP_RANGE_NOT_SATISFIABLE && existing > 0
+                && ("bytes */" + existing).equals(response.headers().firstValue("Content-Range").orElse(null))) {
+            // Previous run finished the transfer but did not get to rename it
+            return complete(partPath, outPath);
+        } else if (status != HTTP_OK && status != HTTP_PARTIAL) {
+            if (status == HTTP_RANGE_NOT_SATISFIABLE) {
+                Files.deleteIfExists(partPath);
+            }
+            throw new HttpStatusException(status);
+        }
+
+        long length = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        long expected = length < 0 ? -1 : (status == HTTP_PARTIAL ? existing + length : length);
+
+        long size = Files.size(partPath);
+        if (expected >= 0 && size != expected) {
+            throw new IOException("Transfer ended at byte " + size + " of " + expected + ".");
+        }
+
+        long transferred = status == HTTP_PARTIAL ? size - existing : size;
+        limiter.success(transferred);
+        metrics.counter("download_bytes_total").add(transferred);
+        metrics.counter("downloads_total").increment();
+        return complete(partPath, outPath);
+    }
+
+    /**
+     * Pace the body to the shared bandwidth. Each chunk takes its tokens when it arrives, and
+     * if that puts the bucket into debt, the next request for data is held back on the timer
+     * until the debt is paid. The client reads no more from the socket until asked, so the
+     * sender is slowed down by flow control without a thread waiting.
+     */
+    private <T> BodySubscriber<T> throttle(BodySubscriber<T> subscriber) {
+        if (bandwidth.isUnlimited()) {
+            return subscriber;
+        }
+
+        return new BodySubscriber<T>() {
+            /** Time before which no more data is asked for. */
+            private volatile long resume = System.nanoTime();
+
+            @Override
+            public CompletionStage<T> getBody() {
+                return subscriber.getBody();
+            }
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                        long wait = resume - System.nanoTime();
+                        if (wait <= 0) {
+                            subscription.request(n);
+                            return;
+                        }
+                        try {
+                            timer.schedule(() -> subscription.request(n), wait, TimeUnit.NANOSECONDS);
+                        } catch (RejectedExecutionException e) {
+                            // Downloader is closed
+                            subscription.cancel();
+                        }
+                    }
+
+                    @Override
+                    public void cancel() {
+                        subscription.cancel();
+                    }
+                });
+            }
+
+            @Override
+            public void onNext(List<ByteBuffer> item) {
+                long bytes = 0;
+                for (ByteBuffer buffer : item) {
+                    bytes += buffer.remaining();
+                }
+                // Before passing the chunk on, which may ask for the next one
+                resume = System.nanoTime() + bandwidth.reserve(bytes);
+                subscriber.onNext(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                subscriber.onError(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                subscriber.onComplete();
+            }
+        };
+    }
+
+    /**
+     * Fail the body with a {@link SocketTimeoutException} if it has asked for data and none
+     * arrives within the timeout. Time spent not asking, such as waiting for bandwidth, does
+     * not count. The subscription is cancelled, which closes the connection.
+     */
+    private <T> BodySubscriber<T> watch(BodySubscriber<T> subscriber) {
+        long idle = timeout.toNanos();
+        long period = Math.max(10, timeout.toMillis() / 4);
+
+        return new BodySubscriber<T>() {
+            private final AtomicBoolean done = new AtomicBoolean();
+            /** Items asked for and not yet received. */
+            private final AtomicLong demand = new AtomicLong();
+            /** Last time data arrived or more was asked for. */
+            private volatile long active = System.nanoTime();
+            private volatile ScheduledFuture<?> check;
+
+            @Override
+            public CompletionStage<T> getBody() {
+                return subscriber.getBody();
+            }
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                check = timer.scheduleWithFixedDelay(() -> {
+                    if (demand.get() > 0 && System.nanoTime() - active > idle
+                            && done.compareAndSet(false, true)) {
+                        cancelCheck();
+                        subscription.cancel();
+                        subscriber.onError(new SocketTimeoutException(
+                                "No data received for " + timeout.toMillis() + " ms."));
+                    }
+                }, period, period, TimeUnit.MILLISECONDS);
+
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                        active = System.nanoTime();
+                        demand.accumulateAndGet(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+                        subscription.request(n);
+                    }
+
+                    @Override
+                    public void cancel() {
+                        subscription.cancel();
+                    }
+                });
+            }
+
+            @Override
+            public void onNext(List<ByteBuffer> item) {
+                active = System.nanoTime();
+                demand.decrementAndGet();
+                if (!done.get()) {
+                    subscriber.onNext(item);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                if (done.compareAndSet(false, true)) {
+                    cancelCheck();
+                    subscriber.onError(throwable);
+                }
+            }
+
+            @Override
+            public void onComplete() {
+                if (done.compareAndSet(false, true)) {
+                    cancelCheck();
+                    subscriber.onComplete();
+                }
+            }
+
+            private void cancelCheck() {
+                ScheduledFuture<?> f = check;
+                if (f != null) {
+                    f.cancel(false);
+                }
+            }
+        };
+    }
+
+    /**
+     * Move a finished transfer to its final name, atomically where the file system allows.
+     */
+    private Path complete(Path partPath, Path outPath) throws IOException {
+        try {
+            Files.move(partPath, outPath, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(partPath, outPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        System.out.println("Finished downloading [" + outPath.getFileName() + "]");
+        return outPath;
+    }
+
+    /**
+     * Stop the client threads. Transfers still in flight are abandoned.
+     */
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        executor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,74 @@
+package edu.jhu.tool.download;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket shared by all downloads, capping their combined rate in bytes per second.
+ * The bucket holds at most one second worth of bytes, so after an idle period transfers
+ * may briefly run faster than the cap before settling to it.
+ */
+public class BandwidthLimiter {
+
+    private final long rate;
+
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    /**
+     * @param rate bytes per second, 0 or less for no limit
+     */
+    public BandwidthLimiter(long rate) {
+        this.rate = rate;
+        this.tokens = Math.max(0, rate);
+    }
+
+    public boolean isUnlimited() {
+        return rate <= 0;
+    }
+
+    /**
+     * Take tokens for a chunk that is about to be written, waiting until the bucket holds
+     * enough. Chunks larger than the bucket put it into debt, so they wait for the time they
+     * would take at the capped rate.
+     *
+     * @param bytes size of the chunk
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public void acquire(long bytes) throws InterruptedIOException {
+        long wait = reserve(bytes);
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for bandwidth.");
+            }
+        }
+    }
+
+    /**
+     * Take tokens for a chunk without waiting, for callers that pace themselves.
+     *
+     * @param bytes size of the chunk
+     * @return time in ns until the bucket is out of debt, 0 if it is not in debt
+     */
+    public long reserve(long bytes) {
+        if (isUnlimited() || bytes <= 0) {
+            return 0;
+        }
+
+        synchronized (this) {
+            refill();
+            tokens -= bytes;
+            return tokens >= 0 ? 0 : (long) (-tokens * 1e9 / rate);
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(rate, tokens + (now - lastRefill) * rate / 1e9);
+        lastRefill = now;
+    }
+
+}
@@ -0,0 +1,182 @@
+package edu.jhu.tool.download;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adapts the number of concurrent transfers with additive increase / multiplicative
+ * decrease (AIMD), the way TCP adapts its congestion window.
+ *
+ * Each transfer takes a slot with {@link #acquire()}, gives it back with {@link #release()}
+ * and reports how each attempt went with {@link #success(long)} or {@link #failed(Throwable)}.
+ * After a window of
+ * successful attempts (as many as the current limit) the limit grows by one, unless the
+ * throughput of that window fell clearly below the previous one, which means the link is
+ * already full. A 429 or 503 response, or a reset connection, halves the limit. Halving is
+ * applied at most once per window, so a burst of failures from the same overload does not
+ * collapse the limit to the minimum; while failures go on without a window completing, the
+ * limit is halved again once per decrease interval.
+ */
+public class ConcurrencyLimiter {
+
+    /** A window this much slower than the previous one stops the limit from growing. */
+    private static final double THROUGHPUT_DROP = 0.9;
+
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int SERVICE_UNAVAILABLE = 503;
+
+    /** Shortest time between two decreases within one window, in ms. */
+    private static final long DECREASE_INTERVAL = 1000;
+
+    private final int min;
+    private final int max;
+    private final long decreaseInterval;
+
+    private int limit;
+    private int inFlight;
+
+    private int windowAttempts;
+    private long windowBytes;
+    private long windowStart = System.nanoTime();
+    private double lastThroughput;
+    private boolean decreasedThisWindow;
+    private long lastDecrease;
+
+    /**
+     * @param min lowest limit
+     * @param initial starting limit
+     * @param max highest limit
+     */
+    public ConcurrencyLimiter(int min, int initial, int max) {
+        this(min, initial, max, DECREASE_INTERVAL);
+    }
+
+    /**
+     * @param min lowest limit
+     * @param initial starting limit
+     * @param max highest limit
+     * @param decreaseInterval shortest time between two decreases within one window, in ms
+     */
+    ConcurrencyLimiter(int min, int initial, int max, long decreaseInterval) {
+        this.decreaseInterval = TimeUnit.MILLISECONDS.toNanos(decreaseInterval);
+        this.max = Math.max(1, max);
+        this.min = Math.max(1, Math.min(min, this.max));
+        this.limit = Math.max(this.min, Math.min(initial, this.max));
+    }
+
+    /**
+     * A limiter that always allows <code>limit</code> transfers.
+     */
+    public static ConcurrencyLimiter fixed(int limit) {
+        return new ConcurrencyLimiter(limit, limit, limit);
+    }
+
+    /**
+     * Wait for a free slot.
+     *
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public synchronized void acquire() throws InterruptedIOException {
+        while (inFlight >= limit) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a download slot.");
+            }
+        }
+        inFlight++;
+    }
+
+    /**
+     * Give back a slot taken with {@link #acquire()}.
+     */
+    public synchronized void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    /**
+     * Record a completed transfer.
+     *
+     * @param bytes bytes transferred
+     */
+    public synchronized void success(long bytes) {
+        windowAttempts++;
+        windowBytes += bytes;
+        if (windowAttempts < limit) {
+            return;
+        }
+
+        long elapsed = Math.max(1, System.nanoTime() - windowStart);
+        double throughput = windowBytes * 1e9 / elapsed;
+        if (throughput >= lastThroughput * THROUGHPUT_DROP && limit < max) {
+            limit++;
+            notifyAll();
+        }
+
+        lastThroughput = throughput;
+        resetWindow();
+    }
+
+    /**
+     * Record a failed transfer attempt. HTTP 429 and 503 responses and network failures
+     * count as congestion; other failures leave the limit alone.
+     *
+     * @param e the failure
+     */
+    public synchronized void failed(Throwable e) {
+        if (isCongestion(e)) {
+            decrease();
+        }
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @param e failure of a transfer attempt
+     * @return TRUE if the failure suggests the server or the link is overloaded
+     */
+    static boolean isCongestion(Throwable e) {
+        if (e instanceof HttpStatusException) {
+            int status = ((HttpStatusException) e).getStatus();
+            return status == TOO_MANY_REQUESTS || status == SERVICE_UNAVAILABLE;
+        } else if (e instanceof InterruptedIOException) {
+            // Timeouts are congestion, being interrupted is not
+            return e instanceof SocketTimeoutException;
+        }
+        // Resets and truncated transfers
+        return e instanceof IOException;
+    }
+
+    private void decrease() {
+        long now = System.nanoTime();
+        if (decreasedThisWindow && now - lastDecrease < decreaseInterval) {
+            return;
+        }
+        if (limit > min) {
+            limit = Math.max(min, limit / 2);
+            System.err.println("Download concurrency reduced to " + limit + ".");
+        }
+        lastThroughput = 0;
+        resetWindow();
+        decreasedThisWindow = true;
+        lastDecrease = now;
+    }
+
+    private void resetWindow() {
+        windowAttempts = 0;
+        windowBytes = 0;
+        windowStart = System.nanoTime();
+        decreasedThisWindow = false;
+    }
+
+}
@@ -0,0 +1,35 @@
+package edu.jhu.tool.download;
+
+/**
+ * Reads the Content-Range header of a partial (206) response, which says where in the
+ * file the body starts.
+ */
+public final class ContentRange {
+
+    private static final String BYTES = "bytes ";
+
+    private ContentRange() {
+    }
+
+    /**
+     * @param header value of the Content-Range header, such as "bytes 100-199/200"
+     * @return offset of the first byte of the body, or -1 if the header is missing or not
+     *         a byte range
+     */
+    public static long start(String header) {
+        if (header == null || !header.regionMatches(true, 0, BYTES, 0, BYTES.length())) {
+            return -1;
+        }
+        int dash = header.indexOf('-', BYTES.length());
+        if (dash < 0) {
+            return -1;
+        }
+        try {
+            long start = Long.parseLong(header.substring(BYTES.length(), dash).trim());
+            return start < 0 ? -1 : start;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+}
@@ -0,0 +1,334 @@
+package edu.jhu.tool.download;
+
+import edu.jhu.tool.tiff.TiffValidator;
+import edu.jhu.tool.tiff.TiffValidator.Status;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Persistent record of the files in the download directory. Each entry holds the size,
+ * modification time, SHA-256 and integrity status of one file, so later checks only need
+ * to re-hash files that changed since the last run.
+ */
+public class DownloadManifest {
+
+    public static final String FILE_NAME = ".manifest";
+
+    private static final String HEADER = "# name\tsize\tmtime\tsha256\tstatus";
+    private static final String PART_SUFFIX = ".part";
+
+    public static class Entry {
+        private final String name;
+        private final long size;
+        private final long modified;
+        private final String hash;
+        private final Status status;
+
+        Entry(String name, long size, long modified, String hash, Status status) {
+            this.name = name;
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.status = status;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getModified() {
+            return modified;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return file name up to the first '.', as used by the metadata spreadsheet
+         */
+        public String getBaseName() {
+            int dot = name.indexOf('.');
+            return dot < 0 ? name : name.substring(0, dot);
+        }
+    }
+
+    private final Path directory;
+    private final Map<String, Entry> entries = new TreeMap<>();
+
+    private int hashed;
+
+    private DownloadManifest(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Load the manifest kept in a directory. A missing or unreadable manifest gives an
+     * empty one, so every file is hashed on the next {@link #refresh()}.
+     *
+     * @param directory download directory
+     * @return the manifest
+     */
+    public static DownloadManifest load(Path directory) {
+        DownloadManifest manifest = new DownloadManifest(directory);
+
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.isRegularFile(file)) {
+            return manifest;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] parts = line.split("\t");
+                if (parts.length != 5) {
+                    continue;
+                }
+
+                try {
+                    Entry entry = new Entry(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+                            parts[3], Status.valueOf(parts[4]));
+                    manifest.entries.put(entry.name, entry);
+                } catch (IllegalArgumentException e) {
+                    // Skip damaged lines, the file will simply be hashed again
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error: Cannot read manifest, rebuilding. [" + file.toString() + "]");
+            manifest.entries.clear();
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Bring the manifest in line with the directory contents. Files whose size and
+     * modification time match their entry are left alone, new or changed files are hashed
+     * and checked, and entries for deleted files are dropped.
+     *
+     * @throws IOException if the directory cannot be listed
+     */
+    public synchronized void refresh() throws IOException {
+        Map<String, Entry> current = new HashMap<>();
+        hashed = 0;
+
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(directory)) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                if (name.startsWith(".") || name.endsWith(PART_SUFFIX) || !Files.isRegularFile(p)) {
+                    continue;
+                }
+
+                long size = Files.size(p);
+                long modified = Files.getLastModifiedTime(p).toMillis();
+
+                Entry entry = entries.get(name);
+                if (entry == null || entry.size != size || entry.modified != modified) {
+                    entry = new Entry(name, size, modified, hash(p), check(p));
+                    hashed++;
+                }
+                current.put(name, entry);
+            }
+        }
+
+        entries.clear();
+        entries.putAll(current);
+    }
+
+    /**
+     * Write the manifest next to the files it describes. The file is replaced atomically so
+     * an interrupted save never leaves a half-written manifest.
+     *
+     * @throws IOException if the manifest cannot be written
+     */
+    public synchronized void save() throws IOException {
+        Path file = directory.resolve(FILE_NAME);
+        Path tmp = directory.resolve(FILE_NAME + ".tmp");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (Entry entry : entries.values()) {
+                writer.write(entry.name + '\t' + entry.size + '\t' + entry.modified + '\t'
+                        + entry.hash + '\t' + entry.status.name());
+                writer.newLine();
+            }
+        }
+
+        try {
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Bring the entry of a single file up to date, hashing and checking it only if its size
+     * or modification time changed. Safe to call from several threads, which hash and check
+     * their files at the same time.
+     *
+     * @param path file in the manifest's directory
+     * @return entry of the file
+     * @throws IOException if the file cannot be read
+     */
+    public Entry refresh(Path path) throws IOException {
+        return refresh(path, null);
+    }
+
+    /**
+     * Like {@link #refresh(Path)}, for a file whose hash is already known, typically because
+     * it was computed while the file was downloaded.
+     *
+     * @param path file in the manifest's directory
+     * @param hash SHA-256 of the file as written, null to hash it if needed
+     * @return entry of the file
+     * @throws IOException if the file cannot be read
+     */
+    public Entry refresh(Path path, String hash) throws IOException {
+        Entry entry = getIfCurrent(path);
+        if (entry != null) {
+            return entry;
+        }
+
+        // Read before hashing, so a file that changes meanwhile is hashed again next time
+        String name = path.getFileName().toString();
+        long size = Files.size(path);
+        long modified = Files.getLastModifiedTime(path).toMillis();
+        boolean known = hash != null;
+        if (!known) {
+            hash = hash(path);
+        }
+        entry = new Entry(name, size, modified, hash, check(path));
+
+        synchronized (this) {
+            if (!known) {
+                hashed++;
+            }
+            entries.put(name, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * @param path file in the manifest's directory
+     * @return entry of the file if its size and modification time still match, otherwise
+     *         null
+     */
+    public synchronized Entry getIfCurrent(Path path) {
+        Entry entry = entries.get(path.getFileName().toString());
+        try {
+            if (entry != null && entry.size == Files.size(path)
+                    && entry.modified == Files.getLastModifiedTime(path).toMillis()) {
+                return entry;
+            }
+        } catch (IOException e) {
+            // Treated as changed
+        }
+        return null;
+    }
+
+    public synchronized Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    public synchronized Entry get(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * @return entries keyed by {@link Entry#getBaseName()}
+     */
+    public synchronized Map<String, Entry> byBaseName() {
+        Map<String, Entry> map = new HashMap<>();
+        for (Entry entry : entries.values()) {
+            // Prefer the image when other files share its base name
+            Entry existing = map.get(entry.getBaseName());
+            if (existing == null || !isTiff(existing.name)) {
+                map.put(entry.getBaseName(), entry);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * @return number of files hashed by the last {@link #refresh()}
+     */
+    public int getHashed() {
+        return hashed;
+    }
+
+    private Status check(Path path) throws IOException {
+        if (!isTiff(path.getFileName().toString())) {
+            return Status.OK;
+        }
+
+        return TiffValidator.validate(path).getStatus();
+    }
+
+    /**
+     * @return TRUE if the name ends in .tif or .tiff, in any case
+     */
+    static boolean isTiff(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        return lower.endsWith(".tif") || lower.endsWith(".tiff");
+    }
+
+    static String hash(Path path) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        byte[] buffer = new byte[1024 * 1024];
+        try (InputStream in = Files.newInputStream(path)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        }
+
+        return toHex(digest.digest());
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] hex = "0123456789abcdef".toCharArray();
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            out[2 * i] = hex[(bytes[i] >> 4) & 0xF];
+            out[2 * i + 1] = hex[bytes[i] & 0xF];
+        }
+        return new String(out);
+    }
+
+}
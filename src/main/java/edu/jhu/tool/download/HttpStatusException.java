@@ -0,0 +1,47 @@
+package edu.jhu.tool.download;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a server answers a download request with an unexpected HTTP status.
+ */
+public class HttpStatusException extends IOException {
+
+    private static final int REQUEST_TIMEOUT = 408;
+    private static final int RANGE_NOT_SATISFIABLE = 416;
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final int status;
+
+    public HttpStatusException(int status) {
+        super("Server responded with HTTP " + status + ".");
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return TRUE if the same request may succeed later. Client errors other than
+     *         timeouts and throttling will not. A rejected range is retryable because the
+     *         partial file is discarded and the next attempt starts from scratch.
+     */
+    public boolean isRetryable() {
+        return status >= 500 || status == REQUEST_TIMEOUT || status == TOO_MANY_REQUESTS
+                || status == RANGE_NOT_SATISFIABLE;
+    }
+
+    /**
+     * @param e failure of a transfer
+     * @return short name of the cause, such as "http_503" or "SocketTimeoutException",
+     *         used to group failures in metrics
+     */
+    public static String cause(Throwable e) {
+        if (e instanceof HttpStatusException) {
+            return "http_" + ((HttpStatusException) e).getStatus();
+        }
+        return e.getClass().getSimpleName();
+    }
+
+}
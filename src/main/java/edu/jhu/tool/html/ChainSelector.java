@@ -0,0 +1,188 @@
+package edu.jhu.tool.html;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The subset of CSS selectors that can be matched while streaming: a chain of compound
+ * selectors made of a tag name (or <code>*</code>), <code>#id</code> and <code>.class</code>,
+ * joined by child (<code>&gt;</code>) or descendant (whitespace) combinators, such as
+ * <code>div#list-view-container &gt; ol &gt; li &gt; div.filename-col &gt; a</code>.
+ * A chain is matched against the stack of currently open elements, so it never needs
+ * elements that have been closed or not yet read.
+ */
+public class ChainSelector {
+
+    private static class Step {
+        String tag;
+        String id;
+        final List<String> classes = new ArrayList<>();
+        /** TRUE if this step must be a child of the previous one, not just a descendant. */
+        boolean child;
+
+        boolean matches(OpenElement element) {
+            if (tag != null && !tag.equals(element.getName())) {
+                return false;
+            } else if (id != null && !id.equals(element.getId())) {
+                return false;
+            }
+            for (String c : classes) {
+                if (!element.hasClass(c)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final List<Step> steps;
+
+    private ChainSelector(List<Step> steps) {
+        this.steps = steps;
+    }
+
+    /**
+     * @param selector CSS selector
+     * @return the parsed selector
+     * @throws IllegalArgumentException if the selector uses anything beyond tag names, ids,
+     *         classes and the child and descendant combinators
+     */
+    public static ChainSelector parse(String selector) {
+        List<Step> steps = new ArrayList<>();
+        Step step = null;
+        boolean child = false;
+
+        String s = selector.trim();
+        int i = 0;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            } else if (c == '>') {
+                if (step == null || child) {
+                    throw unsupported(selector);
+                }
+                child = true;
+                i++;
+                continue;
+            }
+
+            if (!isNameChar(c) && c != '*' && c != '#' && c != '.') {
+                throw unsupported(selector);
+            }
+
+            // One compound selector, up to the next combinator
+            step = new Step();
+            step.child = child;
+            child = false;
+
+            if (c == '*') {
+                i++;
+            } else if (isNameChar(c)) {
+                int end = nameEnd(s, i);
+                step.tag = s.substring(i, end).toLowerCase();
+                i = end;
+            }
+
+            while (i < s.length() && (s.charAt(i) == '#' || s.charAt(i) == '.')) {
+                char kind = s.charAt(i);
+                int end = nameEnd(s, i + 1);
+                if (end == i + 1) {
+                    throw unsupported(selector);
+                }
+                String name = s.substring(i + 1, end);
+                if (kind == '#') {
+                    step.id = name;
+                } else {
+                    step.classes.add(name);
+                }
+                i = end;
+            }
+
+            if (i < s.length() && !Character.isWhitespace(s.charAt(i)) && s.charAt(i) != '>') {
+                throw unsupported(selector);
+            }
+            steps.add(step);
+        }
+
+        if (steps.isEmpty() || child) {
+            throw unsupported(selector);
+        }
+        return new ChainSelector(Collections.unmodifiableList(steps));
+    }
+
+    /**
+     * @param stack open elements, outermost first. The last element is the one being tested.
+     * @return TRUE if the last element matches
+     */
+    public boolean matches(List<OpenElement> stack) {
+        return !stack.isEmpty() && match(steps.size() - 1, stack, stack.size() - 1);
+    }
+
+    private boolean match(int step, List<OpenElement> stack, int index) {
+        Step current = steps.get(step);
+        if (!current.matches(stack.get(index))) {
+            return false;
+        } else if (step == 0) {
+            return true;
+        } else if (current.child) {
+            return index > 0 && match(step - 1, stack, index - 1);
+        }
+
+        for (int i = index - 1; i >= 0; i--) {
+            if (match(step - 1, stack, i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '-' || c == '_';
+    }
+
+    private static int nameEnd(String s, int start) {
+        int i = start;
+        while (i < s.length() && isNameChar(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static IllegalArgumentException unsupported(String selector) {
+        return new IllegalArgumentException("Selector [" + selector + "] cannot be matched while streaming.");
+    }
+
+    /**
+     * An element whose start tag has been read and whose end tag has not.
+     */
+    public static class OpenElement {
+        private final String name;
+        private final String id;
+        private final List<String> classes;
+
+        OpenElement(String name, String id, String classes) {
+            this.name = name;
+            this.id = id;
+            this.classes = classes == null || classes.trim().isEmpty()
+                    ? Collections.<String>emptyList()
+                    : Arrays.asList(classes.trim().split("\\s+"));
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public boolean hasClass(String c) {
+            return classes.contains(c);
+        }
+    }
+
+}
@@ -0,0 +1,335 @@
+package edu.jhu.tool.html;
+
+import edu.jhu.tool.html.ChainSelector.OpenElement;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Pulls one attribute out of the elements matching a {@link ChainSelector} while reading
+ * an HTML document, without building a document tree. Only the stack of open elements is
+ * kept, so memory use depends on the nesting depth of the page rather than its length, and
+ * each value is handed over as soon as its start tag has been read.
+ *
+ * This is a tag scanner, not a full HTML parser: it skips comments, doctypes and the
+ * contents of script and style elements, knows the void elements, and closes an open
+ * <code>li</code> or <code>p</code> when a sibling starts, which covers the markup of the
+ * Dropbox folder view.
+ */
+public class LinkScanner {
+
+    private static final Set<String> VOID_ELEMENTS = new HashSet<>(Arrays.asList(
+            "area", "base", "br", "col", "embed", "hr", "img", "input", "link", "meta", "param",
+            "source", "track", "wbr"));
+    private static final Set<String> RAW_TEXT_ELEMENTS = new HashSet<>(Arrays.asList(
+            "script", "style", "textarea", "title"));
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final ChainSelector selector;
+    private final String attribute;
+    private final Consumer<String> consumer;
+
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private int pushback = -1;
+
+    private final List<OpenElement> stack = new ArrayList<>();
+
+    private LinkScanner(Reader reader, ChainSelector selector, String attribute, Consumer<String> consumer) {
+        this.reader = reader;
+        this.selector = selector;
+        this.attribute = attribute.toLowerCase();
+        this.consumer = consumer;
+    }
+
+    /**
+     * @param reader HTML document
+     * @param selector elements to look for
+     * @param attribute attribute to extract, such as <code>href</code>
+     * @param consumer receives the value of the attribute for every matching element that
+     *                 has it, in document order
+     * @throws IOException if the document cannot be read
+     */
+    public static void scan(Reader reader, ChainSelector selector, String attribute, Consumer<String> consumer)
+            throws IOException {
+        new LinkScanner(reader, selector, attribute, consumer).scan();
+    }
+
+    private void scan() throws IOException {
+        int c;
+        while ((c = read()) >= 0) {
+            if (c != '<') {
+                continue;
+            }
+
+            c = read();
+            if (c == '!') {
+                c = read();
+                if (c == '-' && read() == '-') {
+                    skipPast("-->");
+                } else if (c != '>') {
+                    skipPast(">");
+                }
+            } else if (c == '?') {
+                skipPast(">");
+            } else if (c == '/') {
+                String name = readName(read());
+                skipPast(">");
+                if (!name.isEmpty()) {
+                    endTag(name);
+                }
+            } else if (isLetter(c)) {
+                startTag(readName(c));
+            } else {
+                unread(c);
+            }
+        }
+    }
+
+    private void startTag(String name) throws IOException {
+        String id = null;
+        String classes = null;
+        String value = null;
+        boolean selfClosing = false;
+
+        // Attributes
+        while (true) {
+            int c = skipWhitespace();
+            if (c < 0 || c == '>') {
+                break;
+            } else if (c == '/') {
+                selfClosing = true;
+                continue;
+            }
+            selfClosing = false;
+
+            StringBuilder attrName = new StringBuilder();
+            while (c >= 0 && !Character.isWhitespace(c) && c != '=' && c != '>' && c != '/') {
+                attrName.append(Character.toLowerCase((char) c));
+                c = read();
+            }
+            if (Character.isWhitespace(c)) {
+                c = skipWhitespace();
+            }
+
+            String attrValue = "";
+            if (c == '=') {
+                attrValue = decode(readValue(skipWhitespace()));
+            } else {
+                unread(c);
+            }
+
+            String key = attrName.toString();
+            if (key.equals("id")) {
+                id = attrValue;
+            } else if (key.equals("class")) {
+                classes = attrValue;
+            }
+            if (key.equals(attribute)) {
+                value = attrValue;
+            }
+        }
+
+        closeImplied(name);
+        stack.add(new OpenElement(name, id, classes));
+        if (value != null && selector.matches(stack)) {
+            consumer.accept(value);
+        }
+
+        if (VOID_ELEMENTS.contains(name) || selfClosing) {
+            stack.remove(stack.size() - 1);
+        } else if (RAW_TEXT_ELEMENTS.contains(name)) {
+            skipRawText(name);
+            stack.remove(stack.size() - 1);
+        }
+    }
+
+    private void endTag(String name) {
+        for (int i = stack.size() - 1; i >= 0; i--) {
+            if (stack.get(i).getName().equals(name)) {
+                // Anything left open inside is closed with it
+                stack.subList(i, stack.size()).clear();
+                return;
+            }
+        }
+    }
+
+    /**
+     * A new list item or paragraph ends the open one, even without an end tag.
+     */
+    private void closeImplied(String name) {
+        if (!name.equals("li") && !name.equals("p")) {
+            return;
+        }
+        for (int i = stack.size() - 1; i >= 0; i--) {
+            String open = stack.get(i).getName();
+            if (open.equals(name)) {
+                stack.subList(i, stack.size()).clear();
+                return;
+            } else if (open.equals("ul") || open.equals("ol") || open.equals("div")
+                    || open.equals("td") || open.equals("body")) {
+                return;
+            }
+        }
+    }
+
+    private String readName(int c) throws IOException {
+        StringBuilder name = new StringBuilder();
+        while (c >= 0 && (Character.isLetterOrDigit(c) || c == '-' || c == ':')) {
+            name.append(Character.toLowerCase((char) c));
+            c = read();
+        }
+        unread(c);
+        return name.toString();
+    }
+
+    private String readValue(int c) throws IOException {
+        StringBuilder value = new StringBuilder();
+        if (c == '"' || c == '\'') {
+            int quote = c;
+            while ((c = read()) >= 0 && c != quote) {
+                value.append((char) c);
+            }
+        } else {
+            while (c >= 0 && !Character.isWhitespace(c) && c != '>') {
+                value.append((char) c);
+                c = read();
+            }
+            unread(c);
+        }
+        return value.toString();
+    }
+
+    private void skipRawText(String name) throws IOException {
+        // Ends at the first "</name", in any case
+        String end = "</" + name;
+        int matched = 0;
+        int c;
+        while ((c = read()) >= 0) {
+            if (Character.toLowerCase(c) == end.charAt(matched)) {
+                if (++matched == end.length()) {
+                    skipPast(">");
+                    return;
+                }
+            } else {
+                matched = c == '<' ? 1 : 0;
+            }
+        }
+    }
+
+    private void skipPast(String end) throws IOException {
+        // Compare the last few characters read, so "--->" still ends a comment
+        char[] last = new char[end.length()];
+        int count = 0;
+        int c;
+        while ((c = read()) >= 0) {
+            System.arraycopy(last, 1, last, 0, last.length - 1);
+            last[last.length - 1] = (char) c;
+            if (++count >= last.length && end.contentEquals(new StringBuilder().append(last))) {
+                return;
+            }
+        }
+    }
+
+    private int skipWhitespace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c >= 0 && Character.isWhitespace(c));
+        return c;
+    }
+
+    private int read() throws IOException {
+        if (pushback >= 0) {
+            int c = pushback;
+            pushback = -1;
+            return c;
+        }
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private void unread(int c) {
+        if (c >= 0) {
+            pushback = c;
+        }
+    }
+
+    private static boolean isLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * Resolve the character references that appear in attribute values.
+     */
+    static String decode(String value) {
+        int amp = value.indexOf('&');
+        if (amp < 0) {
+            return value;
+        }
+
+        StringBuilder out = new StringBuilder(value.length());
+        int i = 0;
+        while (amp >= 0) {
+            out.append(value, i, amp);
+            int semi = value.indexOf(';', amp);
+            String ref = semi < 0 ? null : value.substring(amp + 1, semi);
+            String decoded = ref == null ? null : reference(ref);
+            if (decoded == null) {
+                out.append('&');
+                i = amp + 1;
+            } else {
+                out.append(decoded);
+                i = semi + 1;
+            }
+            amp = value.indexOf('&', i);
+        }
+        out.append(value, i, value.length());
+        return out.toString();
+    }
+
+    private static String reference(String ref) {
+        switch (ref) {
+            case "amp":
+                return "&";
+            case "lt":
+                return "<";
+            case "gt":
+                return ">";
+            case "quot":
+                return "\"";
+            case "apos":
+                return "'";
+            default:
+                break;
+        }
+
+        try {
+            if (ref.startsWith("#x") || ref.startsWith("#X")) {
+                return new String(Character.toChars(Integer.parseInt(ref.substring(2), 16)));
+            } else if (ref.startsWith("#")) {
+                return new String(Character.toChars(Integer.parseInt(ref.substring(1))));
+            }
+        } catch (IllegalArgumentException e) {
+            // Not a valid code point, keep the text as it is
+        }
+        return null;
+    }
+
+}
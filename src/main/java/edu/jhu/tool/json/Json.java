@@ -0,0 +1,34 @@
+package edu.jhu.tool.json;
+
+/**
+ * Writes the values of the JSON documents the tool builds by hand: reports, metrics and
+ * the watch status.
+ */
+public final class Json {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private Json() {
+    }
+
+    /**
+     * @param value any text, such as a file name or an exception message
+     * @return the text as a quoted JSON string, with quotes and backslashes escaped and every
+     *         control character written as a six-character unicode escape
+     */
+    public static String string(String value) {
+        StringBuilder out = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            } else {
+                out.append(c);
+            }
+        }
+        return out.append('"').toString();
+    }
+
+}
@@ -0,0 +1,22 @@
+package edu.jhu.tool.metadata;
+
+/**
+ * Receives the rows of a spreadsheet as they are read.
+ */
+public interface RowHandler {
+
+    /**
+     * Called once before the first row if the sheet declares its used range.
+     *
+     * @param count number of columns, i.e. the last used column index + 1
+     */
+    default void columns(int count) {}
+
+    /**
+     * @param index zero-based row index
+     * @param cells cell values indexed by column, up to the last cell in the row. Cells
+     *              that do not exist are null; blank cells are empty strings.
+     */
+    void row(int index, String[] cells);
+
+}
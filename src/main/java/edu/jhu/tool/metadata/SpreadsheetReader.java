@@ -0,0 +1,355 @@
+package edu.jhu.tool.metadata;
+
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.FormatTrackingHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.DimensionsRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Streams the first sheet of an Excel workbook row by row, without building the workbook
+ * object model. Legacy <code>.xls</code> files are read with the HSSF event API and
+ * <code>.xlsx</code> files are parsed with SAX, so memory use does not grow with the
+ * number of rows.
+ */
+public class SpreadsheetReader {
+
+    private SpreadsheetReader() {}
+
+    /**
+     * @param path <code>.xls</code> or <code>.xlsx</code> workbook
+     * @param handler receives the rows of the first sheet in order
+     * @throws IOException if the file cannot be read or is not a workbook
+     */
+    public static void read(Path path, RowHandler handler) throws IOException {
+        if (path.getFileName().toString().toLowerCase().endsWith(".xlsx")) {
+            readXlsx(path, handler);
+        } else {
+            readXls(path, handler);
+        }
+    }
+
+    // ----------------------------------------------------------------------------------
+
+    private static void readXls(Path path, RowHandler handler) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            POIFSFileSystem fs = new POIFSFileSystem(in);
+
+            HSSFRequest request = new HSSFRequest();
+            request.addListenerForAllRecords(new XlsListener(handler));
+
+            new HSSFEventFactory().abortableProcessWorkbookEvents(request, fs);
+        } catch (HSSFUserException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Collects cell records of the first worksheet into rows. Cell records arrive in row
+     * order, so a row is complete as soon as a cell of a later row (or the end of the sheet)
+     * is seen. Reading stops at the end of the first worksheet.
+     */
+    private static class XlsListener extends AbortableHSSFListener {
+
+        private final RowHandler handler;
+        private final FormatTrackingHSSFListener formats = new FormatTrackingHSSFListener(null);
+
+        private SSTRecord strings;
+        private int worksheets = 0;
+        private int depth = 0;
+        private boolean inFirstSheet = false;
+
+        private int currentRow = -1;
+        private List<String> cells = new ArrayList<>();
+
+        /** Column of a formula whose string value follows in a StringRecord. */
+        private int pendingFormulaColumn = -1;
+
+        XlsListener(RowHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public short abortableProcessRecord(Record record) throws HSSFUserException {
+            formats.processRecordInternally(record);
+
+            switch (record.getSid()) {
+                case BOFRecord.sid:
+                    // Charts embedded in a sheet open a nested BOF/EOF substream
+                    if (depth++ == 0 && ((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET) {
+                        inFirstSheet = worksheets++ == 0;
+                    }
+                    break;
+                case EOFRecord.sid:
+                    if (--depth == 0 && inFirstSheet) {
+                        flush();
+                        return 1;
+                    }
+                    break;
+                case SSTRecord.sid:
+                    strings = (SSTRecord) record;
+                    break;
+                case DimensionsRecord.sid:
+                    if (inFirstSheet) {
+                        handler.columns(((DimensionsRecord) record).getLastCol());
+                    }
+                    break;
+                case LabelSSTRecord.sid:
+                    LabelSSTRecord label = (LabelSSTRecord) record;
+                    cell(label, strings.getString(label.getSSTIndex()).getString());
+                    break;
+                case LabelRecord.sid:
+                    LabelRecord plain = (LabelRecord) record;
+                    cell(row(plain.getRow()), plain.getColumn(), plain.getValue());
+                    break;
+                case NumberRecord.sid:
+                    NumberRecord number = (NumberRecord) record;
+                    cell(number, formats.formatNumberDateCell(number));
+                    break;
+                case BoolErrRecord.sid:
+                    BoolErrRecord bool = (BoolErrRecord) record;
+                    cell(bool, bool.isBoolean() ? String.valueOf(bool.getBooleanValue()).toUpperCase() : "#ERROR");
+                    break;
+                case BlankRecord.sid:
+                    cell((BlankRecord) record, "");
+                    break;
+                case FormulaRecord.sid:
+                    FormulaRecord formula = (FormulaRecord) record;
+                    if (formula.hasCachedResultString()) {
+                        row(formula.getRow());
+                        pendingFormulaColumn = formula.getColumn();
+                    } else if (formula.getCachedResultType() == Cell.CELL_TYPE_BOOLEAN) {
+                        cell(formula, String.valueOf(formula.getCachedBooleanValue()).toUpperCase());
+                    } else {
+                        cell(formula, formats.formatNumberDateCell(formula));
+                    }
+                    break;
+                case StringRecord.sid:
+                    if (pendingFormulaColumn >= 0) {
+                        cell(currentRow, pendingFormulaColumn, ((StringRecord) record).getString());
+                        pendingFormulaColumn = -1;
+                    }
+                    break;
+                default:
+                    break;
+            }
+
+            return 0;
+        }
+
+        private void cell(CellValueRecordInterface record, String value) {
+            cell(row(record.getRow()), record.getColumn(), value);
+        }
+
+        private void cell(int row, int column, String value) {
+            if (!inFirstSheet || depth != 1) {
+                return;
+            }
+            while (cells.size() <= column) {
+                cells.add(null);
+            }
+            cells.set(column, value);
+        }
+
+        private int row(int row) {
+            if (inFirstSheet && depth == 1 && row != currentRow) {
+                flush();
+                currentRow = row;
+            }
+            return row;
+        }
+
+        private void flush() {
+            if (currentRow >= 0) {
+                handler.row(currentRow, cells.toArray(new String[cells.size()]));
+            }
+            cells = new ArrayList<>();
+            currentRow = -1;
+        }
+    }
+
+    // ----------------------------------------------------------------------------------
+
+    private static void readXlsx(Path path, RowHandler handler) throws IOException {
+        OPCPackage pkg;
+        try {
+            pkg = OPCPackage.open(path.toFile(), PackageAccess.READ);
+        } catch (OpenXML4JException e) {
+            throw new IOException(e);
+        }
+
+        try {
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            XSSFReader reader = new XSSFReader(pkg);
+
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return;
+            }
+
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            XMLReader parser = factory.newSAXParser().getXMLReader();
+            parser.setContentHandler(new XlsxSheetHandler(strings, handler));
+
+            try (InputStream sheet = sheets.next()) {
+                parser.parse(new InputSource(sheet));
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException(e);
+        } finally {
+            // Read-only packages are released with revert(), close() would try to save
+            pkg.revert();
+        }
+    }
+
+    /**
+     * SAX handler for a SpreadsheetML worksheet part.
+     */
+    private static class XlsxSheetHandler extends DefaultHandler {
+
+        private final ReadOnlySharedStringsTable strings;
+        private final RowHandler handler;
+
+        private int currentRow = -1;
+        private List<String> cells = new ArrayList<>();
+
+        private int column;
+        private String type;
+        private boolean inValue;
+        private final StringBuilder value = new StringBuilder();
+
+        XlsxSheetHandler(ReadOnlySharedStringsTable strings, RowHandler handler) {
+            this.strings = strings;
+            this.handler = handler;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "dimension":
+                    // A single-cell reference is written by tools that do not track the
+                    // used range (including POI itself), so it says nothing about the width
+                    String ref = attributes.getValue("ref");
+                    if (ref != null && ref.indexOf(':') > 0) {
+                        handler.columns(columnIndex(ref.substring(ref.indexOf(':') + 1)) + 1);
+                    }
+                    break;
+                case "row":
+                    String r = attributes.getValue("r");
+                    currentRow = r != null ? Integer.parseInt(r) - 1 : currentRow + 1;
+                    cells = new ArrayList<>();
+                    break;
+                case "c":
+                    String cellRef = attributes.getValue("r");
+                    column = cellRef != null ? columnIndex(cellRef) : cells.size();
+                    type = attributes.getValue("t");
+                    value.setLength(0);
+                    break;
+                case "v":
+                case "t":
+                    inValue = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inValue) {
+                value.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "v":
+                case "t":
+                    inValue = false;
+                    break;
+                case "c":
+                    String text = value.toString();
+                    if ("s".equals(type) && !text.isEmpty()) {
+                        text = strings.getEntryAt(Integer.parseInt(text));
+                    } else if ("b".equals(type)) {
+                        text = "1".equals(text) ? "TRUE" : "FALSE";
+                    } else if ((type == null || "n".equals(type)) && !text.isEmpty()) {
+                        text = formatNumber(text);
+                    }
+                    while (cells.size() <= column) {
+                        cells.add(null);
+                    }
+                    cells.set(column, text);
+                    break;
+                case "row":
+                    handler.row(currentRow, cells.toArray(new String[cells.size()]));
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * Numbers are stored as raw doubles; show them the way Excel's General format does
+         * for plain values, so 12.0 reads as "12".
+         */
+        private static String formatNumber(String raw) {
+            try {
+                return new BigDecimal(raw).stripTrailingZeros().toPlainString();
+            } catch (NumberFormatException e) {
+                return raw;
+            }
+        }
+
+        /**
+         * @param ref cell reference such as "AB12"
+         * @return zero-based column index
+         */
+        private static int columnIndex(String ref) {
+            int column = 0;
+            for (int i = 0; i < ref.length() && Character.isLetter(ref.charAt(i)); i++) {
+                column = column * 26 + (Character.toUpperCase(ref.charAt(i)) - 'A' + 1);
+            }
+            return column - 1;
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+package edu.jhu.tool.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with fixed buckets from 1 ms to 10 minutes on a 1-2-5 scale.
+ * Recording is a bucket search and three atomic adds, so it is cheap enough for every page
+ * and every file. Quantiles are estimated as the upper bound of the bucket they fall in.
+ */
+public class Histogram {
+
+    /** Bucket upper bounds in milliseconds. Larger values fall in an overflow bucket. */
+    static final long[] BOUNDS = {
+            1, 2, 5, 10, 20, 50, 100, 200, 500,
+            1000, 2000, 5000, 10000, 20000, 50000, 100000, 200000, 600000
+    };
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param nanos duration to record
+     */
+    public void record(long nanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < BOUNDS.length && millis > BOUNDS[bucket]) {
+            bucket++;
+        }
+
+        buckets.incrementAndGet(bucket);
+        count.increment();
+        sumNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getSumSeconds() {
+        return sumNanos.sum() / 1e9;
+    }
+
+    public double getMaxSeconds() {
+        return maxNanos.get() / 1e9;
+    }
+
+    /**
+     * @param bucket bucket index, up to and including {@link #BOUNDS}.length
+     * @return number of values recorded in the bucket
+     */
+    long getBucket(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    /**
+     * @param q quantile between 0 and 1
+     * @return upper bound in seconds of the bucket holding the quantile, the maximum for the
+     *         overflow bucket, 0 if nothing was recorded
+     */
+    public double getQuantile(double q) {
+        long total = 0;
+        long[] snapshot = new long[BOUNDS.length + 1];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(q * total);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return BOUNDS[i] / 1000.0;
+            }
+        }
+        return getMaxSeconds();
+    }
+
+}
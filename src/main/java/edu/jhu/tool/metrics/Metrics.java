@@ -0,0 +1,206 @@
+package edu.jhu.tool.metrics;
+
+import edu.jhu.tool.json.Json;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of the counters, gauges and latency histograms of one run. Metrics are created
+ * on first use and identified by a name plus optional label pairs, written the Prometheus
+ * way: <code>download_failures_total{cause="http_503"}</code>. Counters are
+ * {@link LongAdder}s and histograms are lock-free, so worker threads can update them on
+ * every file without contending.
+ */
+public class Metrics {
+
+    private final long started = System.nanoTime();
+
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param name metric name
+     * @param labels label names and values, alternating
+     * @return the counter, created at zero if new
+     */
+    public LongAdder counter(String name, String... labels) {
+        return counters.computeIfAbsent(key(name, labels), k -> new LongAdder());
+    }
+
+    /**
+     * @param name metric name
+     * @param labels label names and values, alternating
+     * @return the histogram, created empty if new
+     */
+    public Histogram histogram(String name, String... labels) {
+        return histograms.computeIfAbsent(key(name, labels), k -> new Histogram());
+    }
+
+    /**
+     * Register a value that is read when metrics are written, replacing any gauge of the
+     * same name and labels.
+     *
+     * @param name metric name
+     * @param value supplies the current value
+     * @param labels label names and values, alternating
+     */
+    public void gauge(String name, LongSupplier value, String... labels) {
+        gauges.put(key(name, labels), value);
+    }
+
+    /**
+     * @return current value of every counter
+     */
+    public Map<String, Long> snapshotCounters() {
+        Map<String, Long> snapshot = new ConcurrentSkipListMap<>();
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            snapshot.put(counter.getKey(), counter.getValue().sum());
+        }
+        return snapshot;
+    }
+
+    public double getUptimeSeconds() {
+        return (System.nanoTime() - started) / 1e9;
+    }
+
+    /**
+     * @param rates per second rate of each counter over the last interval
+     * @return all metrics as a JSON object
+     */
+    public String toJson(Map<String, Double> rates) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"uptime_seconds\": ").append(number(getUptimeSeconds()));
+
+        json.append(",\n  \"counters\": {");
+        String separator = "\n";
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            json.append(separator).append("    ").append(Json.string(counter.getKey())).append(": ")
+                    .append(counter.getValue().sum());
+            separator = ",\n";
+        }
+        json.append("\n  }");
+
+        json.append(",\n  \"rates_per_second\": {");
+        separator = "\n";
+        for (Map.Entry<String, Double> rate : rates.entrySet()) {
+            json.append(separator).append("    ").append(Json.string(rate.getKey())).append(": ")
+                    .append(number(rate.getValue()));
+            separator = ",\n";
+        }
+        json.append("\n  }");
+
+        json.append(",\n  \"gauges\": {");
+        separator = "\n";
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            json.append(separator).append("    ").append(Json.string(gauge.getKey())).append(": ")
+                    .append(gauge.getValue().getAsLong());
+            separator = ",\n";
+        }
+        json.append("\n  }");
+
+        json.append(",\n  \"histograms\": {");
+        separator = "\n";
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            Histogram h = entry.getValue();
+            long count = h.getCount();
+            json.append(separator).append("    ").append(Json.string(entry.getKey())).append(": {")
+                    .append("\"count\": ").append(count)
+                    .append(", \"sum_seconds\": ").append(number(h.getSumSeconds()))
+                    .append(", \"mean_seconds\": ").append(number(count > 0 ? h.getSumSeconds() / count : 0))
+                    .append(", \"p50_seconds\": ").append(number(h.getQuantile(0.5)))
+                    .append(", \"p90_seconds\": ").append(number(h.getQuantile(0.9)))
+                    .append(", \"p99_seconds\": ").append(number(h.getQuantile(0.99)))
+                    .append(", \"max_seconds\": ").append(number(h.getMaxSeconds()))
+                    .append("}");
+            separator = ",\n";
+        }
+        json.append("\n  }\n}\n");
+
+        return json.toString();
+    }
+
+    /**
+     * @return all metrics in the Prometheus text exposition format
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+
+        String type = null;
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            type = typeLine(out, type, baseName(counter.getKey()), "counter");
+            out.append(counter.getKey()).append(' ').append(counter.getValue().sum()).append('\n');
+        }
+
+        type = null;
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            type = typeLine(out, type, baseName(gauge.getKey()), "gauge");
+            out.append(gauge.getKey()).append(' ').append(gauge.getValue().getAsLong()).append('\n');
+        }
+
+        type = null;
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            String name = baseName(entry.getKey());
+            String labels = labels(entry.getKey());
+            String prefix = labels.isEmpty() ? "{" : "{" + labels + ",";
+            String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+            Histogram h = entry.getValue();
+
+            type = typeLine(out, type, name, "histogram");
+            long cumulative = 0;
+            for (int i = 0; i < Histogram.BOUNDS.length; i++) {
+                cumulative += h.getBucket(i);
+                out.append(name).append("_bucket").append(prefix).append("le=\"")
+                        .append(number(Histogram.BOUNDS[i] / 1000.0)).append("\"} ").append(cumulative).append('\n');
+            }
+            out.append(name).append("_bucket").append(prefix).append("le=\"+Inf\"} ").append(h.getCount()).append('\n');
+            out.append(name).append("_sum").append(suffix).append(' ').append(number(h.getSumSeconds())).append('\n');
+            out.append(name).append("_count").append(suffix).append(' ').append(h.getCount()).append('\n');
+        }
+
+        return out.toString();
+    }
+
+    static String key(String name, String... labels) {
+        if (labels.length == 0) {
+            return name;
+        }
+
+        StringBuilder key = new StringBuilder(name).append('{');
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            if (i > 0) {
+                key.append(',');
+            }
+            key.append(labels[i]).append("=\"").append(labels[i + 1].replace("\\", "\\\\")
+                    .replace("\"", "\\\"").replace("\n", "\\n")).append('"');
+        }
+        return key.append('}').toString();
+    }
+
+    private static String typeLine(StringBuilder out, String previous, String name, String type) {
+        // Keys are sorted, so all series of a metric are together
+        if (!name.equals(previous)) {
+            out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        }
+        return name;
+    }
+
+    private static String baseName(String key) {
+        int brace = key.indexOf('{');
+        return brace < 0 ? key : key.substring(0, brace);
+    }
+
+    private static String labels(String key) {
+        int brace = key.indexOf('{');
+        return brace < 0 ? "" : key.substring(brace + 1, key.length() - 1);
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.6f", value).replaceAll("\\.?0+$", "");
+    }
+
+}
@@ -0,0 +1,103 @@
+package edu.jhu.tool.metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically writes a {@link Metrics} registry to <code>metrics.json</code> and, in the
+ * Prometheus text format, <code>metrics.prom</code> (suitable for the node exporter's
+ * textfile collector). Files are replaced atomically, and written one last time on
+ * {@link #close()}.
+ */
+public class MetricsReporter implements Closeable {
+
+    public static final String JSON_FILE = "metrics.json";
+    public static final String PROMETHEUS_FILE = "metrics.prom";
+
+    private final Metrics metrics;
+    private final Path directory;
+    private final ScheduledExecutorService scheduler;
+
+    private Map<String, Long> previous = new HashMap<>();
+    private long previousTime = System.nanoTime();
+    private boolean failed;
+
+    /**
+     * @param metrics metrics to write
+     * @param directory directory for the metric files, created if missing
+     * @param interval time between writes in ms
+     */
+    public MetricsReporter(Metrics metrics, Path directory, long interval) {
+        this.metrics = metrics;
+        this.directory = directory;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics");
+            t.setDaemon(true);
+            return t;
+        });
+
+        long period = Math.max(100, interval);
+        scheduler.scheduleAtFixedRate(this::write, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Write the metric files now.
+     */
+    public synchronized void write() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-9, (now - previousTime) / 1e9);
+
+        Map<String, Long> current = metrics.snapshotCounters();
+        Map<String, Double> rates = new TreeMap<>();
+        for (Map.Entry<String, Long> counter : current.entrySet()) {
+            long before = previous.getOrDefault(counter.getKey(), 0L);
+            rates.put(counter.getKey(), (counter.getValue() - before) / seconds);
+        }
+
+        try {
+            Files.createDirectories(directory);
+            replace(directory.resolve(JSON_FILE), metrics.toJson(rates));
+            replace(directory.resolve(PROMETHEUS_FILE), metrics.toPrometheus());
+            failed = false;
+        } catch (IOException e) {
+            if (!failed) {
+                System.err.println("Error: Cannot write metrics. [" + directory.toString() + "] " + e.getMessage());
+            }
+            failed = true;
+        }
+
+        previous = current;
+        previousTime = now;
+    }
+
+    /**
+     * Stop the periodic writes and write the final values.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        write();
+    }
+
+    private void replace(Path file, String content) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName().toString() + ".tmp");
+        Files.write(tmp, content.getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+}
@@ -0,0 +1,210 @@
+package edu.jhu.tool.naming;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns page labels from the metadata spreadsheet into archive file names, such as
+ * <code>fol. 12r</code> to <code>Ha2.012r.tif</code>. The rules are read from the
+ * configuration once and compiled into hash lookups; naming a page is then a single scan
+ * over the label with no regular expressions or formatting.
+ *
+ * <p>Rules are applied in order:</p>
+ * <ol>
+ *     <li>a whole label may be replaced, e.g. <code>spine</code> to <code>binding spine</code></li>
+ *     <li>the label is split into words on whitespace, as by <code>split("\\s+")</code>: an
+ *     empty label, or one with whitespace before its first word, has an empty first word</li>
+ *     <li>skipped words are dropped: <code>fol.</code> ignoring case, <code>(blank)</code>
+ *     only as written</li>
+ *     <li>folio numbers like <code>12r</code> are padded to three digits</li>
+ *     <li>other words may be replaced, e.g. <code>endleaf</code> to <code>flyleaf</code></li>
+ * </ol>
+ * Words are joined with '.', after the book id and before the ".tif" extension.
+ */
+public class NamingRules {
+
+    private static final String EXTENSION = ".tif";
+    private static final int FOLIO_DIGITS = 3;
+
+    private final String bookId;
+    private final Map<String, String> labels;
+    private final Map<String, String> words;
+    private final Set<String> skip;
+    private final Set<String> skipExact;
+
+    /**
+     * @param bookId prefix of every name
+     * @param labels whole label replacements as <code>label=replacement</code> pairs
+     *               separated by ';'
+     * @param words word replacements, in the same form
+     * @param skip words to drop ignoring case, separated by ';'
+     * @param skipExact words to drop only when written exactly so, separated by ';'
+     * @throws IllegalArgumentException if a pair has no '='
+     */
+    public NamingRules(String bookId, String labels, String words, String skip, String skipExact) {
+        this.bookId = bookId;
+        this.labels = pairs(labels);
+        this.words = pairs(words);
+        this.skip = new HashSet<>();
+        for (String word : entries(skip)) {
+            this.skip.add(word.toLowerCase(Locale.ROOT));
+        }
+        this.skipExact = new HashSet<>(entries(skipExact));
+    }
+
+    /**
+     * @param label page label from the metadata
+     * @return archive file name of the page
+     */
+    public String name(String label) {
+        String replaced = labels.get(label);
+        if (replaced != null) {
+            label = replaced;
+        }
+
+        StringBuilder sb = new StringBuilder(bookId.length() + label.length() + 16).append(bookId);
+        int length = label.length();
+        if (length == 0 || (isSpace(label.charAt(0)) && !isBlank(label))) {
+            appendWord(sb, label, 0, 0);
+        }
+        int i = 0;
+        while (i < length) {
+            while (i < length && isSpace(label.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && !isSpace(label.charAt(i))) {
+                i++;
+            }
+            if (start < i) {
+                appendWord(sb, label, start, i);
+            }
+        }
+
+        return sb.append(EXTENSION).toString();
+    }
+
+    /**
+     * Find output names claimed more than once, so a book can be checked before anything is
+     * written.
+     *
+     * @param names output names of each source image, in metadata order
+     * @return sources of each name claimed more than once, in order of first use; empty if
+     *         all names are distinct
+     */
+    public static Map<String, List<String>> collisions(Map<String, List<String>> names) {
+        Map<String, List<String>> sources = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> image : names.entrySet()) {
+            for (String name : image.getValue()) {
+                sources.computeIfAbsent(name, k -> new ArrayList<>(2)).add(image.getKey());
+            }
+        }
+
+        Map<String, List<String>> collisions = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> entry : sources.entrySet()) {
+            if (entry.getValue().size() > 1) {
+                collisions.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+            }
+        }
+        return collisions;
+    }
+
+    private void appendWord(StringBuilder sb, String label, int start, int end) {
+        String word = label.substring(start, end);
+        if (skipExact.contains(word) || skip.contains(word.toLowerCase(Locale.ROOT))) {
+            return;
+        }
+
+        sb.append('.');
+        if (isFolio(label, start, end)) {
+            appendFolio(sb, label, start, end);
+            return;
+        }
+
+        String replaced = words.get(word);
+        sb.append(replaced != null ? replaced : word);
+    }
+
+    /**
+     * @return TRUE for one or more digits followed by 'r' or 'v'
+     */
+    private static boolean isFolio(String label, int start, int end) {
+        if (end - start < 2) {
+            return false;
+        }
+        char side = label.charAt(end - 1);
+        if (side != 'r' && side != 'v') {
+            return false;
+        }
+        for (int i = start; i < end - 1; i++) {
+            if (!isDigit(label.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void appendFolio(StringBuilder sb, String label, int start, int end) {
+        int digits = start;
+        while (digits < end - 2 && label.charAt(digits) == '0') {
+            digits++;
+        }
+        for (int pad = FOLIO_DIGITS - (end - 1 - digits); pad > 0; pad--) {
+            sb.append('0');
+        }
+        sb.append(label, digits, end);
+    }
+
+    private static boolean isBlank(String label) {
+        for (int i = 0; i < label.length(); i++) {
+            if (!isSpace(label.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Same characters as <code>\s</code> in a regular expression.
+     */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static Map<String, String> pairs(String value) {
+        Map<String, String> pairs = new HashMap<>();
+        for (String entry : entries(value)) {
+            int eq = entry.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Naming rule must be written label=replacement. [" + entry + "]");
+            }
+            pairs.put(entry.substring(0, eq).trim(), entry.substring(eq + 1).trim());
+        }
+        return pairs;
+    }
+
+    private static List<String> entries(String value) {
+        List<String> entries = new ArrayList<>();
+        if (value == null) {
+            return entries;
+        }
+        for (String entry : value.split(";")) {
+            if (!entry.trim().isEmpty()) {
+                entries.add(entry.trim());
+            }
+        }
+        return entries;
+    }
+
+}
@@ -0,0 +1,161 @@
+package edu.jhu.tool.pipeline;
+
+import edu.jhu.tool.metrics.Metrics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Fixed pool of workers shared by several independent streams of work, called lanes.
+ * Each lane has its own queue and workers serve the lanes with waiting tasks in turn, so a
+ * lane with thousands of tasks queued delays a lane with a few by at most one task per
+ * worker. Used to run several books over the same pipeline workers.
+ */
+public class FairPool {
+
+    private final String name;
+    private final List<Thread> workers = new ArrayList<>();
+
+    // Guarded by this
+    private final Map<String, ArrayDeque<Runnable>> lanes = new HashMap<>();
+    private final ArrayDeque<String> turns = new ArrayDeque<>();
+    private int queued;
+    private int active;
+    private boolean shutdown;
+
+    /**
+     * @param name pool name, used in thread names and metric labels
+     * @param threads number of workers
+     * @param metrics receives the queue depth and number of active tasks, may be null
+     */
+    public FairPool(String name, int threads, Metrics metrics) {
+        this.name = name;
+
+        for (int i = 1; i <= Math.max(1, threads); i++) {
+            Thread t = new Thread(this::work, name + "-" + i);
+            t.setDaemon(true);
+            workers.add(t);
+            t.start();
+        }
+
+        if (metrics != null) {
+            metrics.gauge("stage_queue_depth", this::getQueueDepth, "stage", name);
+            metrics.gauge("stage_active_tasks", this::getActiveCount, "stage", name);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getThreads() {
+        return workers.size();
+    }
+
+    /**
+     * Queue a task at the back of its lane. Never blocks.
+     *
+     * @param lane lane name
+     * @param task the work
+     * @throws RejectedExecutionException if the pool has been shut down
+     */
+    public synchronized void execute(String lane, Runnable task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Pool [" + name + "] is shut down.");
+        }
+
+        ArrayDeque<Runnable> queue = lanes.get(lane);
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+            lanes.put(lane, queue);
+            turns.add(lane);
+        }
+        queue.add(task);
+        queued++;
+        notify();
+    }
+
+    /**
+     * Let the workers finish the queued tasks, then stop them.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void shutdown() throws InterruptedException {
+        synchronized (this) {
+            shutdown = true;
+            notifyAll();
+        }
+        for (Thread t : workers) {
+            t.join();
+        }
+    }
+
+    /**
+     * @return number of tasks waiting for a worker in all lanes
+     */
+    public synchronized int getQueueDepth() {
+        return queued;
+    }
+
+    /**
+     * @param lane lane name
+     * @return number of tasks of the lane waiting for a worker
+     */
+    public synchronized int getQueueDepth(String lane) {
+        ArrayDeque<Runnable> queue = lanes.get(lane);
+        return queue == null ? 0 : queue.size();
+    }
+
+    public synchronized int getActiveCount() {
+        return active;
+    }
+
+    private void work() {
+        Runnable task;
+        while ((task = take()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.err.println("Error: Task failed in [" + Thread.currentThread().getName() + "] " + e.getMessage());
+            } finally {
+                synchronized (this) {
+                    active--;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return first task of the lane whose turn it is, null once shut down and drained
+     */
+    private synchronized Runnable take() {
+        while (turns.isEmpty()) {
+            if (shutdown) {
+                return null;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                return null;
+            }
+        }
+
+        String lane = turns.poll();
+        ArrayDeque<Runnable> queue = lanes.get(lane);
+        Runnable task = queue.poll();
+        if (queue.isEmpty()) {
+            lanes.remove(lane);
+        } else {
+            turns.add(lane);
+        }
+
+        queued--;
+        active++;
+        return task;
+    }
+
+}
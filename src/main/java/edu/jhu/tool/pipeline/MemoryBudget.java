@@ -0,0 +1,82 @@
+package edu.jhu.tool.pipeline;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Admits work against a number of bytes rather than a number of threads. Each task
+ * reserves its estimated working set before it starts and gives it back when done, so many
+ * small pages can be split at once while a giant one waits until it can have the memory
+ * to itself.
+ *
+ * <p>Tasks are admitted in the order they asked. A task waiting for a large reservation
+ * holds back the small ones behind it, otherwise a steady stream of small pages would
+ * keep it waiting for ever. A task larger than the whole budget is admitted once nothing
+ * else is running.</p>
+ */
+public class MemoryBudget {
+
+    private final long limit;
+    private long used;
+    private final Deque<Object> waiting = new ArrayDeque<>();
+
+    /**
+     * @param limit bytes that may be reserved at once
+     */
+    public MemoryBudget(long limit) {
+        this.limit = Math.max(1, limit);
+    }
+
+    /**
+     * Wait until the bytes can be reserved, then reserve them.
+     *
+     * @param bytes estimated working set of the task, 0 or less to reserve nothing
+     * @return the bytes reserved, to be passed to {@link #release(long)}
+     * @throws InterruptedException if interrupted while waiting; nothing is reserved
+     */
+    public synchronized long acquire(long bytes) throws InterruptedException {
+        if (bytes <= 0) {
+            return 0;
+        }
+
+        long reserve = Math.min(bytes, limit);
+        Object ticket = new Object();
+        waiting.addLast(ticket);
+        try {
+            while (waiting.peekFirst() != ticket || used + reserve > limit) {
+                wait();
+            }
+        } finally {
+            waiting.remove(ticket);
+            // The next in line may fit now
+            notifyAll();
+        }
+
+        used += reserve;
+        return reserve;
+    }
+
+    /**
+     * Give back bytes reserved by {@link #acquire(long)}.
+     */
+    public synchronized void release(long bytes) {
+        if (bytes <= 0) {
+            return;
+        }
+        used = Math.max(0, used - bytes);
+        notifyAll();
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public synchronized long getUsed() {
+        return used;
+    }
+
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+}
@@ -0,0 +1,209 @@
+package edu.jhu.tool.pipeline;
+
+import edu.jhu.tool.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One step of a processing pipeline: a fixed pool of workers fed by a bounded queue.
+ * When the queue is full, {@link #submit(String, Task)} blocks the caller, which is
+ * usually a worker of the previous stage. This keeps a fast upstream stage from piling up
+ * work (and memory) in front of a slow downstream one.
+ *
+ * <p>A stage may instead run its tasks in one lane of a {@link FairPool}, sharing the
+ * workers with the same stage of other pipelines. It then blocks the caller while it has
+ * more tasks queued or running than the pool has workers plus its capacity.</p>
+ */
+public class Stage {
+
+    /**
+     * Unit of work. Failures are recorded against the stage and do not stop the pipeline.
+     */
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final FairPool pool;
+    private final String lane;
+    private final Semaphore permits;
+    private int pending;
+    private boolean finished;
+    private final ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final Metrics metrics;
+
+    /**
+     * @param name stage name, used in thread names and reports
+     * @param threads number of workers
+     * @param capacity number of tasks that may wait for a worker
+     */
+    public Stage(String name, int threads, int capacity) {
+        this(name, threads, capacity, null);
+    }
+
+    /**
+     * @param name stage name, used in thread names, reports and metric labels
+     * @param threads number of workers
+     * @param capacity number of tasks that may wait for a worker
+     * @param metrics receives task latencies, failures and the queue depth, may be null
+     */
+    public Stage(String name, int threads, int capacity, Metrics metrics) {
+        this.name = name;
+        this.metrics = metrics;
+        this.pool = null;
+        this.lane = null;
+        this.permits = null;
+
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, capacity)),
+                r -> {
+                    Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                (r, pool) -> {
+                    // Backpressure: wait for room in the queue rather than rejecting
+                    if (pool.isShutdown()) {
+                        throw new RejectedExecutionException("Stage [" + name + "] is finished.");
+                    }
+                    try {
+                        pool.getQueue().put(r);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted waiting for stage [" + name + "].");
+                    }
+                });
+
+        if (metrics != null) {
+            metrics.gauge("stage_queue_depth", this::getQueueDepth, "stage", name);
+            metrics.gauge("stage_active_tasks", executor::getActiveCount, "stage", name);
+        }
+    }
+
+    /**
+     * @param pool shared workers, named after the stage
+     * @param lane lane of this pipeline in the pool
+     * @param capacity number of tasks that may wait for a worker
+     * @param metrics receives task latencies and failures, may be null. The pool reports
+     *                the queue depth.
+     */
+    public Stage(FairPool pool, String lane, int capacity, Metrics metrics) {
+        this.name = pool.getName();
+        this.metrics = metrics;
+        this.executor = null;
+        this.pool = pool;
+        this.lane = lane;
+        this.permits = new Semaphore(pool.getThreads() + Math.max(1, capacity));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Queue a task, blocking while the queue is full.
+     *
+     * @param item name of the item being processed, used in error messages
+     * @param task the work
+     */
+    public void submit(String item, Task task) {
+        Runnable runnable = () -> {
+            long start = System.nanoTime();
+            try {
+                task.run();
+                completed.incrementAndGet();
+                if (metrics != null) {
+                    metrics.histogram("stage_task_seconds", "stage", name).record(System.nanoTime() - start);
+                }
+            } catch (Exception e) {
+                errors.add("[" + name + "] " + item + ": " + e.getMessage());
+                if (metrics != null) {
+                    metrics.counter("stage_failures_total", "stage", name).increment();
+                }
+            }
+        };
+
+        if (executor != null) {
+            executor.execute(runnable);
+            return;
+        }
+
+        synchronized (this) {
+            if (finished) {
+                throw new RejectedExecutionException("Stage [" + name + "] is finished.");
+            }
+        }
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted waiting for stage [" + name + "].");
+        }
+        synchronized (this) {
+            pending++;
+        }
+        pool.execute(lane, () -> {
+            try {
+                runnable.run();
+            } finally {
+                permits.release();
+                synchronized (this) {
+                    if (--pending == 0) {
+                        notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Stop accepting tasks and wait for queued ones to complete. Stages must be finished
+     * in pipeline order so no upstream worker is left submitting to a finished stage.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void finish() throws InterruptedException {
+        if (executor != null) {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        synchronized (this) {
+            finished = true;
+            while (pending > 0) {
+                wait();
+            }
+        }
+    }
+
+    /**
+     * @return number of tasks waiting for a worker
+     */
+    public int getQueueDepth() {
+        return executor != null ? executor.getQueue().size() : pool.getQueueDepth(lane);
+    }
+
+    /**
+     * @return number of tasks that finished without an error
+     */
+    public int getCompleted() {
+        return completed.get();
+    }
+
+    public List<String> getErrors() {
+        return new ArrayList<>(errors);
+    }
+
+}
@@ -0,0 +1,72 @@
+package edu.jhu.tool.split;
+
+/**
+ * Where a spread is cut into its two pages: the recto is the first
+ * {@link #getRectoWidth()} columns and the verso runs from {@link #getVersoX()} to the right
+ * edge. The two overlap around the gutter so no text at the fold is lost.
+ */
+public class Cut {
+
+    private final int width;
+    private final int height;
+    private final int rectoWidth;
+    private final int versoX;
+
+    private Cut(int width, int height, int rectoWidth, int versoX) {
+        this.width = width;
+        this.height = height;
+        this.rectoWidth = rectoWidth;
+        this.versoX = versoX;
+    }
+
+    /**
+     * @param width width of the spread in pixels
+     * @param height height of the spread in pixels
+     * @param fraction portion of the width kept for each page
+     * @return each page takes the same share of the width from its own edge
+     */
+    public static Cut fixed(int width, int height, double fraction) {
+        int pageWidth = Math.max(1, Math.min(width, (int) Math.round(width * fraction)));
+        return new Cut(width, height, pageWidth, width - pageWidth);
+    }
+
+    /**
+     * @param width width of the spread in pixels
+     * @param height height of the spread in pixels
+     * @param gutter column of the fold
+     * @param margin portion of the width kept past the fold on each page
+     * @return pages that meet at the gutter, each extended by the margin
+     */
+    public static Cut gutter(int width, int height, int gutter, double margin) {
+        int overlap = (int) Math.round(width * margin);
+        int rectoWidth = Math.max(1, Math.min(width, gutter + overlap));
+        int versoX = Math.max(0, Math.min(width - 1, gutter - overlap));
+        return new Cut(width, height, rectoWidth, versoX);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getRectoWidth() {
+        return rectoWidth;
+    }
+
+    public int getVersoX() {
+        return versoX;
+    }
+
+    public int getVersoWidth() {
+        return width - versoX;
+    }
+
+    @Override
+    public String toString() {
+        return "[0, " + rectoWidth + ") [" + versoX + ", " + width + ")";
+    }
+
+}
@@ -0,0 +1,252 @@
+package edu.jhu.tool.split;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds the fold of a spread from its content rather than assuming it is in the middle.
+ * Only a band around the centre is read, subsampled to a few hundred columns, so no full
+ * resolution raster is ever decoded. The mean brightness of each column of the band gives a
+ * profile, and the shadow of the binding shows as its darkest valley. A spread with no
+ * clear valley, such as a flat foldout, is cut the fixed way instead.
+ *
+ * <p>The gutter found for each source is recorded in <code>.gutters</code> in the split
+ * directory, keyed by the hash of the source, and reused by later runs. Re-runs therefore
+ * cut exactly where the first run did, without reading the images again.</p>
+ */
+public class GutterFinder {
+
+    public static final String FILE_NAME = ".gutters";
+
+    private static final String HEADER = "# source sha256\twidth\theight\tgutter";
+
+    /** The fold is searched for this far either side of the centre, as a share of the width. */
+    private static final double WINDOW = 0.15;
+    /** Rows this far from the top and bottom are left out, they tend to show the scanner bed. */
+    private static final double EDGE = 0.1;
+    /** Columns of the profile, before smoothing. */
+    private static final int SAMPLES = 256;
+    private static final int SMOOTHING = 2;
+    /** How much darker than the median of the profile the valley must be. */
+    private static final double MIN_CONTRAST = 0.1;
+
+    private static class Record {
+        final int width;
+        final int height;
+        final int gutter;
+
+        Record(int width, int height, int gutter) {
+            this.width = width;
+            this.height = height;
+            this.gutter = gutter;
+        }
+    }
+
+    /** Null if the gutters are not kept on disk. */
+    private final Path directory;
+    private final double margin;
+    private final Map<String, Record> records = new ConcurrentHashMap<>();
+
+    private GutterFinder(Path directory, double margin) {
+        this.directory = directory;
+        this.margin = margin;
+    }
+
+    /**
+     * Load the gutters recorded in a directory. A missing or unreadable file gives an empty
+     * record, so every gutter is found again.
+     *
+     * @param directory split directory, null to record gutters for this run only
+     * @param margin portion of the width kept past the fold on each page
+     * @return the finder
+     */
+    public static GutterFinder load(Path directory, double margin) {
+        GutterFinder finder = new GutterFinder(directory, margin);
+        if (directory == null) {
+            return finder;
+        }
+
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.isRegularFile(file)) {
+            return finder;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] parts = line.split("\t");
+                if (parts.length != 4) {
+                    continue;
+                }
+
+                try {
+                    finder.records.put(parts[0], new Record(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]),
+                            Integer.parseInt(parts[3])));
+                } catch (NumberFormatException e) {
+                    // Skip damaged lines, the gutter will simply be found again
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error: Cannot read gutters, finding them again. [" + file.toString() + "]");
+            finder.records.clear();
+        }
+        return finder;
+    }
+
+    /**
+     * @param image source TIFF
+     * @param key hash of the source, under which the gutter is recorded
+     * @return where to cut the spread, null if it has no clear gutter and should be cut the
+     *         fixed way
+     * @throws IOException if the image cannot be read
+     */
+    public Cut find(Path image, String key) throws IOException {
+        Record record = records.get(key);
+        if (record == null) {
+            record = detect(image);
+            records.put(key, record);
+        }
+        return record.gutter < 0 ? null : Cut.gutter(record.width, record.height, record.gutter, margin);
+    }
+
+    /**
+     * Write the recorded gutters, replacing the file atomically where the file system allows.
+     */
+    public void save() throws IOException {
+        if (directory == null) {
+            return;
+        }
+
+        Path file = directory.resolve(FILE_NAME);
+        Path tmp = directory.resolve(FILE_NAME + ".tmp");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (Map.Entry<String, Record> entry : new TreeMap<>(records).entrySet()) {
+                Record record = entry.getValue();
+                writer.write(entry.getKey() + '\t' + record.width + '\t' + record.height + '\t' + record.gutter);
+                writer.newLine();
+            }
+        }
+
+        try {
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static Record detect(Path image) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("tiff");
+        if (!readers.hasNext()) {
+            throw new IOException("No TIFF reader available.");
+        }
+
+        ImageReader reader = readers.next();
+        try (ImageInputStream in = ImageIO.createImageInputStream(image.toFile())) {
+            if (in == null) {
+                throw new IOException("Cannot open image. [" + image.toString() + "]");
+            }
+            reader.setInput(in, true, true);
+
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            int x = (int) (width * (0.5 - WINDOW));
+            int y = (int) (height * EDGE);
+            int bandWidth = Math.max(1, (int) (width * 2 * WINDOW));
+            int bandHeight = Math.max(1, height - 2 * y);
+            int step = Math.max(1, bandWidth / SAMPLES);
+
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(new Rectangle(x, y, bandWidth, bandHeight));
+            param.setSourceSubsampling(step, step, 0, 0);
+            Raster band = reader.read(0, param).getRaster();
+
+            int valley = valley(profile(band));
+            int gutter = valley < 0 ? -1 : x + valley * step + step / 2;
+            return new Record(width, height, gutter);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * @return mean brightness of each column of the raster, smoothed
+     */
+    static double[] profile(Raster raster) {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        int bands = raster.getNumBands();
+
+        long[] sums = new long[width];
+        int[] row = new int[width * bands];
+        for (int y = 0; y < height; y++) {
+            raster.getPixels(0, y, width, 1, row);
+            for (int x = 0, i = 0; x < width; x++, i += bands) {
+                // Luma for colour, the first band for grey
+                sums[x] += bands >= 3 ? (299 * row[i] + 587 * row[i + 1] + 114 * row[i + 2]) / 1000 : row[i];
+            }
+        }
+
+        double[] profile = new double[width];
+        for (int x = 0; x < width; x++) {
+            long sum = 0;
+            int count = 0;
+            for (int k = Math.max(0, x - SMOOTHING); k <= Math.min(width - 1, x + SMOOTHING); k++) {
+                sum += sums[k];
+                count++;
+            }
+            profile[x] = (double) sum / count / height;
+        }
+        return profile;
+    }
+
+    /**
+     * @return column of the darkest valley of the profile, or -1 if it is not clearly darker
+     *         than the rest or lies at the edge of the search window
+     */
+    static int valley(double[] profile) {
+        if (profile.length < 3) {
+            return -1;
+        }
+
+        int min = 0;
+        for (int x = 1; x < profile.length; x++) {
+            if (profile[x] < profile[min]) {
+                min = x;
+            }
+        }
+
+        double[] sorted = profile.clone();
+        Arrays.sort(sorted);
+        double median = sorted[sorted.length / 2];
+
+        if (min == 0 || min == profile.length - 1 || median - profile[min] < MIN_CONTRAST * median) {
+            return -1;
+        }
+        return min;
+    }
+
+}
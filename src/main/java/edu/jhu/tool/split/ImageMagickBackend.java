@@ -0,0 +1,219 @@
+package edu.jhu.tool.split;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Splits spreads with ImageMagick, several per <code>convert</code> process. Each spread is
+ * read once and both halves are cropped from it:
+ *
+ * <pre>
+ * convert a.tif ( +clone -gravity West -crop 55%x100%+0+0 +repage -write a-recto.tif +delete )
+ *         -gravity East -crop 55%x100%+0+0 +repage -write a-verso.tif +delete
+ *         b.tif ... b-verso.tif
+ * </pre>
+ *
+ * A spread with a {@link Cut} of its own is cropped at those columns instead.
+ *
+ * Images are dropped once written, so a process holds one spread at a time however long
+ * the batch. Existing outputs are deleted before the process starts rather than written
+ * over. Arguments are passed as an array, never through a shell, so paths may contain
+ * spaces. The output of convert is passed on to stderr as it comes, and a process that
+ * runs past its timeout is killed. If a batch fails, its spreads are retried one per
+ * process so that a bad image only fails itself.
+ */
+public class ImageMagickBackend implements SplitBackend {
+
+    public static final String NAME = "imagemagick";
+
+    private final String program;
+    private final String geometry;
+    private final int batchSize;
+    private final long timeout;
+    private final AtomicLong processes = new AtomicLong();
+
+    /**
+     * @param program convert executable, found on the PATH if not absolute
+     * @param fraction portion of the spread width kept for each half
+     * @param batchSize largest number of spreads per process
+     * @param timeout time allowed per spread in ms; a process gets this much per spread
+     */
+    public ImageMagickBackend(String program, double fraction, int batchSize, long timeout) {
+        this.program = program;
+        this.geometry = BigDecimal.valueOf(fraction).movePointRight(2).stripTrailingZeros().toPlainString()
+                + "%x100%+0+0";
+        this.batchSize = Math.max(1, batchSize);
+        this.timeout = Math.max(1, timeout);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return number of processes started so far
+     */
+    public long getProcesses() {
+        return processes.get();
+    }
+
+    @Override
+    public List<Spread> split(List<Spread> spreads) {
+        if (spreads.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Spread> failed = new ArrayList<>();
+        for (int from = 0; from < spreads.size(); from += batchSize) {
+            List<Spread> batch = spreads.subList(from, Math.min(spreads.size(), from + batchSize));
+            if (run(batch)) {
+                continue;
+            }
+
+            if (batch.size() == 1) {
+                failed.add(batch.get(0));
+                deleteOutputs(batch.get(0));
+                continue;
+            }
+            System.err.println("Retrying the " + batch.size() + " images of the failed batch one at a time.");
+            for (Spread spread : batch) {
+                if (!run(Collections.singletonList(spread))) {
+                    failed.add(spread);
+                    deleteOutputs(spread);
+                }
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * @return arguments of one convert process that splits all of the spreads
+     */
+    List<String> command(List<Spread> spreads) {
+        List<String> command = new ArrayList<>();
+        command.add(program);
+        for (int i = 0; i < spreads.size(); i++) {
+            Spread spread = spreads.get(i);
+            Cut cut = spread.getCut();
+            String recto = geometry;
+            String verso = geometry;
+            String rectoGravity = "West";
+            String versoGravity = "East";
+            if (cut != null) {
+                recto = cut.getRectoWidth() + "x" + cut.getHeight() + "+0+0";
+                verso = cut.getVersoWidth() + "x" + cut.getHeight() + "+" + cut.getVersoX() + "+0";
+                rectoGravity = "NorthWest";
+                versoGravity = "NorthWest";
+            }
+
+            command.add(spread.getOriginal().toString());
+            Collections.addAll(command, "(", "+clone", "-gravity", rectoGravity, "-crop", recto, "+repage",
+                    "-write", spread.getRecto().toString(), "+delete", ")");
+            Collections.addAll(command, "-gravity", versoGravity, "-crop", verso, "+repage");
+            if (i < spreads.size() - 1) {
+                Collections.addAll(command, "-write", spread.getVerso().toString(), "+delete");
+            } else {
+                // The last image is the output of the command itself
+                command.add(spread.getVerso().toString());
+            }
+        }
+        return command;
+    }
+
+    /**
+     * @return TRUE if the process succeeded and wrote every output
+     */
+    private boolean run(List<Spread> spreads) {
+        List<String> command = command(spreads);
+        System.out.println("Splitting " + spreads.size() + " image(s) with " + program + ". " + spreads);
+
+        // convert truncates and writes over an existing output, and an output may be a hard
+        // link to another file, such as the source of a linked copy
+        for (Spread spread : spreads) {
+            try {
+                Files.deleteIfExists(spread.getRecto());
+                Files.deleteIfExists(spread.getVerso());
+            } catch (IOException e) {
+                System.err.println("Error: Cannot replace the halves of [" + spread + "]. " + e.getMessage());
+                return false;
+            }
+        }
+
+        Process process;
+        try {
+            process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        } catch (IOException e) {
+            System.err.println("Error: Cannot run " + program + ". " + e.getMessage());
+            return false;
+        }
+        processes.incrementAndGet();
+
+        Thread output = new Thread(() -> {
+            try (BufferedReader in = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), Charset.defaultCharset()))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    System.err.println("  " + program + ": " + line);
+                }
+            } catch (IOException e) {
+                // Closed when the process is killed
+            }
+        }, program + "-output");
+        output.setDaemon(true);
+        output.start();
+
+        try {
+            if (!process.waitFor(timeout * spreads.size(), TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly().waitFor();
+                System.err.println("Error: " + program + " timed out and was killed. " + spreads);
+                return false;
+            }
+            output.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        if (process.exitValue() != 0) {
+            System.err.println("Error: " + program + " failed with exit status " + process.exitValue() + ". " + spreads);
+            return false;
+        }
+        for (Spread spread : spreads) {
+            if (!Files.isRegularFile(spread.getRecto()) || !Files.isRegularFile(spread.getVerso())) {
+                System.err.println("Error: " + program + " did not write both halves. [" + spread + "]");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Remove whatever a failed process left behind, so no half-written page is mistaken for
+     * a finished one.
+     */
+    private void deleteOutputs(Spread spread) {
+        try {
+            Files.deleteIfExists(spread.getRecto());
+            Files.deleteIfExists(spread.getVerso());
+        } catch (IOException e) {
+            System.err.println("Error: Cannot delete a partial output. [" + spread + "] " + e.getMessage());
+        }
+    }
+
+}
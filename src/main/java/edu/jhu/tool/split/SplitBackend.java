@@ -0,0 +1,31 @@
+package edu.jhu.tool.split;
+
+import java.util.List;
+
+/**
+ * Splits spreads outside of the in-process engines, typically with an external program
+ * that can read formats the JVM cannot. A backend may handle several spreads per call,
+ * which is cheaper where each call starts a process.
+ */
+public interface SplitBackend {
+
+    /**
+     * @return short name, used in logs and metric labels
+     */
+    String getName();
+
+    /**
+     * @return number of spreads worth passing to {@link #split(List)} at once
+     */
+    int getBatchSize();
+
+    /**
+     * Write both halves of every spread. A spread that fails is reported and does not stop
+     * the others.
+     *
+     * @param spreads spreads to split
+     * @return the spreads that could not be split, empty if all were written
+     */
+    List<Spread> split(List<Spread> spreads);
+
+}
@@ -0,0 +1,54 @@
+package edu.jhu.tool.split;
+
+import java.nio.file.Path;
+
+/**
+ * A two page source image and the files its west (recto) and east (verso) halves go to,
+ * with where to cut it if that is not the fixed share of the width.
+ */
+public class Spread {
+
+    private final Path original;
+    private final Path recto;
+    private final Path verso;
+    private final Cut cut;
+
+    public Spread(Path original, Path recto, Path verso) {
+        this(original, recto, verso, null);
+    }
+
+    /**
+     * @param cut where to cut the spread, null for the fixed share of the width
+     */
+    public Spread(Path original, Path recto, Path verso, Cut cut) {
+        this.original = original;
+        this.recto = recto;
+        this.verso = verso;
+        this.cut = cut;
+    }
+
+    public Path getOriginal() {
+        return original;
+    }
+
+    public Path getRecto() {
+        return recto;
+    }
+
+    public Path getVerso() {
+        return verso;
+    }
+
+    /**
+     * @return where to cut the spread, null for the fixed share of the width
+     */
+    public Cut getCut() {
+        return cut;
+    }
+
+    @Override
+    public String toString() {
+        return original.toString();
+    }
+
+}
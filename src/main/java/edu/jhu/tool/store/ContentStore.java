@@ -0,0 +1,113 @@
+package edu.jhu.tool.store;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Content-addressed store of files, kept in a <code>.store</code> folder of the directory
+ * it serves. Each object is named by a key, the SHA-256 of a download or the recipe of a
+ * split page, under a two character fan-out folder: <code>.store/ab/abcdef...</code>.
+ *
+ * <p>Named files are hard links to their object, so a TIFF that appears under several
+ * names, or in several books sharing a directory, is stored once. As with any hard link,
+ * writing into a named file changes every file linked to it. Callers must replace named
+ * files rather than write into them.</p>
+ *
+ * <p>Objects are never removed here. One whose link count is down to one is no longer used
+ * by any named file and may be deleted.</p>
+ */
+public class ContentStore {
+
+    public static final String DIRECTORY = ".store";
+
+    private static final String LINK_SUFFIX = ".link";
+
+    private final Path root;
+
+    /**
+     * @param directory directory whose files are stored, the store is kept inside of it
+     */
+    public ContentStore(Path directory) {
+        this.root = directory.resolve(DIRECTORY);
+    }
+
+    /**
+     * @return path of the object with this key, which may not exist
+     */
+    public Path path(String key) {
+        return root.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    public boolean contains(String key) {
+        return Files.isRegularFile(path(key));
+    }
+
+    /**
+     * Store a finished file. If the store already has an object with the key, the file is
+     * replaced by a link to it; otherwise the file becomes the object.
+     *
+     * @param file named file
+     * @param key content hash or recipe of the file
+     * @return bytes saved, the size of the file if it was a duplicate, otherwise 0
+     * @throws IOException if the file system cannot link the file
+     */
+    public long put(Path file, String key) throws IOException {
+        Path object = path(key);
+        while (true) {
+            if (Files.isRegularFile(object)) {
+                if (Files.isSameFile(object, file)) {
+                    return 0;
+                }
+                long size = Files.size(file);
+                replaceWithLink(object, file);
+                return size;
+            }
+
+            Files.createDirectories(object.getParent());
+            try {
+                Files.createLink(object, file);
+                return 0;
+            } catch (FileAlreadyExistsException e) {
+                // Stored by another thread in the meantime, link to that one
+            }
+        }
+    }
+
+    /**
+     * Make a named file from the store.
+     *
+     * @param key key of the object
+     * @param target named file, replaced if it exists
+     * @return FALSE if the store has no object with the key
+     * @throws IOException if the file system cannot link the file
+     */
+    public boolean get(String key, Path target) throws IOException {
+        Path object = path(key);
+        if (!Files.isRegularFile(object)) {
+            return false;
+        }
+        if (!Files.exists(target) || !Files.isSameFile(object, target)) {
+            replaceWithLink(object, target);
+        }
+        return true;
+    }
+
+    /**
+     * Point the target at the object, so the target never exists half made.
+     */
+    private void replaceWithLink(Path object, Path target) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName().toString() + LINK_SUFFIX);
+        Files.deleteIfExists(tmp);
+        Files.createLink(tmp, object);
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+}
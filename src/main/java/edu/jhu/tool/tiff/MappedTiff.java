@@ -0,0 +1,345 @@
+package edu.jhu.tool.tiff;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A memory-mapped TIFF file. Uncompressed, strip-organised, chunky images can be cropped
+ * losslessly by copying row slices straight from the mapping, so pixel data is never
+ * decoded or copied onto the heap.
+ */
+public class MappedTiff implements Closeable {
+
+    /** Target size of each strip written to cropped output. */
+    private static final int OUTPUT_STRIP_BYTES = 256 * 1024;
+
+    /** Size of the direct buffer used to batch row slices before each write. */
+    private static final int COPY_BUFFER_BYTES = 1024 * 1024;
+
+    /**
+     * Tags rebuilt for the cropped image, or that point at data which is not carried over.
+     */
+    private static final Set<Integer> DROPPED_TAGS = new HashSet<>(Arrays.asList(
+            TiffDirectory.TAG_IMAGE_WIDTH,
+            TiffDirectory.TAG_IMAGE_LENGTH,
+            TiffDirectory.TAG_STRIP_OFFSETS,
+            TiffDirectory.TAG_ROWS_PER_STRIP,
+            TiffDirectory.TAG_STRIP_BYTE_COUNTS,
+            TiffDirectory.TAG_FREE_OFFSETS,
+            TiffDirectory.TAG_FREE_BYTE_COUNTS,
+            TiffDirectory.TAG_TILE_WIDTH,
+            TiffDirectory.TAG_TILE_LENGTH,
+            TiffDirectory.TAG_TILE_OFFSETS,
+            TiffDirectory.TAG_TILE_BYTE_COUNTS,
+            TiffDirectory.TAG_SUB_IFDS,
+            TiffDirectory.TAG_JPEG_TABLES,
+            TiffDirectory.TAG_EXIF_IFD,
+            TiffDirectory.TAG_GPS_IFD,
+            TiffDirectory.TAG_INTEROPERABILITY_IFD
+    ));
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final TiffDirectory directory;
+
+    private MappedTiff(Path path, FileChannel channel, MappedByteBuffer buffer, TiffDirectory directory) {
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.directory = directory;
+    }
+
+    /**
+     * Map a TIFF file read-only and parse its first IFD.
+     *
+     * @param path TIFF file
+     * @return the mapped file
+     * @throws IOException if the file cannot be mapped or is not a valid TIFF
+     */
+    public static MappedTiff open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new TiffFormatException("File too large to map. [" + path.toString() + "]");
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new MappedTiff(path, channel, buffer, TiffDirectory.readFirst(buffer));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public TiffDirectory getDirectory() {
+        return directory;
+    }
+
+    public int getWidth() {
+        return directory.getWidth();
+    }
+
+    public int getHeight() {
+        return directory.getHeight();
+    }
+
+    /**
+     * @return TRUE if {@link #crop(int, int, Path)} can copy rows of this image without decoding
+     */
+    public boolean isCroppable() {
+        if (directory.getCompression() != TiffDirectory.COMPRESSION_NONE || directory.isTiled()
+                || directory.isBigTiff()) {
+            // Crops are written as classic TIFF, which cannot hold BigTIFF's 64 bit values
+            return false;
+        }
+        if (directory.getSamplesPerPixel() > 1 && directory.getPlanarConfiguration() != 1) {
+            return false;
+        }
+        if (directory.getBitsPerPixel() % 8 != 0 || getWidth() <= 0 || getHeight() <= 0) {
+            return false;
+        }
+
+        long[] offsets = directory.getLongs(TiffDirectory.TAG_STRIP_OFFSETS);
+        long[] counts = directory.getLongs(TiffDirectory.TAG_STRIP_BYTE_COUNTS);
+        int rowsPerStrip = directory.getRowsPerStrip();
+        if (rowsPerStrip <= 0 || offsets.length == 0 || offsets.length != counts.length) {
+            return false;
+        }
+
+        long rowBytes = (long) getWidth() * directory.getBitsPerPixel() / 8;
+        int strips = (getHeight() + rowsPerStrip - 1) / rowsPerStrip;
+        if (offsets.length < strips) {
+            return false;
+        }
+
+        for (int s = 0; s < strips; s++) {
+            long rows = Math.min(rowsPerStrip, getHeight() - (long) s * rowsPerStrip);
+            long needed = rows * rowBytes;
+            if (counts[s] < needed || offsets[s] + needed > buffer.limit()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Write a full-height vertical slice of this image to a new uncompressed TIFF. All
+     * descriptive tags (photometric interpretation, resolution, ICC profile, ...) are
+     * copied as-is; only the geometry and strip layout are rebuilt.
+     *
+     * @param x first column of the slice
+     * @param width number of columns
+     * @param output destination file, replaced if it exists
+     * @throws IOException if the image is not croppable or the output cannot be written
+     */
+    public void crop(int x, int width, Path output) throws IOException {
+        if (!isCroppable()) {
+            throw new TiffFormatException("Image layout cannot be cropped in place. [" + path.toString() + "]");
+        }
+        if (x < 0 || width <= 0 || x + width > getWidth()) {
+            throw new IllegalArgumentException("Crop [" + x + "+" + width + "] outside of image width ["
+                    + getWidth() + "]");
+        }
+
+        int bytesPerPixel = directory.getBitsPerPixel() / 8;
+        int height = getHeight();
+        int srcRowBytes = getWidth() * bytesPerPixel;
+        int outRowBytes = width * bytesPerPixel;
+        int xOffset = x * bytesPerPixel;
+
+        int srcRowsPerStrip = directory.getRowsPerStrip();
+        long[] srcOffsets = directory.getLongs(TiffDirectory.TAG_STRIP_OFFSETS);
+
+        int outRowsPerStrip = Math.max(1, Math.min(height, OUTPUT_STRIP_BYTES / outRowBytes));
+        int outStrips = (height + outRowsPerStrip - 1) / outRowsPerStrip;
+        long dataLength = (long) outRowBytes * height;
+        long ifdOffset = 8 + dataLength + (dataLength & 1);
+        if (ifdOffset > 0xFFFFFFFFL - 0x100000L) {
+            throw new TiffFormatException("Cropped image too large for classic TIFF. [" + path.toString() + "]");
+        }
+
+        ByteBuffer ifd = buildDirectory(ifdOffset, width, height, outRowsPerStrip, outStrips, outRowBytes);
+
+        ByteBuffer header = ByteBuffer.allocate(8).order(directory.getByteOrder());
+        header.put(directory.getByteOrder() == ByteOrder.LITTLE_ENDIAN ? (byte) 'I' : (byte) 'M');
+        header.put(header.get(0));
+        header.putShort((short) 42);
+        header.putInt((int) ifdOffset);
+        header.flip();
+
+        // Written beside the output and moved over it: the output may be a hard link to
+        // another file, such as the source of a linked copy, which must not be written through
+        Path tmp = output.resolveSibling("." + output.getFileName().toString() + ".tmp");
+        Files.deleteIfExists(tmp);
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            writeFully(out, header);
+
+            ByteBuffer staging = ByteBuffer.allocateDirect(Math.max(COPY_BUFFER_BYTES, outRowBytes));
+            ByteBuffer source = buffer.duplicate();
+            for (int row = 0; row < height; row++) {
+                long offset = srcOffsets[row / srcRowsPerStrip]
+                        + (long) (row % srcRowsPerStrip) * srcRowBytes + xOffset;
+
+                source.limit((int) offset + outRowBytes).position((int) offset);
+                if (staging.remaining() < outRowBytes) {
+                    staging.flip();
+                    writeFully(out, staging);
+                    staging.clear();
+                }
+                staging.put(source);
+                source.limit(source.capacity());
+            }
+
+            if ((dataLength & 1) != 0) {
+                staging.put((byte) 0);
+            }
+            staging.flip();
+            writeFully(out, staging);
+
+            writeFully(out, ifd);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+
+        try {
+            Files.move(tmp, output, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private ByteBuffer buildDirectory(long ifdOffset, int width, int height, int rowsPerStrip,
+                                      int strips, int rowBytes) {
+        ByteOrder order = directory.getByteOrder();
+        List<OutputEntry> entries = new ArrayList<>();
+
+        for (TiffDirectory.Entry entry : directory.getEntries()) {
+            if (DROPPED_TAGS.contains(entry.getTag()) || entry.getType() == TiffDirectory.TYPE_IFD) {
+                continue;
+            }
+            // Source and output share a byte order, so value bytes are copied verbatim
+            entries.add(new OutputEntry(entry.getTag(), entry.getType(), entry.getCount(), entry.getValue()));
+        }
+
+        ByteBuffer offsets = ByteBuffer.allocate(4 * strips).order(order);
+        ByteBuffer counts = ByteBuffer.allocate(4 * strips).order(order);
+        long stripOffset = 8;
+        for (int s = 0; s < strips; s++) {
+            int rows = Math.min(rowsPerStrip, height - s * rowsPerStrip);
+            offsets.putInt((int) stripOffset);
+            counts.putInt(rows * rowBytes);
+            stripOffset += (long) rows * rowBytes;
+        }
+        offsets.flip();
+        counts.flip();
+
+        entries.add(OutputEntry.ofLong(TiffDirectory.TAG_IMAGE_WIDTH, width, order));
+        entries.add(OutputEntry.ofLong(TiffDirectory.TAG_IMAGE_LENGTH, height, order));
+        entries.add(OutputEntry.ofLong(TiffDirectory.TAG_ROWS_PER_STRIP, rowsPerStrip, order));
+        entries.add(new OutputEntry(TiffDirectory.TAG_STRIP_OFFSETS, TiffDirectory.TYPE_LONG, strips, offsets));
+        entries.add(new OutputEntry(TiffDirectory.TAG_STRIP_BYTE_COUNTS, TiffDirectory.TYPE_LONG, strips, counts));
+
+        // Entries in an IFD must be sorted by tag
+        entries.sort((a, b) -> Integer.compare(a.tag, b.tag));
+
+        int directoryLength = 2 + 12 * entries.size() + 4;
+        int valuesLength = 0;
+        for (OutputEntry entry : entries) {
+            int length = entry.value.remaining();
+            if (length > 4) {
+                valuesLength += length + (length & 1);
+            }
+        }
+
+        ByteBuffer ifd = ByteBuffer.allocate(directoryLength + valuesLength).order(order);
+        int valuesPosition = directoryLength;
+
+        ifd.putShort((short) entries.size());
+        for (OutputEntry entry : entries) {
+            ifd.putShort((short) entry.tag);
+            ifd.putShort((short) entry.type);
+            ifd.putInt((int) entry.count);
+
+            int length = entry.value.remaining();
+            if (length <= 4) {
+                int start = ifd.position();
+                ifd.put(entry.value.duplicate());
+                ifd.position(start + 4);
+            } else {
+                ifd.putInt((int) (ifdOffset + valuesPosition));
+                ByteBuffer values = ifd.duplicate();
+                values.position(valuesPosition);
+                values.put(entry.value.duplicate());
+                valuesPosition += length + (length & 1);
+            }
+        }
+        ifd.putInt(0);
+
+        ifd.clear();
+        return ifd;
+    }
+
+    /**
+     * IFD entry to be written, with its value bytes already in the output byte order.
+     */
+    private static class OutputEntry {
+        final int tag;
+        final int type;
+        final long count;
+        final ByteBuffer value;
+
+        OutputEntry(int tag, int type, long count, ByteBuffer value) {
+            this.tag = tag;
+            this.type = type;
+            this.count = count;
+            this.value = value;
+        }
+
+        static OutputEntry ofLong(int tag, long value, ByteOrder order) {
+            ByteBuffer buffer = ByteBuffer.allocate(4).order(order);
+            buffer.putInt(0, (int) value);
+            return new OutputEntry(tag, TiffDirectory.TYPE_LONG, 1, buffer);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Releases the channel. The mapping itself is released by the garbage collector.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
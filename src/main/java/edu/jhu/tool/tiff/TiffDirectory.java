@@ -0,0 +1,452 @@
+package edu.jhu.tool.tiff;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A single Image File Directory (IFD) read directly from a TIFF file, either a byte buffer
+ * holding the whole file or a channel read at the offsets the IFDs point to. Classic TIFF
+ * and BigTIFF are both read, so files over 4 GB are handled. Only the directory structure
+ * is parsed; pixel data is never touched.
+ */
+public class TiffDirectory {
+
+    public static final int TAG_IMAGE_WIDTH = 256;
+    public static final int TAG_IMAGE_LENGTH = 257;
+    public static final int TAG_BITS_PER_SAMPLE = 258;
+    public static final int TAG_COMPRESSION = 259;
+    public static final int TAG_STRIP_OFFSETS = 273;
+    public static final int TAG_SAMPLES_PER_PIXEL = 277;
+    public static final int TAG_ROWS_PER_STRIP = 278;
+    public static final int TAG_STRIP_BYTE_COUNTS = 279;
+    public static final int TAG_PLANAR_CONFIGURATION = 284;
+    public static final int TAG_FREE_OFFSETS = 288;
+    public static final int TAG_FREE_BYTE_COUNTS = 289;
+    public static final int TAG_TILE_WIDTH = 322;
+    public static final int TAG_TILE_LENGTH = 323;
+    public static final int TAG_TILE_OFFSETS = 324;
+    public static final int TAG_TILE_BYTE_COUNTS = 325;
+    public static final int TAG_SUB_IFDS = 330;
+    public static final int TAG_JPEG_TABLES = 347;
+    public static final int TAG_EXIF_IFD = 34665;
+    public static final int TAG_GPS_IFD = 34853;
+    public static final int TAG_INTEROPERABILITY_IFD = 40965;
+
+    public static final int COMPRESSION_NONE = 1;
+
+    public static final int TYPE_SHORT = 3;
+    public static final int TYPE_LONG = 4;
+    public static final int TYPE_IFD = 13;
+    public static final int TYPE_LONG8 = 16;
+    public static final int TYPE_IFD8 = 18;
+
+    private static final int[] TYPE_SIZES = {0, 1, 1, 2, 4, 8, 1, 1, 2, 4, 8, 4, 8, 4, 0, 0, 8, 8, 8};
+
+    /** Values read from a channel are copied onto the heap; larger ones are taken as damage. */
+    private static final int MAX_VALUE_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * Raw directory entry with its value bytes, in the byte order of the file.
+     */
+    public static class Entry {
+        private final int tag;
+        private final int type;
+        private final long count;
+        private final long valueOffset;
+        private final ByteBuffer value;
+
+        Entry(int tag, int type, long count, long valueOffset, ByteBuffer value) {
+            this.tag = tag;
+            this.type = type;
+            this.count = count;
+            this.valueOffset = valueOffset;
+            this.value = value;
+        }
+
+        public int getTag() {
+            return tag;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return absolute offset of the value in the file
+         */
+        public long getValueOffset() {
+            return valueOffset;
+        }
+
+        /**
+         * @return size in bytes of this entry's value
+         */
+        public long getValueLength() {
+            return count * typeSize(type);
+        }
+
+        /**
+         * @return the value bytes, positioned at the start
+         */
+        public ByteBuffer getValue() {
+            return value.duplicate().order(value.order());
+        }
+    }
+
+    /**
+     * The bytes of a TIFF file, read at any offset up to its size.
+     */
+    private abstract static class Source {
+        ByteOrder order = ByteOrder.BIG_ENDIAN;
+        boolean big;
+
+        abstract long size();
+
+        /**
+         * @return length bytes at offset, which the caller has checked lie inside the file
+         */
+        abstract ByteBuffer read(long offset, int length) throws IOException;
+    }
+
+    private static class BufferSource extends Source {
+        private final ByteBuffer buffer;
+
+        BufferSource(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        long size() {
+            return buffer.limit();
+        }
+
+        @Override
+        ByteBuffer read(long offset, int length) {
+            ByteBuffer bytes = buffer.duplicate();
+            bytes.limit((int) offset + length).position((int) offset);
+            return bytes.slice().order(order);
+        }
+    }
+
+    private static class ChannelSource extends Source {
+        private final FileChannel channel;
+        private final long size;
+
+        ChannelSource(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        @Override
+        long size() {
+            return size;
+        }
+
+        @Override
+        ByteBuffer read(long offset, int length) throws IOException {
+            ByteBuffer bytes = ByteBuffer.allocate(length);
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, offset + bytes.position()) < 0) {
+                    throw TiffFormatException.truncated("File ends at byte " + (offset + bytes.position()) + ".");
+                }
+            }
+            bytes.flip();
+            return bytes.order(order);
+        }
+    }
+
+    private final Source source;
+    private final long offset;
+    private final long nextOffset;
+    private final Map<Integer, Entry> entries;
+
+    private TiffDirectory(Source source, long offset, long nextOffset, Map<Integer, Entry> entries) {
+        this.source = source;
+        this.offset = offset;
+        this.nextOffset = nextOffset;
+        this.entries = entries;
+    }
+
+    /**
+     * Read the TIFF header and the first IFD. The byte order of the buffer is set from the
+     * header.
+     *
+     * @param buffer whole file contents, typically memory-mapped
+     * @return first directory
+     * @throws IOException if the header or first IFD is malformed, as a
+     *         {@link TiffFormatException}
+     */
+    public static TiffDirectory readFirst(ByteBuffer buffer) throws IOException {
+        TiffDirectory first = readFirst(new BufferSource(buffer));
+        buffer.order(first.source.order);
+        return first;
+    }
+
+    /**
+     * Read the TIFF header and the first IFD with positional reads, so the file may be of
+     * any size. The directory keeps reading from the channel, which must stay open while
+     * the chain is followed with {@link #readNext()}.
+     *
+     * @param channel open TIFF file
+     * @return first directory
+     * @throws IOException if the file cannot be read, or as a {@link TiffFormatException}
+     *         if the header or first IFD is malformed
+     */
+    public static TiffDirectory readFirst(FileChannel channel) throws IOException {
+        return readFirst(new ChannelSource(channel));
+    }
+
+    private static TiffDirectory readFirst(Source source) throws IOException {
+        if (source.size() < 8) {
+            throw TiffFormatException.truncated("File too short for a TIFF header.");
+        }
+
+        ByteBuffer header = source.read(0, 8);
+        byte b0 = header.get(0);
+        byte b1 = header.get(1);
+        if (b0 == 'I' && b1 == 'I') {
+            source.order = ByteOrder.LITTLE_ENDIAN;
+        } else if (b0 == 'M' && b1 == 'M') {
+            source.order = ByteOrder.BIG_ENDIAN;
+        } else {
+            throw new TiffFormatException("Bad TIFF byte order mark.");
+        }
+        header.order(source.order);
+
+        int magic = header.getShort(2) & 0xFFFF;
+        if (magic == 43) {
+            if (source.size() < 16) {
+                throw TiffFormatException.truncated("File too short for a BigTIFF header.");
+            }
+            if (header.getShort(4) != 8 || header.getShort(6) != 0) {
+                throw new TiffFormatException("Bad BigTIFF offset size [" + header.getShort(4) + "].");
+            }
+            source.big = true;
+            return read(source, source.read(8, 8).getLong(0));
+        } else if (magic != 42) {
+            throw new TiffFormatException("Bad TIFF magic number [" + magic + "].");
+        }
+
+        return read(source, header.getInt(4) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return the next IFD in the chain, null if this is the last one
+     * @throws IOException if the file cannot be read, or as a {@link TiffFormatException}
+     *         if the next IFD is malformed
+     */
+    public TiffDirectory readNext() throws IOException {
+        return nextOffset == 0 ? null : read(source, nextOffset);
+    }
+
+    private static TiffDirectory read(Source source, long offset) throws IOException {
+        int countSize = source.big ? 8 : 2;
+        int entrySize = source.big ? 20 : 12;
+        int pointerSize = source.big ? 8 : 4;
+
+        if (offset < (source.big ? 16 : 8)) {
+            throw new TiffFormatException("IFD offset [" + offset + "] inside of header.");
+        } else if (offset + countSize > source.size()) {
+            throw TiffFormatException.truncated("IFD offset [" + offset + "] past end of file.");
+        }
+
+        ByteBuffer head = source.read(offset, countSize);
+        long count = source.big ? head.getLong(0) : head.getShort(0) & 0xFFFF;
+        if (count < 0 || count > (source.size() - offset) / entrySize) {
+            throw TiffFormatException.truncated("IFD at [" + offset + "] extends past end of file.");
+        }
+        long end = offset + countSize + entrySize * count + pointerSize;
+        if (end > source.size()) {
+            throw TiffFormatException.truncated("IFD at [" + offset + "] extends past end of file.");
+        }
+        if (end - offset > MAX_VALUE_BYTES) {
+            throw new TiffFormatException("IFD at [" + offset + "] has " + count + " entries.");
+        }
+
+        ByteBuffer table = source.read(offset + countSize, (int) (end - offset - countSize));
+        Map<Integer, Entry> entries = new TreeMap<>();
+        for (int i = 0; i < count; i++) {
+            int e = entrySize * i;
+            int tag = table.getShort(e) & 0xFFFF;
+            int type = table.getShort(e + 2) & 0xFFFF;
+            long n = source.big ? table.getLong(e + 4) : table.getInt(e + 4) & 0xFFFFFFFFL;
+
+            if (typeSize(type) == 0) {
+                // Unknown types must be ignored by readers
+                continue;
+            }
+
+            int valueField = e + (source.big ? 12 : 8);
+            if (n < 0 || n > source.size()) {
+                throw TiffFormatException.truncated("Value of tag [" + tag + "] lies past end of file.");
+            }
+            long length = n * typeSize(type);
+            if (length <= pointerSize) {
+                ByteBuffer value = table.duplicate();
+                value.limit(valueField + (int) length).position(valueField);
+                entries.put(tag, new Entry(tag, type, n, offset + countSize + valueField,
+                        value.slice().order(source.order)));
+                continue;
+            }
+
+            long valueOffset = source.big ? table.getLong(valueField) : table.getInt(valueField) & 0xFFFFFFFFL;
+            if (valueOffset < 0 || valueOffset + length > source.size()) {
+                throw TiffFormatException.truncated("Value of tag [" + tag + "] lies past end of file.");
+            }
+            if (length > MAX_VALUE_BYTES && source instanceof ChannelSource) {
+                throw new TiffFormatException("Value of tag [" + tag + "] is " + length + " bytes long.");
+            }
+            entries.put(tag, new Entry(tag, type, n, valueOffset, source.read(valueOffset, (int) length)));
+        }
+
+        long next = source.big ? table.getLong(table.limit() - 8) : table.getInt(table.limit() - 4) & 0xFFFFFFFFL;
+        return new TiffDirectory(source, offset, next, entries);
+    }
+
+    static int typeSize(int type) {
+        return type > 0 && type < TYPE_SIZES.length ? TYPE_SIZES[type] : 0;
+    }
+
+    public ByteOrder getByteOrder() {
+        return source.order;
+    }
+
+    /**
+     * @return TRUE if the file is a BigTIFF, with 64 bit offsets
+     */
+    public boolean isBigTiff() {
+        return source.big;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return offset of the next IFD in the chain, 0 if this is the last one
+     */
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    public Entry getEntry(int tag) {
+        return entries.get(tag);
+    }
+
+    public boolean has(int tag) {
+        return entries.containsKey(tag);
+    }
+
+    /**
+     * @param tag TIFF tag
+     * @param index value index
+     * @param defaultValue returned if the tag is absent
+     * @return integer value of an unsigned BYTE, SHORT, LONG, LONG8 or IFD entry
+     */
+    public long getLong(int tag, int index, long defaultValue) {
+        Entry entry = entries.get(tag);
+        if (entry == null || index >= entry.count) {
+            return defaultValue;
+        }
+
+        int pos = index * typeSize(entry.type);
+        switch (entry.type) {
+            case 1:
+            case 7:
+                return entry.value.get(pos) & 0xFF;
+            case TYPE_SHORT:
+                return entry.value.getShort(pos) & 0xFFFF;
+            case TYPE_LONG:
+            case TYPE_IFD:
+                return entry.value.getInt(pos) & 0xFFFFFFFFL;
+            case TYPE_LONG8:
+            case TYPE_IFD8:
+                return entry.value.getLong(pos);
+            default:
+                return defaultValue;
+        }
+    }
+
+    public long getLong(int tag, long defaultValue) {
+        return getLong(tag, 0, defaultValue);
+    }
+
+    /**
+     * @param tag TIFF tag
+     * @return all values of an integer entry, empty if the tag is absent
+     */
+    public long[] getLongs(int tag) {
+        Entry entry = entries.get(tag);
+        if (entry == null) {
+            return new long[0];
+        }
+
+        long[] values = new long[(int) entry.count];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = getLong(tag, i, 0);
+        }
+        return values;
+    }
+
+    public int getWidth() {
+        return (int) getLong(TAG_IMAGE_WIDTH, 0);
+    }
+
+    public int getHeight() {
+        return (int) getLong(TAG_IMAGE_LENGTH, 0);
+    }
+
+    public int getSamplesPerPixel() {
+        return (int) getLong(TAG_SAMPLES_PER_PIXEL, 1);
+    }
+
+    public int getCompression() {
+        return (int) getLong(TAG_COMPRESSION, COMPRESSION_NONE);
+    }
+
+    public int getPlanarConfiguration() {
+        return (int) getLong(TAG_PLANAR_CONFIGURATION, 1);
+    }
+
+    /**
+     * @return sum of the bits of every sample in a pixel
+     */
+    public int getBitsPerPixel() {
+        int samples = getSamplesPerPixel();
+        Entry bps = entries.get(TAG_BITS_PER_SAMPLE);
+        if (bps == null) {
+            return samples;
+        }
+
+        int bits = 0;
+        for (int i = 0; i < samples; i++) {
+            // Some writers store a single value for all samples
+            bits += (int) getLong(TAG_BITS_PER_SAMPLE, i < bps.count ? i : 0, 1);
+        }
+        return bits;
+    }
+
+    public boolean isTiled() {
+        return entries.containsKey(TAG_TILE_OFFSETS);
+    }
+
+    public int getRowsPerStrip() {
+        long rows = getLong(TAG_ROWS_PER_STRIP, 0xFFFFFFFFL);
+        return (int) Math.min(rows, getHeight());
+    }
+
+}
@@ -0,0 +1,36 @@
+package edu.jhu.tool.tiff;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a TIFF file is structurally invalid or uses a layout that cannot be handled.
+ */
+public class TiffFormatException extends IOException {
+
+    private final boolean truncated;
+
+    public TiffFormatException(String message) {
+        this(message, false);
+    }
+
+    private TiffFormatException(String message, boolean truncated) {
+        super(message);
+        this.truncated = truncated;
+    }
+
+    /**
+     * @param message description of the missing data
+     * @return exception for a structure that points past the end of the file
+     */
+    public static TiffFormatException truncated(String message) {
+        return new TiffFormatException(message, true);
+    }
+
+    /**
+     * @return TRUE if the file looks like a valid TIFF cut short, rather than garbage
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+}
@@ -0,0 +1,180 @@
+package edu.jhu.tool.tiff;
+
+import edu.jhu.tool.json.Json;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Checks many TIFF files at once with {@link TiffValidator}. The list is split in halves on
+ * a fork/join pool until each task has a handful of files, so idle workers steal from busy
+ * ones and a few large files do not hold up the rest. Only the header, IFDs and block
+ * tables of each file are read; no pixels are decoded.
+ */
+public class TiffScanner {
+
+    /** Files checked by one task without splitting further. */
+    private static final int BATCH = 4;
+
+    /**
+     * Outcome of a scan, in the order the files were given.
+     */
+    public static class Report {
+        private final List<Path> files;
+        private final long[] sizes;
+        private final TiffValidator.Result[] results;
+        private final long nanos;
+
+        Report(List<Path> files, long[] sizes, TiffValidator.Result[] results, long nanos) {
+            this.files = files;
+            this.sizes = sizes;
+            this.results = results;
+            this.nanos = nanos;
+        }
+
+        public List<Path> getFiles() {
+            return Collections.unmodifiableList(files);
+        }
+
+        public TiffValidator.Result getResult(int i) {
+            return results[i];
+        }
+
+        public double getSeconds() {
+            return nanos / 1e9;
+        }
+
+        /**
+         * @return number of files with each status
+         */
+        public Map<TiffValidator.Status, Integer> counts() {
+            Map<TiffValidator.Status, Integer> counts = new EnumMap<>(TiffValidator.Status.class);
+            for (TiffValidator.Status status : TiffValidator.Status.values()) {
+                counts.put(status, 0);
+            }
+            for (TiffValidator.Result result : results) {
+                counts.merge(result.getStatus(), 1, Integer::sum);
+            }
+            return counts;
+        }
+
+        /**
+         * @return the report as JSON: totals, then one object per file
+         */
+        public String toJson() {
+            StringBuilder json = new StringBuilder();
+            json.append("{\n  \"files\": ").append(files.size());
+            json.append(",\n  \"seconds\": ").append(String.format(Locale.ROOT, "%.3f", getSeconds()));
+
+            json.append(",\n  \"status\": {");
+            String separator = "";
+            for (Map.Entry<TiffValidator.Status, Integer> count : counts().entrySet()) {
+                json.append(separator).append(Json.string(count.getKey().name())).append(": ").append(count.getValue());
+                separator = ", ";
+            }
+            json.append("}");
+
+            json.append(",\n  \"results\": [");
+            separator = "\n";
+            for (int i = 0; i < files.size(); i++) {
+                TiffValidator.Result result = results[i];
+                json.append(separator).append("    {\"path\": ").append(Json.string(files.get(i).toString()))
+                        .append(", \"size\": ").append(sizes[i])
+                        .append(", \"status\": ").append(Json.string(result.getStatus().name()))
+                        .append(", \"directories\": ").append(result.getDirectories())
+                        .append(", \"message\": ")
+                        .append(result.getMessage() == null ? "null" : Json.string(result.getMessage()))
+                        .append("}");
+                separator = ",\n";
+            }
+            json.append("\n  ]\n}\n");
+            return json.toString();
+        }
+
+        /**
+         * Write the report as JSON, replacing the file atomically where the file system allows.
+         */
+        public void write(Path file) throws IOException {
+            Path tmp = file.resolveSibling(file.getFileName().toString() + ".tmp");
+            Files.write(tmp, toJson().getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    private static class Scan extends RecursiveAction {
+        private final List<Path> files;
+        private final long[] sizes;
+        private final TiffValidator.Result[] results;
+        private final int from;
+        private final int to;
+
+        Scan(List<Path> files, long[] sizes, TiffValidator.Result[] results, int from, int to) {
+            this.files = files;
+            this.sizes = sizes;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH) {
+                for (int i = from; i < to; i++) {
+                    check(i);
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new Scan(files, sizes, results, from, middle), new Scan(files, sizes, results, middle, to));
+        }
+
+        private void check(int i) {
+            Path file = files.get(i);
+            try {
+                sizes[i] = Files.size(file);
+                results[i] = TiffValidator.validate(file);
+            } catch (IOException | RuntimeException e) {
+                results[i] = new TiffValidator.Result(TiffValidator.Status.CORRUPT, 0,
+                        "Cannot read file. " + e.getMessage());
+            }
+        }
+    }
+
+    private TiffScanner() {}
+
+    /**
+     * @param files TIFF files to check
+     * @param threads number of workers, 0 for one per core
+     * @return result of every file
+     */
+    public static Report scan(List<Path> files, int threads) {
+        long[] sizes = new long[files.size()];
+        TiffValidator.Result[] results = new TiffValidator.Result[files.size()];
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        try {
+            pool.invoke(new Scan(files, sizes, results, 0, files.size()));
+        } finally {
+            pool.shutdown();
+        }
+        return new Report(files, sizes, results, System.nanoTime() - start);
+    }
+
+}
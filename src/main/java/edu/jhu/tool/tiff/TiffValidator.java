@@ -0,0 +1,141 @@
+package edu.jhu.tool.tiff;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Structural TIFF check. Walks the IFD chain and makes sure every strip or tile lies inside
+ * the file, without decoding any pixels. Files are read at the offsets their IFDs point to,
+ * so BigTIFF and files over 2 GB are checked like any other.
+ */
+public class TiffValidator {
+
+    /** Guards against IFD chains that loop or never end. */
+    private static final int MAX_DIRECTORIES = 4096;
+
+    public enum Status {
+        OK,
+        TRUNCATED,
+        CORRUPT
+    }
+
+    public static class Result {
+        private final Status status;
+        private final int directories;
+        private final String message;
+
+        Result(Status status, int directories, String message) {
+            this.status = status;
+            this.directories = directories;
+            this.message = message;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return number of IFDs that were checked successfully
+         */
+        public int getDirectories() {
+            return directories;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public boolean isOk() {
+            return status == Status.OK;
+        }
+    }
+
+    private TiffValidator() {}
+
+    /**
+     * @param path TIFF file of any size, classic or BigTIFF; only its header, IFDs and block
+     *             tables are read
+     * @return check result
+     * @throws IOException if the file cannot be read at all
+     */
+    public static Result validate(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            TiffDirectory first;
+            try {
+                first = TiffDirectory.readFirst(channel);
+            } catch (TiffFormatException e) {
+                return new Result(e.isTruncated() ? Status.TRUNCATED : Status.CORRUPT, 0, e.getMessage());
+            }
+            return validate(first, channel.size());
+        }
+    }
+
+    /**
+     * @param buffer whole file contents
+     * @return check result
+     */
+    public static Result validate(ByteBuffer buffer) {
+        try {
+            return validate(TiffDirectory.readFirst(buffer), buffer.limit());
+        } catch (TiffFormatException e) {
+            return new Result(e.isTruncated() ? Status.TRUNCATED : Status.CORRUPT, 0, e.getMessage());
+        } catch (IOException e) {
+            return new Result(Status.CORRUPT, 0, e.getMessage());
+        }
+    }
+
+    private static Result validate(TiffDirectory first, long length) throws IOException {
+        int count = 0;
+        try {
+            Set<Long> seen = new HashSet<>();
+            TiffDirectory dir = first;
+            while (true) {
+                if (!seen.add(dir.getOffset()) || count >= MAX_DIRECTORIES) {
+                    return new Result(Status.CORRUPT, count, "IFD chain loops at [" + dir.getOffset() + "].");
+                }
+                checkData(dir, length);
+                count++;
+
+                dir = dir.readNext();
+                if (dir == null) {
+                    return new Result(Status.OK, count, null);
+                }
+            }
+        } catch (TiffFormatException e) {
+            return new Result(e.isTruncated() ? Status.TRUNCATED : Status.CORRUPT, count, e.getMessage());
+        }
+    }
+
+    private static void checkData(TiffDirectory dir, long length) throws TiffFormatException {
+        if (dir.getWidth() <= 0 || dir.getHeight() <= 0) {
+            throw new TiffFormatException("IFD at [" + dir.getOffset() + "] has no image dimensions.");
+        }
+
+        int offsetsTag = dir.isTiled() ? TiffDirectory.TAG_TILE_OFFSETS : TiffDirectory.TAG_STRIP_OFFSETS;
+        int countsTag = dir.isTiled() ? TiffDirectory.TAG_TILE_BYTE_COUNTS : TiffDirectory.TAG_STRIP_BYTE_COUNTS;
+
+        long[] offsets = dir.getLongs(offsetsTag);
+        long[] counts = dir.getLongs(countsTag);
+        if (offsets.length == 0 || offsets.length != counts.length) {
+            throw new TiffFormatException("IFD at [" + dir.getOffset() + "] has " + offsets.length
+                    + " data offsets and " + counts.length + " byte counts.");
+        }
+
+        for (int i = 0; i < offsets.length; i++) {
+            if (offsets[i] < 0 || counts[i] < 0) {
+                throw new TiffFormatException("Block " + i + " of IFD at [" + dir.getOffset()
+                        + "] has a 64 bit offset or length out of range.");
+            }
+            if (offsets[i] + counts[i] > length) {
+                throw TiffFormatException.truncated("Block " + i + " of IFD at [" + dir.getOffset()
+                        + "] ends at byte " + (offsets[i] + counts[i]) + " of " + length + ".");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,336 @@
+package edu.jhu.tool.tiles;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Builds multi-resolution tiles of split pages for the viewer, halving the page until it
+ * fits in one tile. Two formats are written:
+ * <ul>
+ *     <li><code>dzi</code>: a Deep Zoom tile set, <code>page.dzi</code> plus JPEG tiles in
+ *     <code>page_files/level/column_row.jpg</code>. The tiles of each level are encoded in
+ *     parallel.</li>
+ *     <li><code>tiff</code>: a pyramidal TIFF, one JPEG-compressed tiled image per level from
+ *     full size down.</li>
+ * </ul>
+ * Pages are tiled from the raster the split step already decoded where there is one, so
+ * they are not read back from disk. Each tile set only appears under its final name once
+ * complete.
+ */
+public class Tiler {
+
+    public static final String NONE = "none";
+    public static final String DZI = "dzi";
+    public static final String TIFF = "tiff";
+
+    private static final float QUALITY = 0.9f;
+
+    private final String format;
+    private final Path directory;
+    private final int tileSize;
+    private final int threads;
+
+    private volatile ExecutorService encoders;
+
+    /**
+     * @param format none, dzi or tiff
+     * @param directory directory for the tile sets
+     * @param tileSize width and height of a tile in pixels
+     * @param threads number of tile encoding threads, 0 for one per core
+     * @throws IllegalArgumentException if the format is unknown
+     */
+    public Tiler(String format, Path directory, int tileSize, int threads) {
+        this.format = format.toLowerCase(Locale.ROOT);
+        if (!this.format.equals(NONE) && !this.format.equals(DZI) && !this.format.equals(TIFF)) {
+            throw new IllegalArgumentException("Unknown tile format [" + format + "], use none, dzi or tiff.");
+        }
+        this.directory = directory;
+        this.tileSize = Math.max(16, tileSize);
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    public boolean isEnabled() {
+        return !format.equals(NONE);
+    }
+
+    /**
+     * Tile a page that has just been written, reading it back from disk.
+     *
+     * @param page split page
+     * @throws IOException if the page cannot be read or the tiles cannot be written
+     */
+    public void write(Path page) throws IOException {
+        BufferedImage image = ImageIO.read(page.toFile());
+        if (image == null) {
+            throw new IOException("Cannot decode page for tiling. [" + page.toString() + "]");
+        }
+        write(image, page);
+    }
+
+    /**
+     * Tile a page from its decoded raster.
+     *
+     * @param image page raster
+     * @param page split page the tiles are named after
+     * @throws IOException if the tiles cannot be written
+     */
+    public void write(BufferedImage image, Path page) throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+
+        String name = page.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        name = dot > 0 ? name.substring(0, dot) : name;
+
+        Files.createDirectories(directory);
+        if (format.equals(DZI)) {
+            writeDeepZoom(eightBit(image), name);
+        } else {
+            writePyramid(eightBit(image), name);
+        }
+    }
+
+    /**
+     * Stop the encoding threads.
+     */
+    public void close() {
+        if (encoders != null) {
+            encoders.shutdown();
+        }
+    }
+
+    /**
+     * @return number of the full size level: levels go down to 1x1 pixel at level 0
+     */
+    static int maxLevel(int width, int height) {
+        int size = Math.max(width, height);
+        int level = 0;
+        while ((1L << level) < size) {
+            level++;
+        }
+        return level;
+    }
+
+    private void writeDeepZoom(BufferedImage image, String name) throws IOException {
+        Path files = directory.resolve(name + "_files");
+        Path tmpFiles = directory.resolve("." + name + "_files.tmp");
+        delete(tmpFiles);
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage level = image;
+        for (int l = maxLevel(width, height); l >= 0; l--) {
+            writeLevel(level, tmpFiles.resolve(Integer.toString(l)));
+            if (l > 0) {
+                level = half(level);
+            }
+        }
+
+        delete(files);
+        Files.move(tmpFiles, files);
+
+        Path dzi = directory.resolve(name + ".dzi");
+        Path tmp = directory.resolve("." + name + ".dzi.tmp");
+        try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            out.write("<Image xmlns=\"http://schemas.microsoft.com/deepzoom/2008\" Format=\"jpg\" Overlap=\"0\" TileSize=\""
+                    + tileSize + "\">\n");
+            out.write("  <Size Width=\"" + width + "\" Height=\"" + height + "\"/>\n");
+            out.write("</Image>\n");
+        }
+        move(tmp, dzi);
+    }
+
+    /**
+     * Encode the tiles of one level in parallel.
+     */
+    private void writeLevel(BufferedImage level, Path dir) throws IOException {
+        Files.createDirectories(dir);
+
+        List<Future<?>> tiles = new ArrayList<>();
+        for (int y = 0, row = 0; y < level.getHeight(); y += tileSize, row++) {
+            for (int x = 0, col = 0; x < level.getWidth(); x += tileSize, col++) {
+                BufferedImage tile = level.getSubimage(x, y,
+                        Math.min(tileSize, level.getWidth() - x), Math.min(tileSize, level.getHeight() - y));
+                Path file = dir.resolve(col + "_" + row + ".jpg");
+                tiles.add(encoders().submit(() -> {
+                    writeJpeg(tile, file);
+                    return null;
+                }));
+            }
+        }
+
+        try {
+            for (Future<?> tile : tiles) {
+                tile.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            tiles.forEach(t -> t.cancel(true));
+            throw new IOException("Interrupted while writing tiles.");
+        } catch (ExecutionException e) {
+            tiles.forEach(t -> t.cancel(true));
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    private void writePyramid(BufferedImage image, String name) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("tiff");
+        if (!writers.hasNext()) {
+            throw new IOException("No TIFF writer available.");
+        }
+
+        Path file = directory.resolve(name + ".tif");
+        Path tmp = directory.resolve("." + name + ".tif.tmp");
+        Files.deleteIfExists(tmp);
+
+        ImageWriter writer = writers.next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(tmp.toFile())) {
+            writer.setOutput(out);
+
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setTilingMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setTiling(tileSize, tileSize, 0, 0);
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionType("JPEG");
+            param.setCompressionQuality(QUALITY);
+
+            writer.prepareWriteSequence(null);
+            BufferedImage level = image;
+            while (true) {
+                writer.writeToSequence(new IIOImage(level, null, null), param);
+                if (level.getWidth() <= tileSize && level.getHeight() <= tileSize) {
+                    break;
+                }
+                level = half(level);
+            }
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+        }
+        move(tmp, file);
+    }
+
+    private ExecutorService encoders() {
+        if (encoders == null) {
+            synchronized (this) {
+                if (encoders == null) {
+                    AtomicInteger count = new AtomicInteger();
+                    encoders = Executors.newFixedThreadPool(threads, r -> {
+                        Thread t = new Thread(r, "tiles-" + count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+                }
+            }
+        }
+        return encoders;
+    }
+
+    /**
+     * @return the image as 8 bit RGB or gray, which JPEG can encode; the image itself if it
+     *         already is
+     */
+    private static BufferedImage eightBit(BufferedImage image) {
+        int type = image.getType();
+        if (type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_INT_RGB
+                || type == BufferedImage.TYPE_BYTE_GRAY) {
+            return image;
+        }
+
+        int target = image.getColorModel().getNumColorComponents() == 1
+                ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_3BYTE_BGR;
+        BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(), target);
+        Graphics2D g = converted.createGraphics();
+        try {
+            g.drawImage(image, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return converted;
+    }
+
+    /**
+     * @return the image at half size, rounding up
+     */
+    static BufferedImage half(BufferedImage image) {
+        int width = Math.max(1, (image.getWidth() + 1) / 2);
+        int height = Math.max(1, (image.getHeight() + 1) / 2);
+
+        BufferedImage half = new BufferedImage(width, height, image.getType());
+        Graphics2D g = half.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return half;
+    }
+
+    private static void writeJpeg(BufferedImage tile, Path file) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(file.toFile())) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(QUALITY);
+            writer.write(null, new IIOImage(tile, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static void move(Path tmp, Path file) throws IOException {
+        try {
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+}
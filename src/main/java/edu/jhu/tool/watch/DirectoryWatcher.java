@@ -0,0 +1,145 @@
+package edu.jhu.tool.watch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports files created or changed in a few directories. Changes are collected until none
+ * have come for the settle time, so a file that is still being written, which sends an event
+ * for every few blocks, is reported once when the writer pauses. Dotfiles, partial downloads
+ * and temporary files are never reported, nor are files that are gone by then.
+ *
+ * <p>Events are delivered by the platform's {@link WatchService}. On Linux that is inotify
+ * and changes arrive at once; other platforms may poll every few seconds.</p>
+ */
+public class DirectoryWatcher implements Closeable {
+
+    /**
+     * Files changed since the last {@link #take()}.
+     */
+    public static class Changes {
+        private final Set<Path> files;
+        private final boolean overflow;
+
+        Changes(Set<Path> files, boolean overflow) {
+            this.files = files;
+            this.overflow = overflow;
+        }
+
+        /**
+         * @return changed files, in name order
+         */
+        public Set<Path> getFiles() {
+            return Collections.unmodifiableSet(files);
+        }
+
+        /**
+         * @return true if events were lost and any file may have changed
+         */
+        public boolean isOverflow() {
+            return overflow;
+        }
+    }
+
+    private final long settle;
+    private final WatchService service;
+    /** Changed files not yet reported. */
+    private final Set<Path> pending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param settle time in ms without changes before they are reported
+     * @param directories directories to watch, not their subdirectories
+     * @throws IOException if a directory cannot be watched
+     */
+    public DirectoryWatcher(long settle, Path... directories) throws IOException {
+        this.settle = Math.max(0, settle);
+        this.service = directories[0].getFileSystem().newWatchService();
+        try {
+            for (Path directory : directories) {
+                directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        } catch (IOException | RuntimeException e) {
+            service.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Block until files have changed and then nothing has changed for the settle time.
+     *
+     * @return the changes, null once the watcher is closed
+     * @throws IOException if a directory can no longer be watched, typically because it was
+     *         deleted
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Changes take() throws IOException, InterruptedException {
+        boolean overflow = false;
+        try {
+            WatchKey key = service.take();
+            while (true) {
+                Path directory = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        overflow = true;
+                    } else if (accept((Path) event.context())) {
+                        pending.add(directory.resolve((Path) event.context()));
+                    }
+                }
+                if (!key.reset()) {
+                    throw new IOException("Directory can no longer be watched. [" + directory.toString() + "]");
+                }
+
+                key = pending.isEmpty() && !overflow ? service.take() : service.poll(settle, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    break;
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            return null;
+        }
+
+        Set<Path> files = new TreeSet<>();
+        for (Iterator<Path> i = pending.iterator(); i.hasNext(); ) {
+            Path file = i.next();
+            i.remove();
+            if (Files.isRegularFile(file)) {
+                files.add(file);
+            }
+        }
+        return new Changes(files, overflow);
+    }
+
+    /**
+     * @return number of changed files waiting for the settle time
+     */
+    public int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * Stop watching. A thread blocked in {@link #take()} returns null.
+     */
+    @Override
+    public void close() throws IOException {
+        service.close();
+    }
+
+    private static boolean accept(Path name) {
+        String s = name.toString();
+        return !s.startsWith(".") && !s.endsWith(".part") && !s.endsWith(".tmp");
+    }
+
+}
@@ -0,0 +1,83 @@
+package edu.jhu.tool.watch;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Serves the status of a long running command over HTTP on the loopback interface only:
+ * <code>/status</code> as JSON and <code>/metrics</code> in the Prometheus text format. One
+ * thread answers all requests; each response is built on demand and is small.
+ */
+public class StatusServer implements Closeable {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * @param port port to listen on, 0 for any free port
+     * @param status supplies the status as JSON
+     * @param metrics supplies the metrics in the Prometheus text format
+     * @throws IOException if the port cannot be bound
+     */
+    public StatusServer(int port, Supplier<String> status, Supplier<String> metrics) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/status", exchange -> respond(exchange, "application/json", status));
+        server.createContext("/metrics", exchange -> respond(exchange, "text/plain; version=0.0.4", metrics));
+
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "status");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return port the server listens on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private static void respond(HttpExchange exchange, String type, Supplier<String> body) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            byte[] bytes = body.get().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", type + "; charset=utf-8");
+            if (method.equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+}
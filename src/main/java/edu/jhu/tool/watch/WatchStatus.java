@@ -0,0 +1,124 @@
+package edu.jhu.tool.watch;
+
+import edu.jhu.tool.json.Json;
+
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntSupplier;
+
+/**
+ * What the watch command is doing, for the status endpoint. Updated by the thread that
+ * splits and read by the server thread.
+ */
+public class WatchStatus {
+
+    public static final String STARTING = "starting";
+    public static final String IDLE = "idle";
+    public static final String WORKING = "working";
+    public static final String STOPPING = "stopping";
+
+    private final Instant started = Instant.now();
+    private final IntSupplier pending;
+
+    private String state = STARTING;
+    private long passes;
+    private long files;
+    private long pages;
+    private Instant lastPass;
+    private int lastFiles;
+    private int lastPages;
+    private double lastSeconds;
+    /** Files that were picked up but are not whole TIFFs, with the reason. */
+    private final Map<String, String> rejected = new TreeMap<>();
+    private String lastError;
+
+    /**
+     * @param pending supplies the number of changed files waiting to settle
+     */
+    public WatchStatus(IntSupplier pending) {
+        this.pending = pending;
+    }
+
+    /**
+     * @param state new state, ignored once stopping
+     */
+    public synchronized void setState(String state) {
+        if (!STOPPING.equals(this.state)) {
+            this.state = state;
+        }
+    }
+
+    public synchronized String getState() {
+        return state;
+    }
+
+    /**
+     * @param name file that was checked
+     * @param reason why it was not split, null if it was whole
+     */
+    public synchronized void checked(String name, String reason) {
+        if (reason == null) {
+            rejected.remove(name);
+        } else {
+            rejected.put(name, reason);
+        }
+    }
+
+    /**
+     * @param files number of source images looked at
+     * @param pages number of pages written
+     * @param seconds time the pass took
+     */
+    public synchronized void passFinished(int files, int pages, double seconds) {
+        this.passes++;
+        this.files += files;
+        this.pages += pages;
+        this.lastPass = Instant.now();
+        this.lastFiles = files;
+        this.lastPages = pages;
+        this.lastSeconds = seconds;
+    }
+
+    public synchronized void error(String message) {
+        this.lastError = message;
+    }
+
+    /**
+     * @return the status as a JSON object
+     */
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"state\": ").append(Json.string(state));
+        json.append(",\n  \"started\": ").append(Json.string(started.toString()));
+        json.append(",\n  \"pending\": ").append(pending.getAsInt());
+        json.append(",\n  \"passes\": ").append(passes);
+        json.append(",\n  \"files\": ").append(files);
+        json.append(",\n  \"pages\": ").append(pages);
+
+        json.append(",\n  \"last_pass\": ");
+        if (lastPass == null) {
+            json.append("null");
+        } else {
+            json.append("{\"finished\": ").append(Json.string(lastPass.toString()))
+                    .append(", \"files\": ").append(lastFiles)
+                    .append(", \"pages\": ").append(lastPages)
+                    .append(", \"seconds\": ").append(String.format(Locale.ROOT, "%.3f", lastSeconds))
+                    .append("}");
+        }
+
+        json.append(",\n  \"rejected\": {");
+        String separator = "";
+        for (Map.Entry<String, String> entry : rejected.entrySet()) {
+            json.append(separator).append(Json.string(entry.getKey())).append(": ").append(Json.string(entry.getValue()));
+            separator = ", ";
+        }
+        json.append("}");
+
+        json.append(",\n  \"last_error\": ").append(lastError == null ? "null" : Json.string(lastError));
+        json.append("\n}\n");
+        return json.toString();
+    }
+
+}
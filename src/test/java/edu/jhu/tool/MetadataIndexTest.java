@@ -0,0 +1,90 @@
+package edu.jhu.tool;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Unit test for the binary metadata index.
+ */
+public class MetadataIndexTest extends TestCase {
+
+    private Path dir;
+    private Path sheet;
+
+    @Override
+    protected void setUp() throws IOException {
+        dir = TempDirectory.create("index");
+        sheet = Files.write(dir.resolve("list.xls"), new byte[] {1, 2, 3});
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        TempDirectory.delete(dir);
+    }
+
+    public void testRoundTrip() throws IOException {
+        DropboxImageFile image = image();
+        MetadataIndex.save(sheet, "\\|", Collections.singletonList(image));
+
+        List<DropboxImageFile> loaded = MetadataIndex.load(sheet, "\\|");
+        assertNotNull(loaded);
+        assertEquals(1, loaded.size());
+        assertEquals(image.name, loaded.get(0).name);
+        assertEquals(image.title, loaded.get(0).title);
+        assertNull(loaded.get(0).publicationDate);
+        assertEquals(Arrays.asList(image.pageNumbers), Arrays.asList(loaded.get(0).pageNumbers));
+        assertEquals(7, loaded.get(0).sortOrder);
+
+        assertNull(MetadataIndex.load(sheet, ","));
+
+        Files.setLastModifiedTime(sheet, FileTime.fromMillis(Files.getLastModifiedTime(sheet).toMillis() + 2000));
+        assertNull(MetadataIndex.load(sheet, "\\|"));
+    }
+
+    public void testDamagedIndex() throws IOException {
+        MetadataIndex.save(sheet, "\\|", Collections.singletonList(image()));
+        Path index = MetadataIndex.indexPath(sheet);
+        byte[] original = Files.readAllBytes(index);
+
+        // Header: magic, version, path, size, mtime, delimiter
+        int count = 8 + 4 + 4 + sheet.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8).length
+                + 8 + 8 + 4 + 2;
+        int name = count + 4;
+        int pages = name + 4 + "Ha2_0001".length() + 4 + "Ha2".length()
+                + 4 + "Titre à l'été".getBytes(StandardCharsets.UTF_8).length + 4;
+
+        int[][] damage = {
+                {count, -1}, {count, Integer.MAX_VALUE}, {name, -2}, {name, 1 << 30},
+                {pages, Integer.MIN_VALUE}, {pages, 1 << 28}};
+        for (int[] d : damage) {
+            byte[] bytes = original.clone();
+            ByteBuffer.wrap(bytes).putInt(d[0], d[1]);
+            Files.write(index, bytes);
+            assertNull("value " + d[1] + " at byte " + d[0], MetadataIndex.load(sheet, "\\|"));
+        }
+
+        Files.write(index, original);
+        assertNotNull(MetadataIndex.load(sheet, "\\|"));
+    }
+
+    private static DropboxImageFile image() {
+        DropboxImageFile image = new DropboxImageFile();
+        image.name = "Ha2_0001";
+        image.callNumber = "Ha2";
+        image.title = "Titre à l'été";
+        image.publicationDate = null;
+        image.pageNumbers = new String[] {"1r", "1v"};
+        image.sortOrder = 7;
+        return image;
+    }
+
+}
@@ -0,0 +1,99 @@
+package edu.jhu.tool;
+
+import com.google.inject.Guice;
+import edu.jhu.tool.config.AppConfig;
+import edu.jhu.tool.config.AppModule;
+import edu.jhu.tool.download.DownloadManifest;
+import junit.framework.TestCase;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Unit test for passes of the split-images and watch commands over single-page images,
+ * which are copied rather than split.
+ */
+public class SplitImagesTest extends TestCase {
+
+    private Path dir;
+    private Path raw;
+    private Path split;
+    private App app;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TempDirectory.create("split-images");
+        raw = Files.createDirectory(dir.resolve("raw"));
+        split = dir.resolve("split");
+
+        Properties overrides = new Properties();
+        overrides.setProperty("book.id", "Ha2");
+        overrides.setProperty("download.directory", raw.toString() + "/");
+        overrides.setProperty("split.directory", split.toString() + "/");
+        overrides.setProperty("split.copy", "copy");
+        AppConfig config = Guice.createInjector(new AppModule(overrides)).getInstance(AppConfig.class);
+        app = new App(config);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TempDirectory.delete(dir);
+    }
+
+    public void testWatchPassKeepsOtherOutputs() throws Exception {
+        DropboxImageFile first = image("Ha2_0001", "1r");
+        DropboxImageFile second = image("Ha2_0002", "1v");
+        List<DropboxImageFile> metadata = Arrays.asList(first, second);
+        assertEquals(2, app.imageMagick(metadata, metadata));
+
+        // A new scan of the first image lands while watching
+        Files.write(raw.resolve("Ha2_0001.tif"), new byte[] {4, 5, 6, 7});
+        assertEquals(1, app.imageMagick(metadata, Collections.singletonList(first)));
+        assertTrue(Arrays.equals(new byte[] {4, 5, 6, 7}, Files.readAllBytes(split.resolve("Ha2.001r.tif"))));
+        assertTrue(Files.exists(split.resolve("Ha2.001v.tif")));
+
+        // Still recorded, so a full pass has nothing to do
+        assertEquals(0, app.imageMagick(metadata, metadata));
+    }
+
+    public void testHashesOnlyPlannedSources() throws Exception {
+        Files.write(raw.resolve("Ha2_0099.tif"), new byte[] {1, 2, 3});
+        List<DropboxImageFile> metadata = Collections.singletonList(image("Ha2_0001", "1r"));
+        assertEquals(1, app.imageMagick(metadata, metadata));
+
+        DownloadManifest manifest = DownloadManifest.load(raw);
+        assertNotNull(manifest.get("Ha2_0001.tif"));
+        assertNull(manifest.get("Ha2_0099.tif"));
+    }
+
+    public void testRenamedPage() throws Exception {
+        List<DropboxImageFile> metadata = Arrays.asList(image("Ha2_0001", "1r"), image("Ha2_0002", "1v"));
+        assertEquals(2, app.imageMagick(metadata, metadata));
+
+        List<DropboxImageFile> renamed = Arrays.asList(metadata.get(0), image("Ha2_0002", "2r"));
+        assertEquals(1, app.imageMagick(renamed, renamed));
+        assertTrue(Files.exists(split.resolve("Ha2.001r.tif")));
+        assertTrue(Files.exists(split.resolve("Ha2.002r.tif")));
+        assertFalse(Files.exists(split.resolve("Ha2.001v.tif")));
+    }
+
+    /**
+     * @return image of one page, with a source in the download directory
+     */
+    private DropboxImageFile image(String name, String page) throws Exception {
+        Path source = raw.resolve(name + ".tif");
+        if (!Files.exists(source)) {
+            Files.write(source, name.getBytes("US-ASCII"));
+        }
+
+        DropboxImageFile image = new DropboxImageFile();
+        image.name = name;
+        image.pageNumbers = new String[] {page};
+        return image;
+    }
+
+}
@@ -0,0 +1,81 @@
+package edu.jhu.tool.build;
+
+import edu.jhu.tool.TempDirectory;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Unit test for up-to-date checks of split outputs.
+ */
+public class BuildStateTest extends TestCase {
+
+    private Path dir;
+
+    @Override
+    protected void setUp() throws IOException {
+        dir = TempDirectory.create("state");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        TempDirectory.delete(dir);
+    }
+
+    public void testUpToDate() throws IOException {
+        Path page = dir.resolve("Ha2.001r.tif");
+        String recipe = BuildState.recipe("Ha2_0001.tif", "abc", "1r\n1v", "java");
+        assertFalse(recipe.equals(BuildState.recipe("Ha2_0001.tif", "abc", "1r\n2v", "java")));
+        assertFalse(BuildState.recipe("ab", "c").equals(BuildState.recipe("a", "bc")));
+
+        BuildState state = BuildState.load(dir);
+        state.start(page, recipe);
+        Files.write(page, new byte[] {1, 2, 3});
+        assertFalse(state.isUpToDate(page, recipe));
+        state.done(page);
+        assertTrue(state.isUpToDate(page, recipe));
+        state.save();
+
+        state = BuildState.load(dir);
+        assertTrue(state.isUpToDate(page, recipe));
+        assertFalse(state.isUpToDate(page, BuildState.recipe("other")));
+
+        // Started again but interrupted before done: no longer up to date
+        state.start(page, recipe);
+        assertFalse(state.isUpToDate(page, recipe));
+        state.done(page);
+
+        Files.setLastModifiedTime(page, FileTime.fromMillis(Files.getLastModifiedTime(page).toMillis() + 2000));
+        assertFalse(state.isUpToDate(page, recipe));
+    }
+
+    public void testForget() throws IOException {
+        Path kept = dir.resolve("Ha2.001r.tif");
+        Path renamed = dir.resolve("Ha2.001v.tif");
+        BuildState state = BuildState.load(dir);
+        for (Path page : Arrays.asList(kept, renamed)) {
+            state.start(page, "recipe");
+            Files.write(page, new byte[] {1, 2, 3});
+            state.done(page);
+        }
+        assertEquals(Arrays.asList("Ha2.001r.tif", "Ha2.001v.tif"), Arrays.asList(state.getOutputs().toArray()));
+        assertTrue(state.isUnchanged(renamed));
+
+        Files.write(renamed, new byte[] {1, 2, 3, 4});
+        assertFalse(state.isUnchanged(renamed));
+
+        state.forget(renamed);
+        assertFalse(state.isUnchanged(renamed));
+        state.save();
+
+        state = BuildState.load(dir);
+        assertEquals(Collections.singleton("Ha2.001r.tif"), state.getOutputs());
+        assertTrue(state.isUpToDate(kept, "recipe"));
+    }
+
+}
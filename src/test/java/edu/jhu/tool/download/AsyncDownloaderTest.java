@@ -0,0 +1,237 @@
+package edu.jhu.tool.download;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import edu.jhu.tool.TempDirectory;
+import edu.jhu.tool.metrics.Metrics;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit test for the asynchronous downloader against a local server.
+ */
+public class AsyncDownloaderTest extends TestCase {
+
+    private static final byte[] DATA = new byte[100000];
+
+    static {
+        for (int i = 0; i < DATA.length; i++) {
+            DATA[i] = (byte) (i * 31);
+        }
+    }
+
+    private Path dir;
+    private HttpServer server;
+    private ExecutorService executor;
+    /** Released when the test ends, so stalled responses finish. */
+    private final CountDownLatch stop = new CountDownLatch(1);
+    private volatile HttpHandler handler;
+    /** Range header of each request, "" when there was none. */
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TempDirectory.create("download");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/file.tif", exchange -> {
+            try {
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                ranges.add(range == null ? "" : range);
+                handler.handle(exchange);
+            } finally {
+                exchange.close();
+            }
+        });
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        stop.countDown();
+        server.stop(0);
+        executor.shutdownNow();
+        TempDirectory.delete(dir);
+    }
+
+    public void testResume() throws Exception {
+        handler = exchange -> send(exchange, start(exchange));
+        Path out = dir.resolve("file.tif");
+        Files.write(dir.resolve("file.tif.part"), Arrays.copyOf(DATA, 40000));
+
+        download(out);
+        assertEquals(Arrays.asList("bytes=40000-"), ranges);
+        assertTrue(Arrays.equals(DATA, Files.readAllBytes(out)));
+        assertFalse(Files.exists(dir.resolve("file.tif.part")));
+    }
+
+    public void testResumeAtWrongOffset() throws Exception {
+        // Answers every range with the whole file as a partial response
+        handler = exchange -> send(exchange, 0);
+        Path out = dir.resolve("file.tif");
+        Files.write(dir.resolve("file.tif.part"), Arrays.copyOf(DATA, 40000));
+
+        download(out);
+        assertEquals(Arrays.asList("bytes=40000-", ""), ranges);
+        assertTrue(Arrays.equals(DATA, Files.readAllBytes(out)));
+    }
+
+    public void testFinishedPartial() throws Exception {
+        // Previous run got the whole file but did not rename it
+        handler = exchange -> {
+            exchange.getResponseHeaders().set("Content-Range", "bytes */" + DATA.length);
+            exchange.sendResponseHeaders(416, -1);
+        };
+        Path out = dir.resolve("file.tif");
+        Files.write(dir.resolve("file.tif.part"), DATA);
+
+        download(out);
+        assertEquals(Arrays.asList("bytes=" + DATA.length + "-"), ranges);
+        assertTrue(Arrays.equals(DATA, Files.readAllBytes(out)));
+    }
+
+    public void testRangeNotSatisfiable() throws Exception {
+        // File on the server is shorter than the partial file, so it changed
+        handler = exchange -> {
+            if (exchange.getRequestHeaders().getFirst("Range") == null) {
+                send(exchange, 0);
+            } else {
+                exchange.getResponseHeaders().set("Content-Range", "bytes */" + DATA.length);
+                exchange.sendResponseHeaders(416, -1);
+            }
+        };
+        Path out = dir.resolve("file.tif");
+        Files.write(dir.resolve("file.tif.part"), new byte[DATA.length + 10]);
+
+        try (AsyncDownloader downloader = downloader()) {
+            try {
+                downloader.download(url(), out).get(10, TimeUnit.SECONDS);
+                fail("Rejected range should fail the attempt");
+            } catch (ExecutionException e) {
+                assertEquals(416, ((HttpStatusException) e.getCause()).getStatus());
+            }
+        }
+        assertFalse(Files.exists(dir.resolve("file.tif.part")));
+
+        // Retry starts from scratch
+        ranges.clear();
+        download(out);
+        assertEquals(Arrays.asList(""), ranges);
+        assertTrue(Arrays.equals(DATA, Files.readAllBytes(out)));
+    }
+
+    public void testStall() throws Exception {
+        // Sends part of the file, then nothing until the test ends
+        handler = exchange -> {
+            exchange.sendResponseHeaders(200, DATA.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(DATA, 0, 40000);
+            out.flush();
+            try {
+                stop.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        Path out = dir.resolve("file.tif");
+
+        try (AsyncDownloader downloader = downloader()) {
+            try {
+                downloader.download(url(), out).get(10, TimeUnit.SECONDS);
+                fail("Stalled transfer should time out");
+            } catch (ExecutionException e) {
+                assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof SocketTimeoutException);
+            }
+        }
+        assertFalse(Files.exists(out));
+        assertEquals(40000, Files.size(dir.resolve("file.tif.part")));
+
+        // Retry resumes where the stalled transfer stopped
+        handler = exchange -> send(exchange, start(exchange));
+        ranges.clear();
+        download(out);
+        assertEquals(Arrays.asList("bytes=40000-"), ranges);
+        assertTrue(Arrays.equals(DATA, Files.readAllBytes(out)));
+    }
+
+    public void testThrottle() throws Exception {
+        handler = exchange -> send(exchange, start(exchange));
+        Path out = dir.resolve("file.tif");
+
+        // Waits for bandwidth, about 650 ms per 16 KB chunk, are longer than the timeout and
+        // must not count as a stall
+        long start = System.nanoTime();
+        try (AsyncDownloader downloader = new AsyncDownloader(600, false, 1, 0, 10,
+                ConcurrencyLimiter.fixed(1), new BandwidthLimiter(25000), new Metrics())) {
+            assertEquals(out, downloader.download(url(), out).get(10, TimeUnit.SECONDS));
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        // First 25000 bytes come out of the full bucket
+        assertTrue("took " + seconds + " s", seconds > 2.5);
+        assertTrue(Arrays.equals(DATA, Files.readAllBytes(out)));
+    }
+
+    private void download(Path out) throws Exception {
+        try (AsyncDownloader downloader = downloader()) {
+            assertEquals(out, downloader.download(url(), out).get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * @return downloader with a short timeout that does not retry
+     */
+    private static AsyncDownloader downloader() {
+        return new AsyncDownloader(500, false, 1, 0, 10,
+                ConcurrencyLimiter.fixed(1), new BandwidthLimiter(0), new Metrics());
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/file.tif";
+    }
+
+    /**
+     * @return offset asked for by the Range header, 0 without one
+     */
+    private static int start(HttpExchange exchange) {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range == null) {
+            return 0;
+        }
+        return Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+    }
+
+    /**
+     * Send the file from an offset, as a partial response if a range was asked for.
+     */
+    private static void send(HttpExchange exchange, int start) throws IOException {
+        if (exchange.getRequestHeaders().getFirst("Range") == null) {
+            exchange.sendResponseHeaders(200, DATA.length);
+        } else {
+            exchange.getResponseHeaders().set("Content-Range",
+                    "bytes " + start + "-" + (DATA.length - 1) + "/" + DATA.length);
+            exchange.sendResponseHeaders(206, DATA.length - start);
+        }
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(DATA, start, DATA.length - start);
+        }
+    }
+
+}
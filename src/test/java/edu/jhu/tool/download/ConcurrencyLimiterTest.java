@@ -0,0 +1,71 @@
+package edu.jhu.tool.download;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+
+/**
+ * Unit test for the AIMD download concurrency limit.
+ */
+public class ConcurrencyLimiterTest extends TestCase {
+
+    public void testAdditiveIncrease() throws IOException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 2, 4);
+
+        complete(limiter, 2);
+        assertEquals(3, limiter.getLimit());
+
+        complete(limiter, 3);
+        assertEquals(4, limiter.getLimit());
+
+        complete(limiter, 4);
+        assertEquals(4, limiter.getLimit());
+    }
+
+    public void testMultiplicativeDecrease() throws IOException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 8, 8);
+
+        limiter.acquire();
+        limiter.acquire();
+        limiter.failed(new HttpStatusException(503));
+        limiter.failed(new HttpStatusException(429));
+        limiter.release();
+        limiter.release();
+        assertEquals(4, limiter.getLimit());
+
+        // Not a sign of congestion
+        limiter.failed(new HttpStatusException(404));
+        assertEquals(4, limiter.getLimit());
+
+        complete(limiter, 4);
+        assertEquals(5, limiter.getLimit());
+        limiter.failed(new IOException("Connection reset"));
+        assertEquals(2, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    public void testSustainedFailures() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 16, 16, 50);
+
+        // Burst from one overload
+        limiter.failed(new HttpStatusException(429));
+        limiter.failed(new HttpStatusException(429));
+        assertEquals(8, limiter.getLimit());
+
+        // Overload goes on and nothing succeeds
+        for (int expected : new int[] {4, 2, 1, 1}) {
+            Thread.sleep(80);
+            limiter.failed(new HttpStatusException(429));
+            assertEquals(expected, limiter.getLimit());
+        }
+    }
+
+    private void complete(ConcurrencyLimiter limiter, int transfers) throws IOException {
+        for (int i = 0; i < transfers; i++) {
+            limiter.acquire();
+            limiter.success(1024);
+            limiter.release();
+        }
+    }
+
+}
@@ -0,0 +1,21 @@
+package edu.jhu.tool.download;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for reading the Content-Range header.
+ */
+public class ContentRangeTest extends TestCase {
+
+    public void testStart() {
+        assertEquals(100, ContentRange.start("bytes 100-199/200"));
+        assertEquals(0, ContentRange.start("bytes 0-199/*"));
+        assertEquals(3000000000L, ContentRange.start("Bytes 3000000000-3000000099/3000000100"));
+
+        assertEquals(-1, ContentRange.start(null));
+        assertEquals(-1, ContentRange.start("bytes */200"));
+        assertEquals(-1, ContentRange.start("pages 1-2/3"));
+        assertEquals(-1, ContentRange.start("bytes x-199/200"));
+    }
+
+}
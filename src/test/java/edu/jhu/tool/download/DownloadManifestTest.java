@@ -0,0 +1,42 @@
+package edu.jhu.tool.download;
+
+import edu.jhu.tool.TempDirectory;
+import edu.jhu.tool.tiff.TiffValidator;
+import junit.framework.TestCase;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Unit test for the integrity status recorded in the download manifest.
+ */
+public class DownloadManifestTest extends TestCase {
+
+    private Path dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TempDirectory.create("manifest");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TempDirectory.delete(dir);
+    }
+
+    public void testChecksEveryTiffExtension() throws Exception {
+        // Little-endian header whose first IFD lies past the end of the file
+        byte[] truncated = {'I', 'I', 42, 0, 0, 1, 0, 0};
+        for (String name : new String[] {"a.tif", "b.tiff", "c.TIF", "d.TIFF", "notes.txt"}) {
+            Files.write(dir.resolve(name), truncated);
+        }
+
+        DownloadManifest manifest = DownloadManifest.load(dir);
+        manifest.refresh();
+        for (String name : new String[] {"a.tif", "b.tiff", "c.TIF", "d.TIFF"}) {
+            assertFalse(name, manifest.get(name).getStatus() == TiffValidator.Status.OK);
+        }
+        assertEquals(TiffValidator.Status.OK, manifest.get("notes.txt").getStatus());
+    }
+
+}
@@ -0,0 +1,54 @@
+package edu.jhu.tool.html;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit test for streaming link extraction.
+ */
+public class LinkScannerTest extends TestCase {
+
+    private static final String SELECTOR = "div#list-view-container > ol > li > div.filename-col > a";
+
+    public void testFolderPage() throws IOException {
+        String html = "<!DOCTYPE html><html><head><title>a < b</title>"
+                + "<script>var s = '<div id=\"list-view-container\"><ol><li><div class=\"filename-col\">"
+                + "<a href=\"script\">';</script></head><body>"
+                + "<!-- <a href=\"comment\"> --->"
+                + "<div id=list-view-container><ol>"
+                + "<li><div class=\"filename-col wide\"><img src=icon.png><a href=\"/one.tif?dl=0&amp;x=1\">one</a></div>"
+                + "<li><div class='filename-col'><a class=link HREF='/two.tif?dl=0'>two</a></div>"
+                + "<li><div class=\"other\"><a href=\"/skip\">skip</a></div>"
+                + "<li><div class=\"filename-col\"><span><a href=\"/nested\">nested</a></span></div>"
+                + "</ol></div>"
+                + "<div id=\"elsewhere\"><ol><li><div class=\"filename-col\"><a href=\"/outside\"></a></div></li></ol></div>"
+                + "</body></html>";
+
+        assertEquals(Arrays.asList("/one.tif?dl=0&x=1", "/two.tif?dl=0"), scan(html, SELECTOR));
+        assertEquals(Arrays.asList("/one.tif?dl=0&x=1", "/two.tif?dl=0", "/nested"),
+                scan(html, "#list-view-container li .filename-col a"));
+    }
+
+    public void testUnsupportedSelector() {
+        for (String selector : new String[] {"a[href]", "li:first-child a", "div, a", "> a", "div >"}) {
+            try {
+                ChainSelector.parse(selector);
+                fail(selector);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    private List<String> scan(String html, String selector) throws IOException {
+        List<String> links = new ArrayList<>();
+        LinkScanner.scan(new StringReader(html), ChainSelector.parse(selector), "href", links::add);
+        return links;
+    }
+
+}
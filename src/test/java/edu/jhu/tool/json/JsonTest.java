@@ -0,0 +1,17 @@
+package edu.jhu.tool.json;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for JSON string escaping.
+ */
+public class JsonTest extends TestCase {
+
+    public void testString() {
+        assertEquals("\"Ha2_0001.tif\"", Json.string("Ha2_0001.tif"));
+        assertEquals("\"say \\\"hi\\\" in C:\\\\scans\"", Json.string("say \"hi\" in C:\\scans"));
+        assertEquals("\"a\\u000ab\\u000dc\\u0009d\"", Json.string("a\nb\rc\td"));
+        assertEquals("\"\\u0000\\u001f \u007f\u00e9\"", Json.string("\u0000\u001f \u007f\u00e9"));
+    }
+
+}
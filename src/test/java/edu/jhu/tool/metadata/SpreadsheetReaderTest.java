@@ -0,0 +1,74 @@
+package edu.jhu.tool.metadata;
+
+import junit.framework.TestCase;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit test for streaming XLS and XLSX rows.
+ */
+public class SpreadsheetReaderTest extends TestCase {
+
+    public void testXls() throws IOException {
+        assertRows(new HSSFWorkbook(), ".xls", 3);
+    }
+
+    public void testXlsx() throws IOException {
+        // POI does not record the used range when writing .xlsx
+        assertRows(new XSSFWorkbook(), ".xlsx", -1);
+    }
+
+    private void assertRows(Workbook wb, String extension, int expectedColumns) throws IOException {
+        Sheet sheet = wb.createSheet("first");
+        Row header = sheet.createRow(0);
+        header.createCell(0).setCellValue("File name");
+        header.createCell(1).setCellValue("Page numbers");
+        header.createCell(2).setCellValue("Sort order");
+
+        Row row = sheet.createRow(1);
+        row.createCell(0).setCellValue("Ha2_0001");
+        row.createCell(2).setCellValue(12);
+
+        wb.createSheet("second").createRow(0).createCell(0).setCellValue("ignored");
+
+        Path path = Files.createTempFile("sheet", extension);
+        try {
+            try (OutputStream out = Files.newOutputStream(path)) {
+                wb.write(out);
+            }
+
+            List<String> rows = new ArrayList<>();
+            int[] columns = {-1};
+            SpreadsheetReader.read(path, new RowHandler() {
+                @Override
+                public void columns(int count) {
+                    columns[0] = count;
+                }
+
+                @Override
+                public void row(int index, String[] cells) {
+                    rows.add(index + ":" + Arrays.toString(cells));
+                }
+            });
+
+            assertEquals(expectedColumns, columns[0]);
+            assertEquals(Arrays.asList(
+                    "0:[File name, Page numbers, Sort order]",
+                    "1:[Ha2_0001, null, 12]"), rows);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+}
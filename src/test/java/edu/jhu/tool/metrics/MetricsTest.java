@@ -0,0 +1,49 @@
+package edu.jhu.tool.metrics;
+
+import junit.framework.TestCase;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit test for the Prometheus metrics output.
+ */
+public class MetricsTest extends TestCase {
+
+    public void testPrometheus() {
+        Metrics metrics = new Metrics();
+        metrics.counter("download_failures_total", "cause", "http_503").add(2);
+        metrics.counter("download_failures_total", "cause", "say \"hi\"").increment();
+        metrics.gauge("stage_queue_depth", () -> 3, "stage", "split");
+
+        Histogram h = metrics.histogram("page_seconds", "method", "java");
+        h.record(TimeUnit.MILLISECONDS.toNanos(3));
+        h.record(TimeUnit.MILLISECONDS.toNanos(40));
+        h.record(TimeUnit.MINUTES.toNanos(20));
+
+        String text = metrics.toPrometheus();
+        assertTrue(text.contains("# TYPE download_failures_total counter\n"));
+        assertEquals(text.indexOf("# TYPE download_failures_total"), text.lastIndexOf("# TYPE download_failures_total"));
+        assertTrue(text.contains("download_failures_total{cause=\"http_503\"} 2\n"));
+        assertTrue(text.contains("download_failures_total{cause=\"say \\\"hi\\\"\"} 1\n"));
+        assertTrue(text.contains("stage_queue_depth{stage=\"split\"} 3\n"));
+        assertTrue(text.contains("page_seconds_bucket{method=\"java\",le=\"0.002\"} 0\n"));
+        assertTrue(text.contains("page_seconds_bucket{method=\"java\",le=\"0.005\"} 1\n"));
+        assertTrue(text.contains("page_seconds_bucket{method=\"java\",le=\"0.05\"} 2\n"));
+        assertTrue(text.contains("page_seconds_bucket{method=\"java\",le=\"600\"} 2\n"));
+        assertTrue(text.contains("page_seconds_bucket{method=\"java\",le=\"+Inf\"} 3\n"));
+        assertTrue(text.contains("page_seconds_count{method=\"java\"} 3\n"));
+
+        assertEquals(0.05, h.getQuantile(0.5), 1e-9);
+        assertEquals(1200.0, h.getQuantile(0.99), 1e-6);
+
+        assertTrue(metrics.toJson(Collections.<String, Double>emptyMap())
+                .contains("\"download_failures_total{cause=\\\"http_503\\\"}\": 2"));
+
+        // Label values may hold any character
+        metrics.counter("watch_errors_total", "cause", "tab\there").increment();
+        assertTrue(metrics.toJson(Collections.<String, Double>emptyMap())
+                .contains("\"watch_errors_total{cause=\\\"tab\\u0009here\\\"}\": 1"));
+    }
+
+}
@@ -0,0 +1,58 @@
+package edu.jhu.tool.naming;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit test for the compiled naming rules against the original naming.
+ */
+public class NamingRulesTest extends TestCase {
+
+    private final NamingRules rules = new NamingRules("Ha2",
+            "front outside cover=binding frontcover;back outside cover=binding backcover;"
+                    + "back inside cover=endmatter pastedown;inside front cover=frontmatter pastedown;"
+                    + "spine=binding spine;head=misc head;fore-edge=misc foreedge;tail=misc tail",
+            "back=endmatter;front=frontmatter;endleaf=flyleaf",
+            "fol.", "(blank)");
+
+    public void testName() {
+        assertEquals("Ha2.001r.tif", rules.name("1r"));
+        assertEquals("Ha2.012v.tif", rules.name("fol. 12v"));
+        assertEquals("Ha2.012v.tif", rules.name("Fol.  0012v"));
+        assertEquals("Ha2.123r.tif", rules.name("123r"));
+        assertEquals("Ha2.1234r.tif", rules.name("1234r"));
+        assertEquals("Ha2.000v.tif", rules.name("0v"));
+        assertEquals("Ha2.045r.tif", rules.name("45r (blank)"));
+        assertEquals("Ha2.045r.(Blank).tif", rules.name("45r (Blank)"));
+        assertEquals("Ha2.binding.frontcover.tif", rules.name("front outside cover"));
+        assertEquals("Ha2.endmatter.pastedown.tif", rules.name("back inside cover"));
+        assertEquals("Ha2.misc.foreedge.tif", rules.name("fore-edge"));
+        assertEquals("Ha2.frontmatter.flyleaf.001r.tif", rules.name("front endleaf 1r"));
+        assertEquals("Ha2.12R.tif", rules.name("12R"));
+        assertEquals("Ha2.r.tif", rules.name("r"));
+        assertEquals("Ha2..tif", rules.name(""));
+        assertEquals("Ha2..012r.tif", rules.name(" 12r"));
+        assertEquals("Ha2.tif", rules.name(" \t"));
+        assertEquals("Ha2.012r.tif", rules.name("12r "));
+    }
+
+    public void testCollisions() {
+        Map<String, List<String>> names = new LinkedHashMap<>();
+        names.put("Ha2_0001", Arrays.asList("Ha2.001r.tif", "Ha2.001v.tif"));
+        names.put("Ha2_0002", Arrays.asList("Ha2.002r.tif", "Ha2.001v.tif"));
+        names.put("Ha2_0003", Collections.singletonList("Ha2.003r.tif"));
+
+        Map<String, List<String>> collisions = NamingRules.collisions(names);
+        assertEquals(Collections.singleton("Ha2.001v.tif"), collisions.keySet());
+        assertEquals(Arrays.asList("Ha2_0001", "Ha2_0002"), collisions.get("Ha2.001v.tif"));
+
+        names.remove("Ha2_0002");
+        assertTrue(NamingRules.collisions(names).isEmpty());
+    }
+
+}
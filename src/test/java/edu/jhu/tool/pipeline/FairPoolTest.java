@@ -0,0 +1,73 @@
+package edu.jhu.tool.pipeline;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Unit test for round-robin lanes of the shared pool.
+ */
+public class FairPoolTest extends TestCase {
+
+    public void testTurns() throws InterruptedException {
+        FairPool pool = new FairPool("test", 1, null);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+        // Hold the only worker so everything below queues up
+        pool.execute("block", () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        started.await();
+
+        for (int i = 1; i <= 4; i++) {
+            String task = "a" + i;
+            pool.execute("a", () -> order.add(task));
+        }
+        pool.execute("b", () -> order.add("b1"));
+        pool.execute("b", () -> order.add("b2"));
+        assertEquals(6, pool.getQueueDepth());
+        assertEquals(2, pool.getQueueDepth("b"));
+
+        release.countDown();
+        pool.shutdown();
+        assertEquals(Arrays.asList("a1", "b1", "a2", "b2", "a3", "a4"), order);
+    }
+
+    public void testStageLanes() throws InterruptedException {
+        FairPool pool = new FairPool("split", 2, null);
+        Stage one = new Stage(pool, "one", 1, null);
+        Stage two = new Stage(pool, "two", 1, null);
+        CountDownLatch release = new CountDownLatch(1);
+
+        two.submit("slow", release::await);
+        for (int i = 0; i < 10; i++) {
+            one.submit("page " + i, () -> {});
+        }
+        one.submit("bad", () -> {
+            throw new IllegalStateException("broken");
+        });
+
+        // Finishes while the other lane still has a task running
+        one.finish();
+        assertEquals(10, one.getCompleted());
+        assertEquals(Collections.singletonList("[split] bad: broken"), one.getErrors());
+        assertEquals(0, two.getCompleted());
+
+        release.countDown();
+        two.finish();
+        assertEquals(1, two.getCompleted());
+        pool.shutdown();
+    }
+
+}
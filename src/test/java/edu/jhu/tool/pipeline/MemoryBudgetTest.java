@@ -0,0 +1,56 @@
+package edu.jhu.tool.pipeline;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit test for memory admission of splits.
+ */
+public class MemoryBudgetTest extends TestCase {
+
+    public void testAdmission() throws InterruptedException {
+        MemoryBudget budget = new MemoryBudget(100);
+        long a = budget.acquire(40);
+        long b = budget.acquire(40);
+        assertEquals(80, budget.getUsed());
+        assertEquals(0, budget.acquire(0));
+
+        CountDownLatch large = new CountDownLatch(1);
+        CountDownLatch small = new CountDownLatch(1);
+        Thread giant = new Thread(() -> {
+            try {
+                budget.release(budget.acquire(500));
+                large.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        giant.start();
+        while (budget.getWaiting() == 0) {
+            Thread.sleep(1);
+        }
+
+        // Would fit, but must not overtake the giant waiting in front of it
+        Thread follower = new Thread(() -> {
+            try {
+                budget.release(budget.acquire(10));
+                small.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        follower.start();
+        assertFalse(small.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(80, budget.getUsed());
+
+        budget.release(a);
+        assertFalse(large.await(100, TimeUnit.MILLISECONDS));
+        budget.release(b);
+        assertTrue(large.await(5, TimeUnit.SECONDS));
+        assertTrue(small.await(5, TimeUnit.SECONDS));
+        assertEquals(0, budget.getUsed());
+    }
+
+}
@@ -0,0 +1,71 @@
+package edu.jhu.tool.split;
+
+import edu.jhu.tool.TempDirectory;
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Unit test for gutter detection.
+ */
+public class GutterFinderTest extends TestCase {
+
+    private Path dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TempDirectory.create("gutter-finder");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TempDirectory.delete(dir);
+    }
+
+    public void testValley() {
+        assertEquals(3, GutterFinder.valley(new double[] {200, 200, 190, 100, 190, 200, 200}));
+        assertEquals(-1, GutterFinder.valley(new double[] {200, 200, 199, 198, 199, 200, 200}));
+        assertEquals(-1, GutterFinder.valley(new double[] {100, 200, 200, 200, 200, 200, 200}));
+    }
+
+    public void testFind() throws Exception {
+        Path spread = dir.resolve("spread.tif");
+        assertTrue(ImageIO.write(image(1000, 600, 580), "tiff", spread.toFile()));
+        Path flat = dir.resolve("flat.tif");
+        assertTrue(ImageIO.write(image(1000, 600, -1), "tiff", flat.toFile()));
+
+        GutterFinder finder = GutterFinder.load(dir, 0.02);
+        Cut cut = finder.find(spread, "a");
+        assertNotNull(cut);
+        assertTrue(cut.toString(), Math.abs(cut.getRectoWidth() - 600) <= 10);
+        assertTrue(cut.toString(), Math.abs(cut.getVersoX() - 560) <= 10);
+        assertNull(finder.find(flat, "b"));
+        finder.save();
+
+        Files.delete(spread);
+        Cut again = GutterFinder.load(dir, 0.02).find(spread, "a");
+        assertEquals(cut.toString(), again.toString());
+    }
+
+    /**
+     * @param gutter column of a dark fold, -1 for none
+     */
+    private static BufferedImage image(int width, int height, int gutter) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(230, 225, 210));
+        g.fillRect(0, 0, width, height);
+        if (gutter >= 0) {
+            g.setColor(new Color(60, 55, 50));
+            g.fillRect(gutter - 4, 0, 8, height);
+        }
+        g.dispose();
+        return image;
+    }
+
+}
@@ -0,0 +1,113 @@
+package edu.jhu.tool.split;
+
+import edu.jhu.tool.TempDirectory;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Unit test for batched ImageMagick splits.
+ */
+public class ImageMagickBackendTest extends TestCase {
+
+    /** Stands in for convert: writes every output, fails on "bad" and hangs on "slow". */
+    private static final String FAKE_CONVERT = "#!/bin/sh\n"
+            + "prev=\n"
+            + "for a in \"$@\"; do\n"
+            + "  case \"$a\" in *bad*) exit 1;; *slow*) sleep 30;; esac\n"
+            + "  if [ \"$prev\" = \"-write\" ]; then : > \"$a\"; fi\n"
+            + "  prev=$a\n"
+            + "done\n"
+            + ": > \"$prev\"\n";
+
+    private Path dir;
+
+    @Override
+    protected void setUp() throws IOException {
+        dir = TempDirectory.create("imagemagick backend");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        TempDirectory.delete(dir);
+    }
+
+    public void testCommand() {
+        ImageMagickBackend backend = new ImageMagickBackend("convert", 0.55, 8, 1000);
+        Spread a = spread("a");
+        Spread b = spread("b");
+
+        List<String> command = backend.command(Arrays.asList(a, b));
+        assertEquals(Arrays.asList("convert",
+                a.getOriginal().toString(), "(", "+clone", "-gravity", "West", "-crop", "55%x100%+0+0", "+repage",
+                "-write", a.getRecto().toString(), "+delete", ")",
+                "-gravity", "East", "-crop", "55%x100%+0+0", "+repage", "-write", a.getVerso().toString(), "+delete",
+                b.getOriginal().toString(), "(", "+clone", "-gravity", "West", "-crop", "55%x100%+0+0", "+repage",
+                "-write", b.getRecto().toString(), "+delete", ")",
+                "-gravity", "East", "-crop", "55%x100%+0+0", "+repage", b.getVerso().toString()), command);
+    }
+
+    public void testBatches() throws IOException {
+        if (!new File("/bin/sh").canExecute()) {
+            return;
+        }
+        ImageMagickBackend backend = new ImageMagickBackend(fakeConvert(), 0.55, 2, 500);
+
+        List<Spread> good = Arrays.asList(spread("a"), spread("b"), spread("c"));
+        assertEquals(Collections.<Spread>emptyList(), backend.split(good));
+        assertEquals(2, backend.getProcesses());
+        for (Spread spread : good) {
+            assertTrue(Files.exists(spread.getRecto()));
+            assertTrue(Files.exists(spread.getVerso()));
+        }
+
+        // The whole batch fails, then only the bad spread
+        Spread bad = spread("bad");
+        Spread d = spread("d");
+        assertEquals(Collections.singletonList(bad), backend.split(Arrays.asList(bad, d)));
+        assertEquals(5, backend.getProcesses());
+        assertTrue(Files.exists(d.getVerso()));
+        assertFalse(Files.exists(bad.getRecto()));
+
+        long start = System.nanoTime();
+        Spread slow = spread("slow");
+        assertEquals(Collections.singletonList(slow), backend.split(Collections.singletonList(slow)));
+        assertTrue(System.nanoTime() - start < 10_000_000_000L);
+    }
+
+    public void testLinkedOutput() throws IOException {
+        if (!new File("/bin/sh").canExecute()) {
+            return;
+        }
+        ImageMagickBackend backend = new ImageMagickBackend(fakeConvert(), 0.55, 2, 500);
+
+        // Output left by an earlier linked copy of a download
+        Spread a = spread("a");
+        Path download = Files.write(dir.resolve("download.tif"), new byte[] {1, 2, 3});
+        Files.createLink(a.getRecto(), download);
+
+        assertEquals(Collections.<Spread>emptyList(), backend.split(Collections.singletonList(a)));
+        assertEquals(0, Files.size(a.getRecto()));
+        assertEquals(3, Files.size(download));
+    }
+
+    private Spread spread(String name) {
+        return new Spread(dir.resolve(name + " spread.tif"), dir.resolve(name + " recto.tif"),
+                dir.resolve(name + " verso.tif"));
+    }
+
+    private String fakeConvert() throws IOException {
+        Path script = dir.resolve("convert");
+        Files.write(script, FAKE_CONVERT.getBytes(StandardCharsets.UTF_8));
+        assertTrue(script.toFile().setExecutable(true));
+        return script.toString();
+    }
+
+}
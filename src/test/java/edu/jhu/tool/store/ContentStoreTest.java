@@ -0,0 +1,60 @@
+package edu.jhu.tool.store;
+
+import edu.jhu.tool.TempDirectory;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Unit test for the content-addressed store.
+ */
+public class ContentStoreTest extends TestCase {
+
+    private Path dir;
+
+    @Override
+    protected void setUp() throws IOException {
+        dir = TempDirectory.create("store");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        TempDirectory.delete(dir);
+    }
+
+    public void testDuplicates() throws IOException {
+        ContentStore store = new ContentStore(dir);
+        Path a = write("a.tif", "spread");
+        Path b = write("b.tif", "spread");
+
+        assertEquals(0, store.put(a, "abc123"));
+        assertTrue(store.contains("abc123"));
+        assertTrue(Files.isSameFile(a, store.path("abc123")));
+        assertEquals(dir.resolve(".store/ab/abc123"), store.path("abc123"));
+
+        assertEquals(6, store.put(b, "abc123"));
+        assertTrue(Files.isSameFile(a, b));
+        assertEquals(0, store.put(b, "abc123"));
+
+        Path c = dir.resolve("c.tif");
+        assertFalse(store.get("def456", c));
+        assertFalse(Files.exists(c));
+        assertTrue(store.get("abc123", c));
+        assertTrue(Files.isSameFile(a, c));
+        assertEquals("spread", new String(Files.readAllBytes(c), StandardCharsets.UTF_8));
+
+        // An older file is replaced, and no temporary link is left behind
+        Path d = write("d.tif", "older");
+        assertTrue(store.get("abc123", d));
+        assertTrue(Files.isSameFile(a, d));
+        assertFalse(Files.exists(dir.resolve("d.tif.link")));
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(dir.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
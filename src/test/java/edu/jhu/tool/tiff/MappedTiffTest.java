@@ -0,0 +1,129 @@
+package edu.jhu.tool.tiff;
+
+import edu.jhu.tool.TempDirectory;
+import junit.framework.TestCase;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Unit test for lossless crops from a mapped TIFF.
+ */
+public class MappedTiffTest extends TestCase {
+
+    private Path dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TempDirectory.create("mapped-tiff");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TempDirectory.delete(dir);
+    }
+
+    public void testCropRgb() throws IOException {
+        assertCrop(BufferedImage.TYPE_3BYTE_BGR, 301, 117);
+    }
+
+    public void testCropGray() throws IOException {
+        assertCrop(BufferedImage.TYPE_BYTE_GRAY, 250, 90);
+    }
+
+    public void testCropOverLink() throws IOException {
+        Path src = dir.resolve("src.tif");
+        write(image(BufferedImage.TYPE_BYTE_GRAY, 64, 32), src, null);
+        byte[] original = Files.readAllBytes(src);
+
+        // Output left by an earlier linked copy of the source
+        Path out = dir.resolve("out.tif");
+        Files.createLink(out, src);
+
+        try (MappedTiff tiff = MappedTiff.open(src)) {
+            tiff.crop(0, 20, out);
+        }
+        assertTrue(Arrays.equals(original, Files.readAllBytes(src)));
+        assertEquals(20, ImageIO.read(out.toFile()).getWidth());
+    }
+
+    public void testCompressedIsNotCroppable() throws IOException {
+        Path src = dir.resolve("lzw.tif");
+        write(image(BufferedImage.TYPE_3BYTE_BGR, 64, 32), src, "LZW");
+
+        try (MappedTiff tiff = MappedTiff.open(src)) {
+            assertFalse(tiff.isCroppable());
+        }
+    }
+
+    public void testRejectsNonTiff() throws IOException {
+        Path src = dir.resolve("not.tif");
+        Files.write(src, "not a tiff".getBytes("UTF-8"));
+
+        try {
+            MappedTiff.open(src).close();
+            fail("Expected TiffFormatException");
+        } catch (TiffFormatException e) {
+            // expected
+        }
+    }
+
+    private void assertCrop(int type, int width, int height) throws IOException {
+        BufferedImage source = image(type, width, height);
+        Path src = dir.resolve("src.tif");
+        Path out = dir.resolve("out.tif");
+        write(source, src, null);
+
+        int x = width - 166;
+        try (MappedTiff tiff = MappedTiff.open(src)) {
+            assertTrue(tiff.isCroppable());
+            tiff.crop(x, 166, out);
+        }
+
+        BufferedImage crop = ImageIO.read(out.toFile());
+        assertEquals(166, crop.getWidth());
+        assertEquals(height, crop.getHeight());
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < 166; col++) {
+                assertEquals(source.getRGB(x + col, row), crop.getRGB(col, row));
+            }
+        }
+    }
+
+    private BufferedImage image(int type, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Random random = new Random(width * 31L + height);
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                image.setRGB(col, row, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    private void write(BufferedImage image, Path path, String compression) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("tiff").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (compression != null) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionType(compression);
+        }
+
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(path.toFile())) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+}
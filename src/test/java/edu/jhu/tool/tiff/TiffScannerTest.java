@@ -0,0 +1,61 @@
+package edu.jhu.tool.tiff;
+
+import edu.jhu.tool.TempDirectory;
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit test for the parallel TIFF scanner.
+ */
+public class TiffScannerTest extends TestCase {
+
+    private Path dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TempDirectory.create("tiff-scanner");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TempDirectory.delete(dir);
+    }
+
+    public void testScan() throws IOException {
+        Path good = dir.resolve("good.tif");
+        assertTrue(ImageIO.write(new BufferedImage(64, 48, BufferedImage.TYPE_3BYTE_BGR), "tiff", good.toFile()));
+        byte[] bytes = Files.readAllBytes(good);
+
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            files.add(Files.write(dir.resolve("copy" + i + ".tif"), bytes));
+        }
+        Path truncated = Files.write(dir.resolve("truncated.tif"), Arrays.copyOf(bytes, bytes.length / 2));
+        Path garbage = Files.write(dir.resolve("garbage.tif"), "not a tiff".getBytes("UTF-8"));
+        files.add(7, truncated);
+        files.add(garbage);
+
+        TiffScanner.Report report = TiffScanner.scan(files, 3);
+        for (int i = 0; i < files.size(); i++) {
+            TiffValidator.Status expected = files.get(i) == truncated ? TiffValidator.Status.TRUNCATED
+                    : files.get(i) == garbage ? TiffValidator.Status.CORRUPT : TiffValidator.Status.OK;
+            assertEquals(files.get(i).toString(), expected, report.getResult(i).getStatus());
+        }
+        assertEquals(Integer.valueOf(20), report.counts().get(TiffValidator.Status.OK));
+
+        String json = report.toJson();
+        assertTrue(json.contains("\"files\": 22,"));
+        assertTrue(json.contains("\"status\": {\"OK\": 20, \"TRUNCATED\": 1, \"CORRUPT\": 1}"));
+        assertTrue(json.contains("{\"path\": \"" + truncated + "\", \"size\": " + (bytes.length / 2)
+                + ", \"status\": \"TRUNCATED\""));
+    }
+
+}
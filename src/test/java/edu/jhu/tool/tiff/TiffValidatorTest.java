@@ -0,0 +1,125 @@
+package edu.jhu.tool.tiff;
+
+import edu.jhu.tool.TempDirectory;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Unit test for structural checks of large and BigTIFF files.
+ */
+public class TiffValidatorTest extends TestCase {
+
+    /** Past what a single mapping or a signed int offset can reach. */
+    private static final long PAST_2_GB = 2300L * 1024 * 1024;
+    /** Past what a classic TIFF offset can reach. */
+    private static final long PAST_4_GB = 5L * 1024 * 1024 * 1024;
+
+    private static final int DATA_LENGTH = 16 * 16 * 3;
+
+    private Path dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TempDirectory.create("tiff-validator");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TempDirectory.delete(dir);
+    }
+
+    public void testOver2Gb() throws IOException {
+        Path file = write("large.tif", classic(PAST_2_GB), PAST_2_GB, DATA_LENGTH);
+        TiffValidator.Result result = TiffValidator.validate(file);
+        assertEquals(result.getMessage(), TiffValidator.Status.OK, result.getStatus());
+        assertEquals(1, result.getDirectories());
+
+        file = write("large-truncated.tif", classic(PAST_2_GB), PAST_2_GB, DATA_LENGTH / 2);
+        assertEquals(TiffValidator.Status.TRUNCATED, TiffValidator.validate(file).getStatus());
+    }
+
+    public void testBigTiff() throws IOException {
+        Path file = write("big.tif", bigTiff(64), 64, DATA_LENGTH);
+        TiffValidator.Result result = TiffValidator.validate(file);
+        assertEquals(result.getMessage(), TiffValidator.Status.OK, result.getStatus());
+
+        file = write("big-over-4gb.tif", bigTiff(PAST_4_GB), PAST_4_GB, DATA_LENGTH);
+        result = TiffValidator.validate(file);
+        assertEquals(result.getMessage(), TiffValidator.Status.OK, result.getStatus());
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            TiffDirectory directory = TiffDirectory.readFirst(channel);
+            assertTrue(directory.isBigTiff());
+            assertEquals(16, directory.getWidth());
+            assertEquals(PAST_4_GB, directory.getLong(TiffDirectory.TAG_STRIP_OFFSETS, 0));
+            assertNull(directory.readNext());
+        }
+
+        file = write("big-truncated.tif", bigTiff(PAST_4_GB), PAST_4_GB, DATA_LENGTH - 1);
+        assertEquals(TiffValidator.Status.TRUNCATED, TiffValidator.validate(file).getStatus());
+    }
+
+    /**
+     * Write a TIFF header and IFD, and the last bytes of its pixel data far into the file,
+     * leaving a hole in between so the test takes no disk space.
+     */
+    private Path write(String name, ByteBuffer header, long dataOffset, int dataLength) throws IOException {
+        Path file = dir.resolve(name);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            channel.write(header, 0);
+            channel.write(ByteBuffer.allocate(1), dataOffset + dataLength - 1);
+        }
+        return file;
+    }
+
+    /**
+     * @return header and IFD of a 16x16 RGB image in one strip at the given offset
+     */
+    private static ByteBuffer classic(long dataOffset) {
+        ByteBuffer b = ByteBuffer.allocate(8 + 2 + 12 * 5 + 4).order(ByteOrder.LITTLE_ENDIAN);
+        b.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(8);
+        b.putShort((short) 5);
+        entry(b, TiffDirectory.TAG_IMAGE_WIDTH, 16);
+        entry(b, TiffDirectory.TAG_IMAGE_LENGTH, 16);
+        entry(b, TiffDirectory.TAG_STRIP_OFFSETS, dataOffset);
+        entry(b, TiffDirectory.TAG_SAMPLES_PER_PIXEL, 3);
+        entry(b, TiffDirectory.TAG_STRIP_BYTE_COUNTS, DATA_LENGTH);
+        b.putInt(0);
+        b.flip();
+        return b;
+    }
+
+    /**
+     * @return BigTIFF header and IFD of a 16x16 RGB image in one strip at the given offset
+     */
+    private static ByteBuffer bigTiff(long dataOffset) {
+        ByteBuffer b = ByteBuffer.allocate(16 + 8 + 20 * 5 + 8).order(ByteOrder.BIG_ENDIAN);
+        b.put((byte) 'M').put((byte) 'M').putShort((short) 43).putShort((short) 8).putShort((short) 0).putLong(16);
+        b.putLong(5);
+        bigEntry(b, TiffDirectory.TAG_IMAGE_WIDTH, 16);
+        bigEntry(b, TiffDirectory.TAG_IMAGE_LENGTH, 16);
+        bigEntry(b, TiffDirectory.TAG_STRIP_OFFSETS, dataOffset);
+        bigEntry(b, TiffDirectory.TAG_SAMPLES_PER_PIXEL, 3);
+        bigEntry(b, TiffDirectory.TAG_STRIP_BYTE_COUNTS, DATA_LENGTH);
+        b.putLong(0);
+        b.flip();
+        return b;
+    }
+
+    /** A single LONG value. */
+    private static void entry(ByteBuffer b, int tag, long value) {
+        b.putShort((short) tag).putShort((short) TiffDirectory.TYPE_LONG).putInt(1).putInt((int) value);
+    }
+
+    /** A single LONG8 value. */
+    private static void bigEntry(ByteBuffer b, int tag, long value) {
+        b.putShort((short) tag).putShort((short) TiffDirectory.TYPE_LONG8).putLong(1).putLong(value);
+    }
+
+}
@@ -0,0 +1,65 @@
+package edu.jhu.tool.tiles;
+
+import edu.jhu.tool.TempDirectory;
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Unit test for Deep Zoom and pyramidal TIFF tiling.
+ */
+public class TilerTest extends TestCase {
+
+    public void testDeepZoom() throws IOException {
+        Path dir = TempDirectory.create("tiles");
+        try {
+            Tiler tiler = new Tiler("dzi", dir, 64, 2);
+            tiler.write(new BufferedImage(150, 70, BufferedImage.TYPE_3BYTE_BGR), dir.resolve("Ha2.001r.tif"));
+            tiler.close();
+
+            String dzi = new String(Files.readAllBytes(dir.resolve("Ha2.001r.dzi")), StandardCharsets.UTF_8);
+            assertTrue(dzi.contains("TileSize=\"64\""));
+            assertTrue(dzi.contains("<Size Width=\"150\" Height=\"70\"/>"));
+
+            // 150 px needs levels 0 (1 px) to 8 (full size)
+            assertEquals(8, Tiler.maxLevel(150, 70));
+            Path files = dir.resolve("Ha2.001r_files");
+            assertTrue(Files.exists(files.resolve("8/2_1.jpg")));
+            assertFalse(Files.exists(files.resolve("8/3_0.jpg")));
+            assertEquals(22, ImageIO.read(files.resolve("8/2_1.jpg").toFile()).getWidth());
+            assertTrue(Files.exists(files.resolve("7/1_0.jpg")));
+            assertEquals(1, ImageIO.read(files.resolve("0/0_0.jpg").toFile()).getWidth());
+        } finally {
+            TempDirectory.delete(dir);
+        }
+    }
+
+    public void testPyramid() throws IOException {
+        Path dir = TempDirectory.create("tiles");
+        try {
+            Tiler tiler = new Tiler("tiff", dir, 64, 1);
+            tiler.write(new BufferedImage(300, 100, BufferedImage.TYPE_BYTE_GRAY), dir.resolve("Ha2.001r.tif"));
+
+            ImageReader reader = ImageIO.getImageReadersByFormatName("tiff").next();
+            try (ImageInputStream in = ImageIO.createImageInputStream(dir.resolve("Ha2.001r.tif").toFile())) {
+                reader.setInput(in);
+                assertEquals(4, reader.getNumImages(true));
+                assertEquals(300, reader.getWidth(0));
+                assertEquals(64, reader.getTileWidth(0));
+                assertEquals(38, reader.getWidth(3));
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            TempDirectory.delete(dir);
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+package edu.jhu.tool.watch;
+
+import edu.jhu.tool.TempDirectory;
+import junit.framework.TestCase;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+/**
+ * Unit test for the settling directory watcher.
+ */
+public class DirectoryWatcherTest extends TestCase {
+
+    private Path dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TempDirectory.create("directory-watcher");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TempDirectory.delete(dir);
+    }
+
+    public void testTake() throws Exception {
+        try (DirectoryWatcher watcher = new DirectoryWatcher(300, dir)) {
+            Path image = dir.resolve("a.tif");
+            Thread writer = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 5; i++) {
+                        Files.write(image, new byte[(i + 1) * 1000]);
+                        Thread.sleep(100);
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            Files.write(dir.resolve(".manifest"), new byte[1]);
+            Files.write(dir.resolve("b.tif.part"), new byte[1]);
+            Files.write(dir.resolve("c.tmp"), new byte[1]);
+            writer.start();
+
+            DirectoryWatcher.Changes changes = watcher.take();
+            writer.join();
+            assertEquals(Collections.singleton(image), changes.getFiles());
+            assertEquals(5000, Files.size(image));
+            assertEquals(0, watcher.getPending());
+
+            Thread closer = new Thread(() -> {
+                try {
+                    Thread.sleep(200);
+                    watcher.close();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            closer.start();
+            assertNull(watcher.take());
+            closer.join();
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+package edu.jhu.tool.watch;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.IOUtils;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Unit test for the status endpoint.
+ */
+public class StatusServerTest extends TestCase {
+
+    public void testStatus() throws Exception {
+        WatchStatus status = new WatchStatus(() -> 3);
+        try (StatusServer server = new StatusServer(0, status::toJson, () -> "pages_total 2\n")) {
+            String base = "http://127.0.0.1:" + server.getPort();
+            status.setState(WatchStatus.IDLE);
+            status.checked("a.tif", "truncated. Strip 4 ends past the end of the file.");
+            status.passFinished(1, 2, 0.5);
+
+            String json = get(base + "/status");
+            assertTrue(json, json.contains("\"state\": \"idle\""));
+            assertTrue(json, json.contains("\"pending\": 3"));
+            assertTrue(json, json.contains("\"pages\": 2"));
+            assertTrue(json, json.contains("\"rejected\": {\"a.tif\": \"truncated. Strip 4 ends past the end of the file.\"}"));
+
+            status.checked("a.tif", null);
+            status.setState(WatchStatus.STOPPING);
+            status.setState(WatchStatus.IDLE);
+            json = get(base + "/status");
+            assertTrue(json, json.contains("\"state\": \"stopping\""));
+            assertTrue(json, json.contains("\"rejected\": {}"));
+
+            status.error("Cannot read [C:\\scans\\a.tif]\r\n\tat line 1");
+            json = get(base + "/status");
+            assertTrue(json, json.contains("\"last_error\": \"Cannot read [C:\\\\scans\\\\a.tif]\\u000d\\u000a\\u0009at line 1\""));
+
+            assertEquals("pages_total 2\n", get(base + "/metrics"));
+
+            HttpURLConnection post = (HttpURLConnection) new URL(base + "/status").openConnection();
+            post.setRequestMethod("POST");
+            assertEquals(405, post.getResponseCode());
+            post.disconnect();
+        }
+    }
+
+    private static String get(String url) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        assertEquals(200, connection.getResponseCode());
+        try (InputStream in = connection.getInputStream()) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+}